@@ -0,0 +1,125 @@
+package com.madlen.chat.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exports Hikari pool metrics through OpenTelemetry: how long callers wait for a connection
+ * ({@code db.client.connections.wait_time}), how long a connection is held before it is
+ * returned ({@code db.client.connections.use_time}), timeouts, and pool occupancy.
+ */
+@Configuration
+public class DataSourceMetricsConfig {
+
+    private static final AttributeKey<String> POOL_NAME = AttributeKey.stringKey("pool.name");
+    private static final AttributeKey<String> STATE = AttributeKey.stringKey("state");
+
+    // static so the post-processor does not force early initialization of this configuration
+    @Bean
+    public static BeanPostProcessor hikariMetricsPostProcessor(ObjectProvider<Meter> meterProvider) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource && dataSource.getMetricsTrackerFactory() == null) {
+                    dataSource.setMetricsTrackerFactory(new OpenTelemetryMetricsTrackerFactory(meterProvider));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static final class OpenTelemetryMetricsTrackerFactory implements MetricsTrackerFactory {
+
+        private final ObjectProvider<Meter> meterProvider;
+
+        private OpenTelemetryMetricsTrackerFactory(ObjectProvider<Meter> meterProvider) {
+            this.meterProvider = meterProvider;
+        }
+
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats poolStats) {
+            return new OpenTelemetryMetricsTracker(meterProvider.getObject(), poolName, poolStats);
+        }
+    }
+
+    private static final class OpenTelemetryMetricsTracker implements IMetricsTracker {
+
+        private final Attributes attributes;
+        private final DoubleHistogram waitTime;
+        private final LongHistogram useTime;
+        private final LongHistogram createTime;
+        private final LongCounter timeouts;
+
+        private OpenTelemetryMetricsTracker(Meter meter, String poolName, PoolStats poolStats) {
+            this.attributes = Attributes.of(POOL_NAME, poolName);
+            this.waitTime = meter.histogramBuilder("db.client.connections.wait_time")
+                    .setDescription("Time spent waiting for a connection from the pool")
+                    .setUnit("ms")
+                    .build();
+            this.useTime = meter.histogramBuilder("db.client.connections.use_time")
+                    .setDescription("Time a connection was held before being returned to the pool")
+                    .setUnit("ms")
+                    .ofLongs()
+                    .build();
+            this.createTime = meter.histogramBuilder("db.client.connections.create_time")
+                    .setDescription("Time it took to open a new physical connection")
+                    .setUnit("ms")
+                    .ofLongs()
+                    .build();
+            this.timeouts = meter.counterBuilder("db.client.connections.timeouts")
+                    .setDescription("Connection requests that timed out waiting for the pool")
+                    .build();
+
+            Attributes idle = attributes.toBuilder().put(STATE, "idle").build();
+            Attributes used = attributes.toBuilder().put(STATE, "used").build();
+            meter.gaugeBuilder("db.client.connections.usage")
+                    .setDescription("Connections in the pool by state")
+                    .ofLongs()
+                    .buildWithCallback(measurement -> {
+                        measurement.record(poolStats.getIdleConnections(), idle);
+                        measurement.record(poolStats.getActiveConnections(), used);
+                    });
+            meter.gaugeBuilder("db.client.connections.pending_requests")
+                    .setDescription("Threads waiting for a connection")
+                    .ofLongs()
+                    .buildWithCallback(measurement -> measurement.record(poolStats.getPendingThreads(), attributes));
+            meter.gaugeBuilder("db.client.connections.max")
+                    .setDescription("Maximum pool size")
+                    .ofLongs()
+                    .buildWithCallback(measurement -> measurement.record(poolStats.getMaxConnections(), attributes));
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            // usually sub-millisecond when the pool is healthy, so keep the fraction
+            waitTime.record(elapsedAcquiredNanos / 1_000_000.0, attributes);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            useTime.record(elapsedBorrowedMillis, attributes);
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            createTime.record(connectionCreatedMillis, attributes);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.add(1, attributes);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.madlen.chat.config;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.metrics.Meter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MeterConfig {
+    
+    @Bean
+    public Meter meter(OpenTelemetry openTelemetry) {
+        return openTelemetry.getMeter("chat-backend");
+    }
+}
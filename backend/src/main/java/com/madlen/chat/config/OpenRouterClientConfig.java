@@ -0,0 +1,177 @@
+package com.madlen.chat.config;
+
+import com.madlen.chat.util.OpenRouterConstants;
+import io.netty.channel.ChannelOption;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongMeasurement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Upstream HTTP client for OpenRouter.
+ *
+ * {@code openrouter.client.connector} selects the transport:
+ * <ul>
+ *   <li>{@code reactor-netty} (default) - named, bounded connection pool with idle/lifetime
+ *       eviction, optional HTTP/2 and per-pool metrics</li>
+ *   <li>{@code jdk} - {@code java.net.http.HttpClient}, no pool tuning or pool metrics</li>
+ * </ul>
+ * The first-byte timeout (until response headers) is applied as a filter so it works with
+ * either transport; the read timeout (longest gap between two reads) is Netty only.
+ */
+@Configuration
+public class OpenRouterClientConfig {
+
+    static final String POOL_NAME = "openrouter";
+
+    private static final AttributeKey<String> POOL = AttributeKey.stringKey("pool.name");
+    private static final AttributeKey<String> REMOTE_ADDRESS = AttributeKey.stringKey("remote.address");
+
+    @Value("${openrouter.client.http2:false}")
+    private boolean http2;
+
+    @Value("${openrouter.client.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${openrouter.client.read-timeout-ms:120000}")
+    private long readTimeoutMs;
+
+    @Value("${openrouter.client.first-byte-timeout-ms:120000}")
+    private long firstByteTimeoutMs;
+
+    @Bean
+    public WebClient openRouterWebClient(ClientHttpConnector openRouterConnector,
+            @Value("${openrouter.api.key}") String apiKey,
+            @Value("${openrouter.api.base-url}") String baseUrl) {
+        return WebClient.builder()
+                .clientConnector(openRouterConnector)
+                .baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .defaultHeader(OpenRouterConstants.HEADER_HTTP_REFERER, OpenRouterConstants.DEFAULT_HTTP_REFERER)
+                .defaultHeader(OpenRouterConstants.HEADER_X_TITLE, OpenRouterConstants.DEFAULT_X_TITLE)
+                .filter(firstByteTimeout(Duration.ofMillis(firstByteTimeoutMs)))
+                .build();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(name = "openrouter.client.connector", havingValue = "reactor-netty", matchIfMissing = true)
+    public ConnectionProvider openRouterConnectionProvider(Meter meter,
+            @Value("${openrouter.client.max-connections:200}") int maxConnections,
+            @Value("${openrouter.client.pending-acquire-max-count:1000}") int pendingAcquireMaxCount,
+            @Value("${openrouter.client.pending-acquire-timeout-ms:10000}") long pendingAcquireTimeoutMs,
+            @Value("${openrouter.client.max-idle-time-ms:60000}") long maxIdleTimeMs,
+            @Value("${openrouter.client.max-life-time-ms:300000}") long maxLifeTimeMs,
+            @Value("${openrouter.client.evict-interval-ms:30000}") long evictIntervalMs) {
+        PoolMetricsRegistrar registrar = new PoolMetricsRegistrar(meter);
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+                .evictInBackground(Duration.ofMillis(evictIntervalMs))
+                .metrics(true, () -> registrar)
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "openrouter.client.connector", havingValue = "reactor-netty", matchIfMissing = true)
+    public ClientHttpConnector openRouterReactorConnector(ConnectionProvider openRouterConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(openRouterConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
+        if (http2) {
+            // h2 is negotiated through ALPN, falling back to HTTP/1.1 if the server does not offer it
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        // load event loops, DNS resolver and SSL provider now rather than on the first chat
+        httpClient.warmup().block();
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "openrouter.client.connector", havingValue = "jdk")
+    public ClientHttpConnector openRouterJdkConnector() {
+        return new JdkClientHttpConnector(java.net.http.HttpClient.newBuilder()
+                .version(http2 ? java.net.http.HttpClient.Version.HTTP_2 : java.net.http.HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build());
+    }
+
+    private static ExchangeFilterFunction firstByteTimeout(Duration timeout) {
+        // the exchange completes as soon as the response headers arrive, the body is not included
+        return (request, next) -> next.exchange(request).timeout(timeout);
+    }
+
+    /**
+     * Exposes every pool the provider creates (one per remote address) as
+     * {@code http.client.connections.*} gauges.
+     */
+    private static final class PoolMetricsRegistrar implements ConnectionProvider.MeterRegistrar {
+
+        private final Map<String, RegisteredPool> pools = new ConcurrentHashMap<>();
+
+        private PoolMetricsRegistrar(Meter meter) {
+            gauge(meter, "http.client.connections.active", "Connections currently acquired by a request",
+                    ConnectionPoolMetrics::acquiredSize);
+            gauge(meter, "http.client.connections.idle", "Open connections waiting in the pool",
+                    ConnectionPoolMetrics::idleSize);
+            gauge(meter, "http.client.connections.pending", "Requests waiting to acquire a connection",
+                    ConnectionPoolMetrics::pendingAcquireSize);
+            gauge(meter, "http.client.connections.allocated", "Connections currently open",
+                    ConnectionPoolMetrics::allocatedSize);
+            gauge(meter, "http.client.connections.max", "Maximum connections allowed in the pool",
+                    ConnectionPoolMetrics::maxAllocatedSize);
+        }
+
+        private void gauge(Meter meter, String name, String description, ToIntFunction<ConnectionPoolMetrics> value) {
+            meter.gaugeBuilder(name)
+                    .setDescription(description)
+                    .ofLongs()
+                    .buildWithCallback(measurement -> record(measurement, value));
+        }
+
+        private void record(ObservableLongMeasurement measurement, ToIntFunction<ConnectionPoolMetrics> value) {
+            for (RegisteredPool pool : pools.values()) {
+                measurement.record(value.applyAsInt(pool.metrics), pool.attributes);
+            }
+        }
+
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress,
+                ConnectionPoolMetrics metrics) {
+            pools.put(id, new RegisteredPool(
+                    Attributes.of(POOL, poolName, REMOTE_ADDRESS, String.valueOf(remoteAddress)), metrics));
+        }
+
+        @Override
+        public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+            pools.remove(id);
+        }
+
+        private record RegisteredPool(Attributes attributes, ConnectionPoolMetrics metrics) {
+        }
+    }
+}
@@ -4,8 +4,12 @@ import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
 import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
 import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
@@ -13,11 +17,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class OpenTelemetryConfig {
     
     @Value("${opentelemetry.jaeger.endpoint}")
     private String jaegerEndpoint;
+
+    @Value("${opentelemetry.metrics.endpoint:}")
+    private String metricsEndpoint;
+
+    @Value("${opentelemetry.metrics.export-interval-seconds:60}")
+    private long metricsExportIntervalSeconds;
     
     @Bean
     public OpenTelemetry openTelemetry() {
@@ -35,11 +47,23 @@ public class OpenTelemetryConfig {
                 .addSpanProcessor(BatchSpanProcessor.builder(spanExporter).build())
                 .setResource(resource)
                 .build();
+
+        SdkMeterProviderBuilder meterProviderBuilder = SdkMeterProvider.builder()
+                .setResource(resource);
+        if (!metricsEndpoint.isBlank()) {
+            meterProviderBuilder.registerMetricReader(PeriodicMetricReader.builder(
+                            OtlpHttpMetricExporter.builder()
+                                    .setEndpoint(metricsEndpoint + "/v1/metrics")
+                                    .build())
+                    .setInterval(Duration.ofSeconds(metricsExportIntervalSeconds))
+                    .build());
+        }
         
         return OpenTelemetrySdk.builder()
                 .setTracerProvider(tracerProvider)
+                .setMeterProvider(meterProviderBuilder.build())
                 .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
-                .buildAndRegisterGlobal();
+                .build();
     }
 }
 
@@ -6,6 +6,7 @@ import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -21,7 +22,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
-@EnableCaching
+// cache advice wraps transactional advice, so a cache hit never opens a transaction
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
 public class RedisConfig {
 
     @Value("${spring.data.redis.host:localhost}")
@@ -61,7 +63,6 @@ public class RedisConfig {
                 .disableCachingNullValues();
 
         Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
-        cacheConfigurations.put(CacheConstants.CACHE_MODELS, defaultConfig.entryTtl(Duration.ofSeconds(CacheConstants.TTL_MODELS)));
         cacheConfigurations.put(CacheConstants.CACHE_USERS, defaultConfig.entryTtl(Duration.ofSeconds(CacheConstants.TTL_USERS)));
         cacheConfigurations.put(CacheConstants.CACHE_CONVERSATIONS, defaultConfig.entryTtl(Duration.ofSeconds(CacheConstants.TTL_CONVERSATIONS)));
 
@@ -0,0 +1,38 @@
+package com.madlen.chat.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * JPA and R2DBC are both on the classpath. Boot's DataSource auto-configuration backs off
+ * as soon as an R2DBC {@code ConnectionFactory} is configured, which would leave JPA without
+ * a DataSource, so the Hikari pool is declared here from {@code spring.datasource}. The JPA
+ * transaction manager is primary so {@code @Transactional} and {@code TransactionTemplate}
+ * keep resolving to it; the reactive path uses the auto-configured
+ * {@code TransactionalOperator} explicitly.
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class TransactionConfig {
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+}
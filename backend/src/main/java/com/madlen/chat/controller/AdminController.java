@@ -0,0 +1,41 @@
+package com.madlen.chat.controller;
+
+import com.madlen.chat.dto.CircuitBreakerStatus;
+import com.madlen.chat.exception.ResourceNotFoundException;
+import com.madlen.chat.util.ModelCircuitBreakers;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Operational view of the upstream resilience state.
+ *
+ * Requires {@code ROLE_ADMIN}, i.e. a user listed in {@code chat.admin.usernames}.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final ModelCircuitBreakers circuitBreakers;
+
+    public AdminController(ModelCircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @GetMapping("/circuit-breakers")
+    public ResponseEntity<List<CircuitBreakerStatus>> getCircuitBreakers() {
+        return ResponseEntity.ok(circuitBreakers.statuses());
+    }
+
+    /**
+     * Model ids contain slashes, so the model is passed as a query parameter.
+     */
+    @PostMapping("/circuit-breakers/reset")
+    public ResponseEntity<String> resetCircuitBreaker(@RequestParam String model) {
+        if (!circuitBreakers.reset(model)) {
+            throw new ResourceNotFoundException("No circuit breaker for model " + model);
+        }
+        return ResponseEntity.ok("Circuit breaker for " + model + " closed");
+    }
+}
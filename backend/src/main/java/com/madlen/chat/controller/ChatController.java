@@ -2,35 +2,43 @@ package com.madlen.chat.controller;
 
 import com.madlen.chat.dto.ChatRequest;
 import com.madlen.chat.dto.ChatResponse;
-import com.madlen.chat.dto.ModelInfo;
 import com.madlen.chat.service.ChatService;
-import com.madlen.chat.service.OpenRouterService;
+import com.madlen.chat.service.ImageStoreService;
+import com.madlen.chat.service.ModelCatalogService;
+import com.madlen.chat.exception.BadRequestException;
 import com.madlen.chat.util.AuthenticationHelper;
-import com.madlen.chat.util.CacheConstants;
+import com.madlen.chat.util.ModelCatalogIndex;
 import jakarta.validation.Valid;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.math.BigDecimal;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api")
 public class ChatController {
     
     private final ChatService chatService;
-    private final OpenRouterService openRouterService;
+    private final ModelCatalogService modelCatalogService;
     private final com.madlen.chat.service.UserService userService;
+    private final ImageStoreService imageStore;
     
     public ChatController(ChatService chatService, 
-                         OpenRouterService openRouterService,
-                         com.madlen.chat.service.UserService userService) {
+                         ModelCatalogService modelCatalogService,
+                         com.madlen.chat.service.UserService userService,
+                         ImageStoreService imageStore) {
         this.chatService = chatService;
-        this.openRouterService = openRouterService;
+        this.modelCatalogService = modelCatalogService;
         this.userService = userService;
+        this.imageStore = imageStore;
     }
     
     @PostMapping("/chat")
@@ -41,24 +49,76 @@ public class ChatController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Same as the JSON variant, with the request as a JSON {@code request} part and the image
+     * as a binary {@code image} part, which is streamed into the image store instead of being
+     * held on the heap as base64.
+     */
+    @PostMapping(value = "/chat", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ChatResponse> sendMessageWithImage(@Valid @RequestPart("request") ChatRequest request,
+                                                            @RequestPart(value = "image", required = false) MultipartFile image,
+                                                            Authentication authentication) {
+        Long userId = AuthenticationHelper.getUserIdFromAuthentication(authentication, userService);
+        imageStore.storeUpload(request, image);
+        ChatResponse response = chatService.sendMessage(request, userId);
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Model list, optionally filtered and sorted. Responses carry a strong ETag per catalog
+     * version and query; a matching {@code If-None-Match} gets a 304.
+     */
     @GetMapping("/models")
-    public ResponseEntity<List<ModelInfo>> getModels() {
-        List<Map<String, Object>> models = openRouterService.getAvailableModels();
-        List<ModelInfo> modelInfos = models.stream()
-                .map(model -> {
-                    String id = (String) model.get("id");
-                    String name = (String) model.getOrDefault("name", id);
-                    Boolean free = (Boolean) model.getOrDefault("free", false);
-                    return new ModelInfo(id, name, free);
-                })
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(modelInfos);
+    public ResponseEntity<byte[]> getModels(@RequestParam(required = false) Boolean free,
+                                            @RequestParam(required = false) Boolean vision,
+                                            @RequestParam(required = false) Integer minContext,
+                                            @RequestParam(required = false) BigDecimal maxPromptPrice,
+                                            @RequestParam(required = false) BigDecimal maxCompletionPrice,
+                                            @RequestParam(required = false) List<String> provider,
+                                            @RequestParam(required = false) String sort,
+                                            @RequestParam(defaultValue = "asc") String order,
+                                            WebRequest webRequest) {
+        ModelCatalogIndex.Query query = new ModelCatalogIndex.Query(free, vision, minContext, maxPromptPrice,
+                maxCompletionPrice, provider == null ? Set.of() : Set.copyOf(provider), parseSort(sort),
+                parseDescending(order));
+        ModelCatalogIndex.Response response = modelCatalogService.getIndex().response(query);
+        if (webRequest.checkNotModified(response.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(response.etag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(response.body());
     }
     
+    /**
+     * Blocks until OpenRouter answered (bounded by the catalog's fetch timeout); admins only.
+     */
     @PostMapping("/models/refresh")
-    @CacheEvict(value = CacheConstants.CACHE_MODELS, allEntries = true)
-    public ResponseEntity<String> refreshModelsCache() {
-        return ResponseEntity.ok("Models cache refreshed successfully");
+    public ResponseEntity<String> refreshModelCatalog() {
+        int count = modelCatalogService.refresh().models().size();
+        return ResponseEntity.ok("Model catalog refreshed (" + count + " models)");
+    }
+    
+    private static ModelCatalogIndex.Sort parseSort(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return null;
+        }
+        try {
+            return ModelCatalogIndex.Sort.valueOf(sort.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid sort: " + sort + " (expected name, context, price or created)");
+        }
+    }
+    
+    private static boolean parseDescending(String order) {
+        if ("desc".equalsIgnoreCase(order)) {
+            return true;
+        }
+        if ("asc".equalsIgnoreCase(order)) {
+            return false;
+        }
+        throw new BadRequestException("Invalid order: " + order + " (expected asc or desc)");
     }
 }
-
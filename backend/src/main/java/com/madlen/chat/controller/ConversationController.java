@@ -2,6 +2,7 @@ package com.madlen.chat.controller;
 
 import com.madlen.chat.dto.ConversationDto;
 import com.madlen.chat.service.ConversationService;
+import com.madlen.chat.util.ImageUrlSigner;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
@@ -16,11 +17,14 @@ public class ConversationController {
 
     private final ConversationService conversationService;
     private final com.madlen.chat.service.UserService userService;
+    private final ImageUrlSigner imageUrlSigner;
 
     public ConversationController(ConversationService conversationService,
-            com.madlen.chat.service.UserService userService) {
+            com.madlen.chat.service.UserService userService,
+            ImageUrlSigner imageUrlSigner) {
         this.conversationService = conversationService;
         this.userService = userService;
+        this.imageUrlSigner = imageUrlSigner;
     }
 
     @PostMapping
@@ -38,6 +42,7 @@ public class ConversationController {
         Long userId = getUserIdFromAuthentication(authentication);
         Page<ConversationDto> conversations = conversationService.getUserConversations(userId,
                 PageRequest.of(page, size));
+        conversations.forEach(this::signImageUrls);
         return ResponseEntity.ok(conversations);
     }
 
@@ -46,6 +51,7 @@ public class ConversationController {
             Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
         ConversationDto conversation = conversationService.getConversationById(id, userId);
+        signImageUrls(conversation);
         return ResponseEntity.ok(conversation);
     }
 
@@ -66,9 +72,23 @@ public class ConversationController {
         Long userId = getUserIdFromAuthentication(authentication);
         Page<ConversationDto.MessageDto> messages = conversationService.getConversationMessages(
                 id, userId, PageRequest.of(page, size));
+        messages.forEach(this::signImageUrl);
         return ResponseEntity.ok(messages);
     }
 
+    /**
+     * Image URLs are signed per response, after any caching, as the signatures expire.
+     */
+    private void signImageUrls(ConversationDto conversation) {
+        if (conversation.getMessages() != null) {
+            conversation.getMessages().forEach(this::signImageUrl);
+        }
+    }
+
+    private void signImageUrl(ConversationDto.MessageDto message) {
+        message.setImageUrl(imageUrlSigner.sign(message.getImageUrl()));
+    }
+
     private Long getUserIdFromAuthentication(Authentication authentication) {
         String username = ((UserDetails) authentication.getPrincipal()).getUsername();
         return userService.findByUsername(username).getId();
@@ -0,0 +1,77 @@
+package com.madlen.chat.controller;
+
+import com.madlen.chat.exception.ResourceNotFoundException;
+import com.madlen.chat.service.ImageStoreService;
+import com.madlen.chat.util.ImageFormat;
+import com.madlen.chat.util.ImageUrlSigner;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Serves stored images by hash, to URLs signed by {@link ImageUrlSigner}. An unsigned or
+ * expired URL gets the same 404 as a missing image, so nobody can probe which images exist.
+ * The content of a hash never changes, so the hash is the ETag; responses are cacheable
+ * privately until the URL expires.
+ */
+@RestController
+@RequestMapping("/api/images")
+public class ImageController {
+
+    private final ImageStoreService imageStore;
+    private final ImageUrlSigner imageUrlSigner;
+
+    public ImageController(ImageStoreService imageStore, ImageUrlSigner imageUrlSigner) {
+        this.imageStore = imageStore;
+        this.imageUrlSigner = imageUrlSigner;
+    }
+
+    @GetMapping("/{hash}")
+    public ResponseEntity<Resource> getImage(@PathVariable String hash,
+            @RequestParam(required = false) Long expires,
+            @RequestParam(required = false) String sig,
+            WebRequest webRequest) {
+        if (!imageUrlSigner.verify(hash, expires, sig)) {
+            throw new ResourceNotFoundException("Image", hash);
+        }
+        Path path = imageStore.find(hash)
+                .orElseThrow(() -> new ResourceNotFoundException("Image", hash));
+        String etag = "\"" + hash + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(
+                        Math.max(0, expires - System.currentTimeMillis() / 1000))).cachePrivate())
+                .contentType(contentType(path))
+                .body(new FileSystemResource(path));
+    }
+
+    private static MediaType contentType(Path path) {
+        byte[] header;
+        try (InputStream in = Files.newInputStream(path)) {
+            header = in.readNBytes(ImageFormat.HEADER_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read image", e);
+        }
+        return ImageFormat.sniff(header)
+                .map(format -> MediaType.parseMediaType(format.mimeType()))
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+}
@@ -1,6 +1,7 @@
 package com.madlen.chat.controller;
 
 import com.madlen.chat.dto.ChatRequest;
+import com.madlen.chat.service.ImageStoreService;
 import com.madlen.chat.service.StreamingChatService;
 import com.madlen.chat.service.UserService;
 import com.madlen.chat.util.AuthenticationHelper;
@@ -9,6 +10,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 
 @RestController
@@ -17,17 +19,38 @@ public class StreamingChatController {
 
     private final StreamingChatService streamingChatService;
     private final UserService userService;
+    private final ImageStoreService imageStore;
 
     public StreamingChatController(StreamingChatService streamingChatService,
-                                   UserService userService) {
+                                   UserService userService,
+                                   ImageStoreService imageStore) {
         this.streamingChatService = streamingChatService;
         this.userService = userService;
+        this.imageStore = imageStore;
     }
 
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<String>> streamChat(@Valid @RequestBody ChatRequest request,
+                                                     @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
                                                      Authentication authentication) {
         Long userId = AuthenticationHelper.getUserIdFromAuthentication(authentication, userService);
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return streamingChatService.resumeStream(lastEventId, userId);
+        }
+        return streamingChatService.streamChat(request, userId);
+    }
+
+    /**
+     * Multipart variant: a JSON {@code request} part and an optional binary {@code image} part,
+     * which is streamed into the image store before the stream starts.
+     */
+    @PostMapping(value = "/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamChatWithImage(@Valid @RequestPart("request") ChatRequest request,
+                                                              @RequestPart(value = "image", required = false) MultipartFile image,
+                                                              Authentication authentication) {
+        Long userId = AuthenticationHelper.getUserIdFromAuthentication(authentication, userService);
+        imageStore.storeUpload(request, image);
         return streamingChatService.streamChat(request, userId);
     }
 }
@@ -1,5 +1,6 @@
 package com.madlen.chat.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 
@@ -37,5 +38,16 @@ public class ChatRequest {
     private Long conversationId; // Optional: if not provided, a new conversation will be created
     
     private String image; // Optional: base64 encoded image (data:image/jpeg;base64, prefix is optional)
+
+    /**
+     * Hash of the image in the image store, set once the image is stored: by the multipart
+     * endpoints for the uploaded part, otherwise from {@link #image} before it is sent upstream.
+     */
+    @JsonIgnore
+    private String imageHash;
+
+    public boolean hasImage() {
+        return imageHash != null || (image != null && !image.isEmpty());
+    }
 }
 
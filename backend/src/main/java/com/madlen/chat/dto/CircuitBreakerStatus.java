@@ -0,0 +1,17 @@
+package com.madlen.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CircuitBreakerStatus {
+    private String model;
+    private String state;
+    private int bufferedCalls;
+    private int failedCalls;
+    private double failureRate;
+    private long openRemainingMs;
+}
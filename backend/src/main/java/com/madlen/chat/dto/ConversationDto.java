@@ -26,6 +26,7 @@ public class ConversationDto {
         private String content;
         private String model;
         private String imageUrl;
+        private boolean interrupted;
         private LocalDateTime createdAt;
     }
 }
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -11,5 +13,9 @@ public class ModelInfo {
     private String id;
     private String name;
     private boolean free;
+    private boolean supportsVision;
+    private int contextLength;
+    private BigDecimal promptPrice;
+    private BigDecimal completionPrice;
+    private String provider;
 }
-
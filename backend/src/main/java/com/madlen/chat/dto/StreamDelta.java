@@ -0,0 +1,29 @@
+package com.madlen.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Single decoded OpenRouter streaming chunk. Only the fields the chat flow actually
+ * uses are extracted: the delta content, the finish reason and the usage block that
+ * OpenRouter sends with the last chunk.
+ */
+@Getter
+@AllArgsConstructor
+public class StreamDelta {
+    private final String content;
+    private final String finishReason;
+    private final Usage usage;
+
+    public boolean hasContent() {
+        return content != null && !content.isEmpty();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Usage {
+        private final int promptTokens;
+        private final int completionTokens;
+        private final int totalTokens;
+    }
+}
@@ -0,0 +1,19 @@
+package com.madlen.chat.exception;
+
+/**
+ * Thrown when a model's bulkhead is full and the request could not be admitted within its
+ * deadline. Nothing was sent upstream, so the request is safe to retry.
+ */
+public class ModelOverloadedException extends OpenRouterException {
+
+    private final String model;
+
+    public ModelOverloadedException(String model, String reason) {
+        super("Model " + model + " is currently overloaded (" + reason + "). Please try again in a moment.");
+        this.model = model;
+    }
+
+    public String getModel() {
+        return model;
+    }
+}
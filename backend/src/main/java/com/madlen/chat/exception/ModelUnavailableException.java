@@ -0,0 +1,36 @@
+package com.madlen.chat.exception;
+
+import java.time.Duration;
+
+/**
+ * Thrown without calling upstream while a model's circuit breaker is open, i.e. recent
+ * calls to the model mostly failed.
+ */
+public class ModelUnavailableException extends OpenRouterException {
+
+    private final String model;
+    private final Duration retryAfter;
+
+    public ModelUnavailableException(String model, Duration retryAfter) {
+        super("Model " + model + " is temporarily unavailable. Please try again in "
+                + secondsOf(retryAfter) + " seconds or choose another model.");
+        this.model = model;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public long getRetryAfterSeconds() {
+        return secondsOf(retryAfter);
+    }
+
+    private static long secondsOf(Duration duration) {
+        return Math.max(1, (duration.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,34 @@
+package com.madlen.chat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * R2DBC mapping of the {@code conversations} table used by the reactive streaming path.
+ * The schema itself is still owned by the JPA {@link Conversation} entity.
+ */
+@Table("conversations")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationRecord {
+    @Id
+    private Long id;
+
+    private String title;
+
+    @Column("user_id")
+    private Long userId;
+
+    @Column("created_at")
+    private LocalDateTime createdAt;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+}
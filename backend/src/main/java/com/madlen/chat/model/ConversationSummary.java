@@ -0,0 +1,55 @@
+package com.madlen.chat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+/**
+ * Rolling summary of the older part of a conversation. It covers every message up to and
+ * including {@code coveredMessageId}; later messages are sent as they are.
+ */
+@Entity
+@Table(name = "conversation_summaries")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummary {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // deleted by the database together with the conversation, also when the R2DBC path deletes it
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "conversation_id", nullable = false, unique = true)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    private Conversation conversation;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String content;
+
+    @Column(name = "covered_message_id", nullable = false)
+    private Long coveredMessageId;
+
+    @Column(name = "covered_messages", nullable = false)
+    private int coveredMessages;
+
+    // summarizer model, or "local" for the built-in extractive summary
+    @Column(nullable = false)
+    private String model;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
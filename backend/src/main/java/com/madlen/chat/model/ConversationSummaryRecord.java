@@ -0,0 +1,39 @@
+package com.madlen.chat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * R2DBC mapping of the {@code conversation_summaries} table, read by the reactive streaming
+ * path. The schema is owned by the JPA {@link ConversationSummary} entity.
+ */
+@Table("conversation_summaries")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummaryRecord {
+    @Id
+    private Long id;
+
+    @Column("conversation_id")
+    private Long conversationId;
+
+    private String content;
+
+    @Column("covered_message_id")
+    private Long coveredMessageId;
+
+    @Column("covered_messages")
+    private int coveredMessages;
+
+    private String model;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+}
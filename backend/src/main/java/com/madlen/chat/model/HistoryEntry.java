@@ -0,0 +1,16 @@
+package com.madlen.chat.model;
+
+/**
+ * The part of a {@link Message} that is sent upstream as history. Loaded as a projection,
+ * so history reads never fetch the {@code image_url} column with its inline images.
+ */
+public record HistoryEntry(Long id, Message.MessageRole role, String content) {
+
+    public static HistoryEntry of(Message message) {
+        return new HistoryEntry(message.getId(), message.getRole(), message.getContent());
+    }
+
+    public static HistoryEntry of(MessageRecord message) {
+        return new HistoryEntry(message.getId(), message.getRole(), message.getContent());
+    }
+}
@@ -37,6 +37,10 @@ public class Message {
     @Column(name = "image_url", columnDefinition = "TEXT")
     private String imageUrl;
 
+    // true when the client went away before the model finished; content is the partial answer
+    @Column(nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
+    private boolean interrupted;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -0,0 +1,7 @@
+package com.madlen.chat.model;
+
+/**
+ * Id and {@code image_url} of a message, for moving inline images to the image store.
+ */
+public record MessageImage(Long id, String imageUrl) {
+}
@@ -0,0 +1,40 @@
+package com.madlen.chat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * R2DBC mapping of the {@code messages} table used by the reactive streaming path.
+ * The schema itself is still owned by the JPA {@link Message} entity.
+ */
+@Table("messages")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageRecord {
+    @Id
+    private Long id;
+
+    @Column("conversation_id")
+    private Long conversationId;
+
+    private Message.MessageRole role;
+
+    private String content;
+
+    private String model;
+
+    @Column("image_url")
+    private String imageUrl;
+
+    private boolean interrupted;
+
+    @Column("created_at")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,81 @@
+package com.madlen.chat.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable snapshot of the OpenRouter model list, in upstream order.
+ *
+ * {@code etag} and {@code lastModified} are the validators of the response it was built
+ * from, for the next conditional request. A {@code fallback} catalog is the built-in list
+ * used while OpenRouter has never been reachable.
+ */
+public final class ModelCatalog {
+
+    public record Model(String id, String name, boolean free, boolean supportsVision, int contextLength,
+            BigDecimal promptPrice, BigDecimal completionPrice, long created) {
+
+        /**
+         * The part of the id before the slash, e.g. {@code openai} for {@code openai/gpt-4o}.
+         */
+        public String provider() {
+            int slash = id.indexOf('/');
+            return slash > 0 ? id.substring(0, slash) : id;
+        }
+    }
+
+    private final List<Model> models;
+    private final Map<String, Model> byId;
+    private final Instant fetchedAt;
+    private final String etag;
+    private final String lastModified;
+    private final boolean fallback;
+
+    public ModelCatalog(List<Model> models, Instant fetchedAt, String etag, String lastModified, boolean fallback) {
+        this.models = List.copyOf(models);
+        Map<String, Model> index = new LinkedHashMap<>();
+        for (Model model : this.models) {
+            index.putIfAbsent(model.id(), model);
+        }
+        this.byId = Map.copyOf(index);
+        this.fetchedAt = fetchedAt;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fallback = fallback;
+    }
+
+    public List<Model> models() {
+        return models;
+    }
+
+    public Optional<Model> find(String id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(byId.get(id));
+    }
+
+    public Instant fetchedAt() {
+        return fetchedAt;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    public String lastModified() {
+        return lastModified;
+    }
+
+    public boolean fallback() {
+        return fallback;
+    }
+
+    /**
+     * Same models and validators, confirmed current at {@code now} (a 304 from upstream).
+     */
+    public ModelCatalog revalidated(Instant now) {
+        return new ModelCatalog(models, now, etag, lastModified, fallback);
+    }
+}
@@ -32,5 +32,7 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
     @EntityGraph(attributePaths = { "messages", "user" })
     Optional<Conversation> findByIdAndUserId(Long id, Long userId);
 
+    boolean existsByIdAndUserId(Long id, Long userId);
+
     void deleteByIdAndUserId(Long id, Long userId);
 }
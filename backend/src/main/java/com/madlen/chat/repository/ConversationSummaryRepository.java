@@ -0,0 +1,12 @@
+package com.madlen.chat.repository;
+
+import com.madlen.chat.model.ConversationSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+    Optional<ConversationSummary> findByConversationId(Long conversationId);
+}
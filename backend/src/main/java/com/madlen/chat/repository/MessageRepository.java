@@ -1,9 +1,14 @@
 package com.madlen.chat.repository;
 
+import com.madlen.chat.model.HistoryEntry;
 import com.madlen.chat.model.Message;
+import com.madlen.chat.model.MessageImage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -26,5 +31,18 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
 
     Page<Message> findByConversationIdOrderByCreatedAtAsc(Long conversationId, Pageable pageable);
 
+    // projections without image_url, for building history
+    List<HistoryEntry> findHistoryByConversationIdOrderByCreatedAtAsc(Long conversationId);
+
+    List<HistoryEntry> findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(Long conversationId,
+            Long afterId);
+
     long countByConversationId(Long conversationId);
+
+    List<MessageImage> findImagesByIdGreaterThanAndImageUrlStartingWithOrderByIdAsc(Long afterId, String prefix,
+            Pageable pageable);
+
+    @Modifying
+    @Query("update Message m set m.imageUrl = :imageUrl where m.id = :id")
+    int updateImageUrl(@Param("id") Long id, @Param("imageUrl") String imageUrl);
 }
\ No newline at end of file
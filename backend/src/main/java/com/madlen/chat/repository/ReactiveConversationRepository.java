@@ -0,0 +1,24 @@
+package com.madlen.chat.repository;
+
+import com.madlen.chat.model.ConversationRecord;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Non-blocking access to conversations for the reactive streaming path.
+ * The native update only uses bound parameters, never string concatenation.
+ */
+@Repository
+public interface ReactiveConversationRepository extends R2dbcRepository<ConversationRecord, Long> {
+    Mono<ConversationRecord> findByIdAndUserId(Long id, Long userId);
+
+    @Modifying
+    @Query("UPDATE conversations SET title = :title, updated_at = :updatedAt "
+            + "WHERE id = :id AND title = :expectedTitle")
+    Mono<Integer> updateTitleIfUnchanged(Long id, String expectedTitle, String title, LocalDateTime updatedAt);
+}
@@ -0,0 +1,11 @@
+package com.madlen.chat.repository;
+
+import com.madlen.chat.model.ConversationSummaryRecord;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveConversationSummaryRepository extends R2dbcRepository<ConversationSummaryRecord, Long> {
+    Mono<ConversationSummaryRecord> findByConversationId(Long conversationId);
+}
@@ -0,0 +1,28 @@
+package com.madlen.chat.repository;
+
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.MessageRecord;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking access to messages for the reactive streaming path.
+ */
+@Repository
+public interface ReactiveMessageRepository extends R2dbcRepository<MessageRecord, Long> {
+    Flux<MessageRecord> findByConversationIdOrderByCreatedAtAsc(Long conversationId);
+
+    // projections without image_url, for building history; R2DBC cannot derive DTO projections
+    @Query("SELECT id, role, content FROM messages WHERE conversation_id = :conversationId ORDER BY created_at")
+    Flux<HistoryEntry> findHistoryByConversationIdOrderByCreatedAtAsc(Long conversationId);
+
+    @Query("SELECT id, role, content FROM messages WHERE conversation_id = :conversationId AND id > :afterId "
+            + "ORDER BY created_at")
+    Flux<HistoryEntry> findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(Long conversationId,
+            Long afterId);
+
+    Mono<Long> countByConversationId(Long conversationId);
+}
@@ -2,18 +2,28 @@ package com.madlen.chat.security;
 
 import com.madlen.chat.model.User;
 import com.madlen.chat.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.Set;
+
+/**
+ * Every user has {@code ROLE_USER}; users listed in {@code chat.admin.usernames} also get
+ * {@code ROLE_ADMIN}, which the operational endpoints require.
+ */
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final Set<String> adminUsernames;
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository,
+            @Value("${chat.admin.usernames:}") Set<String> adminUsernames) {
         this.userRepository = userRepository;
+        this.adminUsernames = adminUsernames;
     }
 
     @Override
@@ -24,7 +34,9 @@ public class CustomUserDetailsService implements UserDetailsService {
         return org.springframework.security.core.userdetails.User.builder()
                 .username(user.getUsername())
                 .password(user.getPassword())
-                .authorities("ROLE_USER")
+                .authorities(adminUsernames.contains(user.getUsername())
+                        ? new String[] {"ROLE_USER", "ROLE_ADMIN"}
+                        : new String[] {"ROLE_USER"})
                 .build();
     }
 }
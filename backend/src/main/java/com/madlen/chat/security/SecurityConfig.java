@@ -2,6 +2,7 @@ package com.madlen.chat.security;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -37,6 +38,9 @@ public class SecurityConfig {
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/models").permitAll()
+                // images are loaded by <img> tags, which cannot send the JWT; the URLs handed out
+                // with a user's messages are signed and expire instead (see ImageUrlSigner)
+                .requestMatchers(HttpMethod.GET, "/api/images/*").permitAll()
                 // NOT: Actuator endpoints public erişime açık (case study için)
                 // Spring Boot Actuator, uygulama sağlığı, metrikler, environment bilgileri gibi
                 // sensitive bilgileri expose eder. Production ortamında güvenlik riski oluşturur.
@@ -53,6 +57,9 @@ public class SecurityConfig {
                 //    management.endpoints.enabled-by-default=false
                 //    management.endpoint.health.enabled=true
                 .requestMatchers("/actuator/**").permitAll()
+                // only users listed in chat.admin.usernames; nobody unless configured
+                .requestMatchers("/api/admin/**").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.POST, "/api/models/refresh").hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
             .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
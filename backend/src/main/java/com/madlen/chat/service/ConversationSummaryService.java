@@ -0,0 +1,10 @@
+package com.madlen.chat.service;
+
+public interface ConversationSummaryService {
+
+    /**
+     * Schedules folding older messages of the conversation into its summary. Returns
+     * immediately; does nothing if summaries are disabled or an update is already running.
+     */
+    void requestUpdate(Long conversationId);
+}
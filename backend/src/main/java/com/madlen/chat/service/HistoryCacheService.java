@@ -0,0 +1,52 @@
+package com.madlen.chat.service;
+
+import com.madlen.chat.model.HistoryEntry;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-conversation log of messages in Redis, so building the history of a turn takes one
+ * round trip instead of a database query.
+ *
+ * Writes made inside a transaction are applied after it commits.
+ */
+public interface HistoryCacheService {
+
+    /**
+     * {@code history} is {@code null} on a miss; {@code generation} is then passed to
+     * {@link #fill} so a fill racing with a newer write is discarded.
+     */
+    record Lookup(List<Map<String, String>> history, long generation) {
+
+        public boolean hit() {
+            return history != null;
+        }
+    }
+
+    /**
+     * History of the conversation (summary and the messages after it), from the cache or
+     * rebuilt from the database. The returned list and its entries are immutable.
+     */
+    List<Map<String, String>> load(Long conversationId);
+
+    Lookup read(Long conversationId);
+
+    /**
+     * Stores the messages after the summary, loaded from the database after {@link #read}
+     * missed with {@code generation}.
+     */
+    void fill(Long conversationId, long generation, List<HistoryEntry> messages, Long summaryCoveredMessageId,
+            String summary);
+
+    /**
+     * Builds the history the same way as a cache hit does.
+     */
+    List<Map<String, String>> toHistory(List<HistoryEntry> messages, Long summaryCoveredMessageId, String summary);
+
+    void append(Long conversationId, HistoryEntry message);
+
+    void putSummary(Long conversationId, long coveredMessageId, String summary);
+
+    void invalidate(Long conversationId);
+}
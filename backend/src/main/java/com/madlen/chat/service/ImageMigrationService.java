@@ -0,0 +1,14 @@
+package com.madlen.chat.service;
+
+/**
+ * Moves images stored inline as {@code data:} URLs in the messages table to the
+ * {@link ImageStoreService}, in batches in the background.
+ */
+public interface ImageMigrationService {
+
+    /**
+     * Migrates the next batch and returns the number of messages looked at; 0 once no
+     * inline images are left.
+     */
+    int migrateNextBatch();
+}
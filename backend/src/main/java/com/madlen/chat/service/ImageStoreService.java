@@ -0,0 +1,72 @@
+package com.madlen.chat.service;
+
+import com.madlen.chat.dto.ChatRequest;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Content-addressed store for uploaded images. An image is identified by the SHA-256 of its
+ * bytes, so storing the same image twice keeps one copy; messages only hold
+ * {@link #urlFor its URL}.
+ */
+public interface ImageStoreService {
+
+    String URL_PREFIX = "/api/images/";
+
+    /**
+     * Stores base64 image data (without a {@code data:} prefix) and returns its hash.
+     */
+    String store(String base64);
+
+    /**
+     * Stores the stream's bytes and returns their hash. The stream is not closed.
+     */
+    String store(InputStream content);
+
+    /**
+     * File of the image with this hash, if it is stored. Anything that is not a SHA-256 hex
+     * string is not found.
+     */
+    Optional<Path> find(String hash);
+
+    /**
+     * Stores the base64 image of a JSON request and replaces it with its
+     * {@link ChatRequest#getImageHash hash}, so the data can be collected before the model is
+     * called; an image uploaded as a part is already stored. Returns the URL to keep in the
+     * message, or {@code null} without an image.
+     */
+    default String storeImage(ChatRequest request) {
+        String image = request.getImage();
+        if (request.getImageHash() == null && image != null && !image.isEmpty()) {
+            // a data: URL prefix is allowed
+            request.setImageHash(store(image.startsWith("data:") ? image.substring(image.indexOf(',') + 1) : image));
+        }
+        request.setImage(null);
+        return request.getImageHash() == null ? null : urlFor(request.getImageHash());
+    }
+
+    /**
+     * Stores an uploaded image part and makes it the request's image, replacing any base64
+     * image sent with it. Without a part the request is left unchanged.
+     */
+    default void storeUpload(ChatRequest request, MultipartFile image) {
+        if (image == null || image.isEmpty()) {
+            return;
+        }
+        try (InputStream content = image.getInputStream()) {
+            request.setImageHash(store(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read uploaded image", e);
+        }
+        request.setImage(null);
+    }
+
+    static String urlFor(String hash) {
+        return URL_PREFIX + hash;
+    }
+}
@@ -0,0 +1,24 @@
+package com.madlen.chat.service;
+
+import com.madlen.chat.model.ModelCatalog;
+import com.madlen.chat.util.ModelCatalogIndex;
+
+public interface ModelCatalogService {
+
+    /**
+     * The current snapshot. Never blocks on upstream; a stale snapshot triggers a background
+     * refresh and is returned meanwhile.
+     */
+    ModelCatalog getCatalog();
+
+    /**
+     * Query index of the current snapshot, rebuilt only when the list of models changes.
+     */
+    ModelCatalogIndex getIndex();
+
+    /**
+     * Fetches the model list now, unconditionally, and returns the resulting snapshot (the
+     * previous one if the fetch failed).
+     */
+    ModelCatalog refresh();
+}
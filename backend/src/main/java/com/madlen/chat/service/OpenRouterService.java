@@ -4,10 +4,20 @@ import java.util.List;
 import java.util.Map;
 import reactor.core.publisher.Flux;
 
+/**
+ * {@code imageHash} is the hash of an image in the {@link ImageStoreService}, or {@code null}
+ * for a text-only message.
+ */
 public interface OpenRouterService {
-    String sendChatMessage(String message, String model, List<Map<String, String>> messages, String image);
+    String sendChatMessage(String message, String model, List<Map<String, String>> messages, String imageHash);
 
-    Flux<String> streamChatMessage(String message, String model, List<Map<String, String>> messages, String image);
+    Flux<String> streamChatMessage(String message, String model, List<Map<String, String>> messages,
+            String imageHash);
 
-    List<Map<String, Object>> getAvailableModels();
+    /**
+     * With {@code shareInFlight=false} the call never joins an identical request already in
+     * flight, e.g. for a hedge that must reach the model independently.
+     */
+    Flux<String> streamChatMessage(String message, String model, List<Map<String, String>> messages,
+            String imageHash, boolean shareInFlight);
 }
@@ -0,0 +1,28 @@
+package com.madlen.chat.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface ResponseCacheService {
+
+    /**
+     * Cache key of a request. {@code fingerprint} is set when the exact-match layer applies,
+     * {@code prompt} (the normalized prompt) when the near-duplicate layer does.
+     */
+    record Key(String model, String fingerprint, String prompt) {
+    }
+
+    /**
+     * Cache key for a request, or {@code null} if its answer must not be cached (cache
+     * disabled, image attached).
+     */
+    Key keyFor(String message, String model, List<Map<String, String>> history, String image);
+
+    Optional<String> get(Key key);
+
+    /**
+     * Stores a complete answer. The Redis write is scheduled and not awaited.
+     */
+    void put(Key key, String response);
+}
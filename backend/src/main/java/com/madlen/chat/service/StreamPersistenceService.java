@@ -0,0 +1,13 @@
+package com.madlen.chat.service;
+
+import reactor.core.publisher.Mono;
+
+public interface StreamPersistenceService {
+    Mono<Long> saveAssistantMessage(Long conversationId, String content, String model, String titleSource);
+
+    /**
+     * Saves the part of an answer that was generated before the stream was cancelled,
+     * flagged as interrupted. The save is scheduled and not awaited.
+     */
+    void saveInterruptedMessage(Long conversationId, String partialContent, String model, String titleSource);
+}
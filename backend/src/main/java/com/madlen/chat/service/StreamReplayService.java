@@ -0,0 +1,12 @@
+package com.madlen.chat.service;
+
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.Optional;
+
+public interface StreamReplayService {
+    Flux<ServerSentEvent<String>> register(Long conversationId, Long userId, Flux<ServerSentEvent<String>> events);
+
+    Optional<Flux<ServerSentEvent<String>>> resume(String lastEventId, Long userId);
+}
@@ -6,4 +6,6 @@ import reactor.core.publisher.Flux;
 
 public interface StreamingChatService {
     Flux<ServerSentEvent<String>> streamChat(ChatRequest request, Long userId);
+
+    Flux<ServerSentEvent<String>> resumeStream(String lastEventId, Long userId);
 }
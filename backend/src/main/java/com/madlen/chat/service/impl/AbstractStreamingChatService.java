@@ -0,0 +1,320 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.dto.ChatRequest;
+import com.madlen.chat.service.ConversationSummaryService;
+import com.madlen.chat.service.OpenRouterService;
+import com.madlen.chat.service.ResponseCacheService;
+import com.madlen.chat.service.StreamPersistenceService;
+import com.madlen.chat.service.StreamReplayService;
+import com.madlen.chat.service.StreamingChatService;
+import com.madlen.chat.util.Constants;
+import com.madlen.chat.util.ContextWindowBuilder;
+import com.madlen.chat.util.OpenRouterConstants;
+import com.madlen.chat.util.SseContentCoalescer;
+import com.madlen.chat.util.StreamHedger;
+import com.madlen.chat.util.UpstreamErrors;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming flow shared by the JPA and the R2DBC backed implementations: builds the
+ * init/content/complete event sequence, registers it with the replay log and adds
+ * heartbeats. Subclasses only decide how the conversation, the user message and the
+ * history are loaded before the stream starts.
+ */
+abstract class AbstractStreamingChatService implements StreamingChatService {
+
+    private static final ServerSentEvent<String> HEARTBEAT = ServerSentEvent.<String>builder()
+            .comment("heartbeat")
+            .build();
+
+    private final OpenRouterService openRouterService;
+    private final StreamPersistenceService streamPersistenceService;
+    private final StreamReplayService streamReplayService;
+    private final SseContentCoalescer contentCoalescer;
+    private final StreamHedger streamHedger;
+    private final ResponseCacheService responseCache;
+    private final ContextWindowBuilder contextWindowBuilder;
+    private final ConversationSummaryService conversationSummaryService;
+    private final Tracer tracer;
+    private final Duration heartbeatInterval;
+
+    protected AbstractStreamingChatService(OpenRouterService openRouterService,
+            StreamPersistenceService streamPersistenceService,
+            StreamReplayService streamReplayService,
+            SseContentCoalescer contentCoalescer,
+            StreamHedger streamHedger,
+            ResponseCacheService responseCache,
+            ContextWindowBuilder contextWindowBuilder,
+            ConversationSummaryService conversationSummaryService,
+            Tracer tracer,
+            long heartbeatIntervalMs) {
+        this.openRouterService = openRouterService;
+        this.streamPersistenceService = streamPersistenceService;
+        this.streamReplayService = streamReplayService;
+        this.contentCoalescer = contentCoalescer;
+        this.streamHedger = streamHedger;
+        this.responseCache = responseCache;
+        this.contextWindowBuilder = contextWindowBuilder;
+        this.conversationSummaryService = conversationSummaryService;
+        this.tracer = tracer;
+        this.heartbeatInterval = Duration.ofMillis(Math.max(0, heartbeatIntervalMs));
+    }
+
+    @Override
+    public Flux<ServerSentEvent<String>> resumeStream(String lastEventId, Long userId) {
+        return streamReplayService.resume(lastEventId, userId)
+                .map(this::withHeartbeat)
+                .orElseGet(() -> Flux.just(errorEvent("Stream is no longer available. Please reload the conversation.")));
+    }
+
+    private static List<Map<String, String>> withoutCurrentMessage(List<Map<String, String>> history,
+            String message) {
+        if (history == null || history.isEmpty()) {
+            return history;
+        }
+        Map<String, String> last = history.get(history.size() - 1);
+        return OpenRouterConstants.ROLE_USER.equals(last.get("role")) && Objects.equals(message, last.get("content"))
+                ? history.subList(0, history.size() - 1)
+                : history;
+    }
+
+    protected Span startSpan(ChatRequest request, Long userId) {
+        return tracer.spanBuilder("streaming.chat")
+                .setAttribute("model", request.getModel())
+                .setAttribute("userId", userId)
+                .startSpan();
+    }
+
+    /**
+     * Starts generation for a conversation whose user message is already stored. That
+     * message ends {@code fullHistory} and is removed, as the request adds it itself; the
+     * rest is cut to the model's context window and if that drops turns, a summary update is
+     * requested. The span is ended when the event sequence terminates or is cancelled.
+     */
+    protected Flux<ServerSentEvent<String>> startStream(ChatRequest request, Long userId, Long conversationId,
+            List<Map<String, String>> fullHistory, Span span) {
+        ContextWindowBuilder.Window window = contextWindowBuilder.fit(request.getModel(),
+                withoutCurrentMessage(fullHistory, request.getMessage()), request.getMessage(), request.hasImage());
+        window.recordOn(span);
+        if (window.droppedTurns() > 0) {
+            conversationSummaryService.requestUpdate(conversationId);
+        }
+        List<Map<String, String>> history = window.history();
+        StringBuffer fullResponse = new StringBuffer();
+        AtomicBoolean contentCompleted = new AtomicBoolean();
+        // the model that actually answered, which differs from the requested one if a hedge won
+        AtomicReference<String> servedModel = new AtomicReference<>(request.getModel());
+
+        Flux<ServerSentEvent<String>> initEvent = Flux.just(
+                ServerSentEvent.<String>builder()
+                        .event("init")
+                        .data("{\"conversationId\":" + conversationId + "}")
+                        .build());
+
+        Flux<ServerSentEvent<String>> contentStream = createContentStream(
+                request, history, fullResponse, contentCompleted, servedModel, span)
+                .doOnCancel(() -> saveInterruptedResponse(request, conversationId, fullResponse, servedModel.get()));
+
+        Flux<ServerSentEvent<String>> completeEvent = Mono.defer(() -> contentCompleted.get()
+                        ? streamPersistenceService.saveAssistantMessage(conversationId, fullResponse.toString(),
+                                servedModel.get(), titleSourceFor(request))
+                        : Mono.<Long>empty())
+                .defaultIfEmpty(0L)
+                .map(messageId -> ServerSentEvent.<String>builder()
+                        .event("complete")
+                        .data("{\"messageId\":" + messageId
+                                + ",\"conversationId\":"
+                                + conversationId + "}")
+                        .build())
+                .onErrorResume(error -> Mono.just(
+                        errorEvent("Response was generated but could not be saved. Please try again.")))
+                .flux();
+
+        Flux<ServerSentEvent<String>> events = initEvent.concatWith(contentStream).concatWith(completeEvent)
+                .doOnComplete(() -> {
+                    span.setStatus(StatusCode.OK);
+                    span.end();
+                })
+                .doOnError(error -> {
+                    span.setStatus(StatusCode.ERROR, error.getMessage());
+                    span.recordException(error);
+                    span.end();
+                })
+                .doOnCancel(() -> {
+                    span.setAttribute("interrupted", true);
+                    span.end();
+                });
+
+        return withHeartbeat(streamReplayService.register(conversationId, userId, events));
+    }
+
+    protected static ServerSentEvent<String> errorEvent(String message) {
+        return ServerSentEvent.<String>builder()
+                .event("error")
+                .data(message)
+                .build();
+    }
+
+    protected static boolean isTestMode(ChatRequest request) {
+        return request.getMessage() != null && request.getMessage().startsWith(Constants.TEST_MESSAGE_PREFIX);
+    }
+
+    protected static String titleSourceFor(ChatRequest request) {
+        return isTestMode(request)
+                ? request.getMessage().substring(Constants.TEST_MESSAGE_PREFIX.length())
+                : request.getMessage();
+    }
+
+    /**
+     * Interleaves SSE comment lines while the stream is idle (e.g. the model is still
+     * thinking), so a write to a dead connection fails and the subscription is cancelled
+     * within one interval instead of when the answer ends.
+     */
+    private Flux<ServerSentEvent<String>> withHeartbeat(Flux<ServerSentEvent<String>> events) {
+        if (heartbeatInterval.isZero()) {
+            return events;
+        }
+        // prefetch 1 on both operators keeps the client's demand visible to the replay log
+        return events.publish(shared -> Flux.merge(1, shared,
+                Flux.interval(heartbeatInterval, heartbeatInterval)
+                        .map(tick -> HEARTBEAT)
+                        .onBackpressureDrop()
+                        .takeUntilOther(shared.then())), 1);
+    }
+
+    private void saveInterruptedResponse(ChatRequest request, Long conversationId, StringBuffer fullResponse,
+            String model) {
+        String partial = fullResponse.toString();
+        if (partial.isEmpty()) {
+            return;
+        }
+        streamPersistenceService.saveInterruptedMessage(conversationId, partial, model, titleSourceFor(request));
+    }
+
+    private Flux<ServerSentEvent<String>> createContentStream(
+            ChatRequest request,
+            List<Map<String, String>> history,
+            StringBuffer fullResponse,
+            AtomicBoolean contentCompleted,
+            AtomicReference<String> servedModel,
+            Span span) {
+
+        if (isTestMode(request)) {
+            return createTestStream(titleSourceFor(request), fullResponse, contentCompleted);
+        } else {
+            return createRealStream(request, history, fullResponse, contentCompleted, servedModel, span);
+        }
+    }
+
+    private Flux<ServerSentEvent<String>> createTestStream(
+            String testMessage,
+            StringBuffer fullResponse,
+            AtomicBoolean contentCompleted) {
+
+        String mockResponse = "This is a test streaming response. Your message: \"" + testMessage + "\"\n\n" +
+                "Streaming feature is working! Messages are coming word by word. ";
+        String[] words = mockResponse.split(" ");
+
+        return Flux.fromIterable(Arrays.asList(words))
+                .delayElements(Duration.ofMillis(100), Schedulers.boundedElastic())
+                .map(word -> {
+                    fullResponse.append(word).append(" ");
+                    return ServerSentEvent.<String>builder()
+                            .event("content")
+                            .data(word + " ")
+                            .build();
+                })
+                .concatWith(Flux.just(ServerSentEvent.<String>builder()
+                        .event("content")
+                        .data("\n\n✅ Streaming successfully tested!")
+                        .build()))
+                .doOnComplete(() -> {
+                    fullResponse.append("\n\n✅ Streaming successfully tested!");
+                    contentCompleted.set(true);
+                });
+    }
+
+    private Flux<ServerSentEvent<String>> createRealStream(
+            ChatRequest request,
+            List<Map<String, String>> history,
+            StringBuffer fullResponse,
+            AtomicBoolean contentCompleted,
+            AtomicReference<String> servedModel,
+            Span span) {
+
+        ResponseCacheService.Key cacheKey = responseCache.keyFor(request.getMessage(), request.getModel(), history,
+                request.getImageHash());
+        AtomicBoolean cacheHit = new AtomicBoolean();
+        Flux<String> upstream = streamHedger.stream(request.getModel(), request.hasImage(),
+                // a hedge must not join the primary's in-flight call
+                (model, hedge) -> openRouterService.streamChatMessage(
+                        request.getMessage(),
+                        model,
+                        history,
+                        request.getImageHash(),
+                        !hedge),
+                model -> {
+                    servedModel.set(model);
+                    span.setAttribute("servedModel", model);
+                });
+        Flux<String> tokens = cacheKey == null ? upstream
+                : Mono.fromCallable(() -> responseCache.get(cacheKey))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMapMany(cached -> {
+                            span.setAttribute("cacheHit", cached.isPresent());
+                            cacheHit.set(cached.isPresent());
+                            return cached.map(AbstractStreamingChatService::replayTokens).orElse(upstream);
+                        });
+
+        return tokens
+                .doOnNext(chunk -> fullResponse.append(chunk))
+                .transform(contentCoalescer::coalesce)
+                .map(chunk -> ServerSentEvent.<String>builder()
+                        .event("content")
+                        .data(chunk)
+                        .build())
+                .doOnComplete(() -> {
+                    contentCompleted.set(true);
+                    // only answers from the requested model are valid for its fingerprint
+                    if (cacheKey != null && !cacheHit.get() && request.getModel().equals(servedModel.get())) {
+                        responseCache.put(cacheKey, fullResponse.toString());
+                    }
+                })
+                .onErrorResume(error -> {
+                    String errorMessage = error.getMessage();
+                    if (errorMessage != null
+                            && (errorMessage.contains("429") || errorMessage.toLowerCase().contains("rate limit")
+                                    || errorMessage.toLowerCase().contains("too many requests"))) {
+                        Duration retryAfter = UpstreamErrors.retryAfter(error.getCause());
+                        errorMessage = retryAfter != null && retryAfter.toSeconds() > 0
+                                ? "429 Too Many Requests: Rate limit exceeded. Please wait " + retryAfter.toSeconds()
+                                        + " seconds and try again."
+                                : "429 Too Many Requests: Rate limit exceeded. Please wait a moment and try again.";
+                    }
+                    return Flux.just(errorEvent(
+                            errorMessage != null ? errorMessage : "An error occurred while streaming"));
+                });
+    }
+
+    /**
+     * Splits a cached answer into word-sized tokens so it goes through the same coalescing
+     * as a live stream.
+     */
+    private static Flux<String> replayTokens(String response) {
+        return Flux.fromArray(response.split("(?<=\\s)"));
+    }
+}
@@ -4,6 +4,7 @@ import com.madlen.chat.dto.ChatRequest;
 import com.madlen.chat.dto.ChatResponse;
 import com.madlen.chat.exception.ResourceNotFoundException;
 import com.madlen.chat.model.Conversation;
+import com.madlen.chat.model.HistoryEntry;
 import com.madlen.chat.model.Message;
 import com.madlen.chat.model.User;
 import com.madlen.chat.repository.ConversationRepository;
@@ -11,73 +12,118 @@ import com.madlen.chat.repository.MessageRepository;
 import com.madlen.chat.repository.UserRepository;
 import com.madlen.chat.service.ChatService;
 import com.madlen.chat.service.ConversationService;
+import com.madlen.chat.service.ConversationSummaryService;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.service.ImageStoreService;
 import com.madlen.chat.service.OpenRouterService;
+import com.madlen.chat.service.ResponseCacheService;
 import com.madlen.chat.util.Constants;
+import com.madlen.chat.util.ContextWindowBuilder;
 import com.madlen.chat.util.ConversationHelper;
 import com.madlen.chat.util.MessageFactory;
-import com.madlen.chat.util.MessageHistoryBuilder;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Scope;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
+/**
+ * Blocking chat flow. The model call can take up to a minute, so it runs outside any
+ * transaction: history is read in a short read-only transaction, the model is called with
+ * no connection held, and both messages are written in a second short transaction.
+ * A new conversation is only created in the write phase, so a failed model call does
+ * not leave an empty conversation behind.
+ */
 @Service
 public class ChatServiceImpl implements ChatService {
     
     private final OpenRouterService openRouterService;
+    private final ResponseCacheService responseCache;
+    private final ContextWindowBuilder contextWindowBuilder;
+    private final HistoryCacheService historyCache;
+    private final ImageStoreService imageStore;
     private final ConversationService conversationService;
+    private final ConversationSummaryService conversationSummaryService;
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final Tracer tracer;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
     
     public ChatServiceImpl(OpenRouterService openRouterService,
+                          ResponseCacheService responseCache,
+                          ContextWindowBuilder contextWindowBuilder,
+                          HistoryCacheService historyCache,
+                          ImageStoreService imageStore,
                           ConversationService conversationService,
+                          ConversationSummaryService conversationSummaryService,
                           ConversationRepository conversationRepository,
                           MessageRepository messageRepository,
                           UserRepository userRepository,
-                          Tracer tracer) {
+                          Tracer tracer,
+                          PlatformTransactionManager transactionManager) {
         this.openRouterService = openRouterService;
+        this.responseCache = responseCache;
+        this.contextWindowBuilder = contextWindowBuilder;
+        this.historyCache = historyCache;
+        this.imageStore = imageStore;
         this.conversationService = conversationService;
+        this.conversationSummaryService = conversationSummaryService;
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
         this.userRepository = userRepository;
         this.tracer = tracer;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
     }
     
     @Override
-    @Transactional
     public ChatResponse sendMessage(ChatRequest request, Long userId) {
         Span span = tracer.spanBuilder("chat.send_message")
                 .setAttribute("user.id", userId)
                 .setAttribute("model", request.getModel())
-                .setAttribute("has.image", request.getImage() != null && !request.getImage().isEmpty())
+                .setAttribute("has.image", request.hasImage())
                 .startSpan();
         
         try (Scope scope = span.makeCurrent()) {
-            validateUser(userId);
-            
-            Conversation conversation = getOrCreateConversation(request, userId, span);
-            span.setAttribute("conversation.id", conversation.getId());
-            
-            List<Map<String, String>> history = MessageHistoryBuilder.buildMessageHistory(
-                    conversation.getId(), messageRepository);
-            span.setAttribute("history.size", history.size());
+            List<Map<String, String>> fullHistory = readTransaction.execute(status -> {
+                validateUser(userId);
+                return loadHistory(request, userId);
+            });
+            span.setAttribute("history.size", fullHistory.size());
+            ContextWindowBuilder.Window window = contextWindowBuilder.fit(request.getModel(), fullHistory,
+                    request.getMessage(), request.hasImage());
+            window.recordOn(span);
+            if (window.droppedTurns() > 0) {
+                conversationSummaryService.requestUpdate(request.getConversationId());
+            }
+            List<Map<String, String>> history = window.history();
             
+            String imageUrl = imageStore.storeImage(request);
             String response = callOpenRouterAPI(request, history, span);
             
-            Message userMessage = saveUserMessage(request, conversation, span);
-            Message assistantMessage = saveAssistantMessage(conversation, response, request.getModel(), span);
-            
-            ConversationHelper.updateConversationTitleIfNeeded(
-                    conversation, request.getMessage(), conversationRepository);
+            ChatResponse chatResponse = writeTransaction.execute(status -> {
+                Conversation conversation = getOrCreateConversation(request, userId, span);
+                span.setAttribute("conversation.id", conversation.getId());
+                
+                saveUserMessage(request, conversation, imageUrl, span);
+                Message assistantMessage = saveAssistantMessage(conversation, response, request.getModel(), span);
+                
+                ConversationHelper.updateConversationTitleIfNeeded(
+                        conversation, request.getMessage(), conversationRepository);
+                return new ChatResponse(response, conversation.getId(), assistantMessage.getId());
+            });
             
             span.setAttribute("success", true);
-            return new ChatResponse(response, conversation.getId(), assistantMessage.getId());
+            return chatResponse;
         } catch (Exception e) {
             span.recordException(e);
             span.setAttribute("success", false);
@@ -92,6 +138,16 @@ public class ChatServiceImpl implements ChatService {
                 .orElseThrow(() -> new ResourceNotFoundException("User", userId));
     }
     
+    private List<Map<String, String>> loadHistory(ChatRequest request, Long userId) {
+        if (request.getConversationId() == null) {
+            return Collections.emptyList();
+        }
+        if (!conversationRepository.existsByIdAndUserId(request.getConversationId(), userId)) {
+            throw new ResourceNotFoundException("Conversation", request.getConversationId());
+        }
+        return historyCache.load(request.getConversationId());
+    }
+    
     private Conversation getOrCreateConversation(ChatRequest request, Long userId, Span parentSpan) {
         Conversation conversation = ConversationHelper.getOrCreateConversation(
                 request, userId, conversationRepository, conversationService);
@@ -110,12 +166,23 @@ public class ChatServiceImpl implements ChatService {
                 .startSpan();
         
         try {
+            ResponseCacheService.Key cacheKey = responseCache.keyFor(
+                    request.getMessage(), request.getModel(), history, request.getImageHash());
+            Optional<String> cached = responseCache.get(cacheKey);
+            apiSpan.setAttribute("cache.hit", cached.isPresent());
+            if (cached.isPresent()) {
+                apiSpan.setAttribute("response.length", cached.get().length());
+                apiSpan.setAttribute("success", true);
+                return cached.get();
+            }
+            
             String response = openRouterService.sendChatMessage(
                     request.getMessage(),
                     request.getModel(),
                     history,
-                    request.getImage()
+                    request.getImageHash()
             );
+            responseCache.put(cacheKey, response);
             apiSpan.setAttribute("response.length", response.length());
             apiSpan.setAttribute("success", true);
             return response;
@@ -128,7 +195,8 @@ public class ChatServiceImpl implements ChatService {
         }
     }
     
-    private Message saveUserMessage(ChatRequest request, Conversation conversation, Span parentSpan) {
+    private Message saveUserMessage(ChatRequest request, Conversation conversation, String imageUrl,
+            Span parentSpan) {
         Span saveSpan = tracer.spanBuilder("db.save_message")
                 .setAttribute("role", "USER")
                 .startSpan();
@@ -138,9 +206,10 @@ public class ChatServiceImpl implements ChatService {
                     conversation,
                     request.getMessage(),
                     request.getModel(),
-                    request.getImage()
+                    imageUrl
             );
             userMessage = messageRepository.save(userMessage);
+            historyCache.append(conversation.getId(), HistoryEntry.of(userMessage));
             saveSpan.setAttribute("message.id", userMessage.getId());
             saveSpan.setAttribute("success", true);
             return userMessage;
@@ -161,6 +230,7 @@ public class ChatServiceImpl implements ChatService {
         try {
             Message assistantMessage = MessageFactory.createAssistantMessage(conversation, response, model);
             assistantMessage = messageRepository.save(assistantMessage);
+            historyCache.append(conversation.getId(), HistoryEntry.of(assistantMessage));
             saveResponseSpan.setAttribute("message.id", assistantMessage.getId());
             saveResponseSpan.setAttribute("success", true);
             return assistantMessage;
@@ -8,6 +8,7 @@ import com.madlen.chat.model.User;
 import com.madlen.chat.repository.ConversationRepository;
 import com.madlen.chat.repository.UserRepository;
 import com.madlen.chat.service.ConversationService;
+import com.madlen.chat.service.HistoryCacheService;
 import com.madlen.chat.util.CacheConstants;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
@@ -25,13 +26,16 @@ public class ConversationServiceImpl implements ConversationService {
     private final ConversationRepository conversationRepository;
     private final UserRepository userRepository;
     private final com.madlen.chat.repository.MessageRepository messageRepository;
+    private final HistoryCacheService historyCache;
 
     public ConversationServiceImpl(ConversationRepository conversationRepository,
             UserRepository userRepository,
-            com.madlen.chat.repository.MessageRepository messageRepository) {
+            com.madlen.chat.repository.MessageRepository messageRepository,
+            HistoryCacheService historyCache) {
         this.conversationRepository = conversationRepository;
         this.userRepository = userRepository;
         this.messageRepository = messageRepository;
+        this.historyCache = historyCache;
     }
 
     @Override
@@ -50,6 +54,7 @@ public class ConversationServiceImpl implements ConversationService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     @Cacheable(value = CacheConstants.CACHE_CONVERSATIONS, key = "#userId")
     public List<ConversationDto> getUserConversations(Long userId) {
         List<Conversation> conversations = conversationRepository.findByUserIdOrderByUpdatedAtDesc(userId);
@@ -59,12 +64,14 @@ public class ConversationServiceImpl implements ConversationService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<ConversationDto> getUserConversations(Long userId, Pageable pageable) {
         return conversationRepository.findByUserIdOrderByUpdatedAtDesc(userId, pageable)
                 .map(this::convertToDto);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public ConversationDto getConversationById(Long conversationId, Long userId) {
         Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Conversation", conversationId));
@@ -77,6 +84,7 @@ public class ConversationServiceImpl implements ConversationService {
     @CacheEvict(value = CacheConstants.CACHE_CONVERSATIONS, key = "#userId")
     public void deleteConversation(Long conversationId, Long userId) {
         conversationRepository.deleteByIdAndUserId(conversationId, userId);
+        historyCache.invalidate(conversationId);
     }
 
     private ConversationDto convertToDto(Conversation conversation) {
@@ -103,11 +111,13 @@ public class ConversationServiceImpl implements ConversationService {
         dto.setContent(message.getContent());
         dto.setModel(message.getModel());
         dto.setImageUrl(message.getImageUrl());
+        dto.setInterrupted(message.isInterrupted());
         dto.setCreatedAt(message.getCreatedAt());
         return dto;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<ConversationDto.MessageDto> getConversationMessages(Long conversationId, Long userId,
             Pageable pageable) {
         conversationRepository.findByIdAndUserId(conversationId, userId)
@@ -0,0 +1,229 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.model.ConversationSummary;
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.repository.ConversationRepository;
+import com.madlen.chat.repository.ConversationSummaryRepository;
+import com.madlen.chat.repository.MessageRepository;
+import com.madlen.chat.service.ConversationSummaryService;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.service.OpenRouterService;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Background summarizer for long conversations, opt-in with {@code chat.summary.enabled}.
+ *
+ * An update is requested when a conversation's history no longer fits the context window.
+ * It folds every message except the {@code keep-recent-messages} newest into the stored
+ * summary, starting from what the previous summary already covers, and only once at least
+ * {@code min-fold-messages} are waiting. The summary is written by {@code model} if one is
+ * configured, otherwise (or if that call fails) by a local extractive stand-in that keeps
+ * the opening of each message. Updates run on a background scheduler, one at a time per
+ * conversation, never on the request path.
+ */
+@Service
+public class ConversationSummaryServiceImpl implements ConversationSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationSummaryServiceImpl.class);
+    private static final String LOCAL_MODEL = "local";
+    private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+    private static final Attributes MODEL = Attributes.of(RESULT, "model");
+    private static final Attributes LOCAL = Attributes.of(RESULT, "local");
+    private static final Attributes FAILED = Attributes.of(RESULT, "failed");
+    private static final String INSTRUCTIONS = "Update the running summary of a conversation between a user and "
+            + "an assistant. Keep facts, names, numbers, decisions, open questions and the user's goals and "
+            + "preferences; drop small talk. Answer with the updated summary only, as plain text, at most %d "
+            + "characters.%n%nCurrent summary:%n%s%n%nNew messages:%n%s";
+
+    private final ConversationSummaryRepository summaryRepository;
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final OpenRouterService openRouterService;
+    private final HistoryCacheService historyCache;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final boolean enabled;
+    private final String model;
+    private final int keepRecentMessages;
+    private final int minFoldMessages;
+    private final int maxSummaryChars;
+    private final int maxInputChars;
+    private final int excerptChars;
+    private final Set<Long> inProgress = ConcurrentHashMap.newKeySet();
+    private final LongCounter updateCounter;
+
+    public ConversationSummaryServiceImpl(ConversationSummaryRepository summaryRepository,
+            ConversationRepository conversationRepository,
+            MessageRepository messageRepository,
+            OpenRouterService openRouterService,
+            HistoryCacheService historyCache,
+            PlatformTransactionManager transactionManager,
+            Meter meter,
+            @Value("${chat.summary.enabled:false}") boolean enabled,
+            @Value("${chat.summary.model:}") String model,
+            @Value("${chat.summary.keep-recent-messages:10}") int keepRecentMessages,
+            @Value("${chat.summary.min-fold-messages:6}") int minFoldMessages,
+            @Value("${chat.summary.max-summary-chars:4000}") int maxSummaryChars,
+            @Value("${chat.summary.max-input-chars:24000}") int maxInputChars,
+            @Value("${chat.summary.excerpt-chars:200}") int excerptChars) {
+        this.summaryRepository = summaryRepository;
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.openRouterService = openRouterService;
+        this.historyCache = historyCache;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.model = model == null ? "" : model.trim();
+        this.keepRecentMessages = keepRecentMessages;
+        this.minFoldMessages = Math.max(1, minFoldMessages);
+        this.maxSummaryChars = maxSummaryChars;
+        this.maxInputChars = maxInputChars;
+        this.excerptChars = excerptChars;
+        this.updateCounter = meter.counterBuilder("chat.summary.updates")
+                .setDescription("Conversation summary updates by summarizer (model, local) or failed")
+                .build();
+    }
+
+    @Override
+    public void requestUpdate(Long conversationId) {
+        if (!enabled || conversationId == null || !inProgress.add(conversationId)) {
+            return;
+        }
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                update(conversationId);
+            } catch (Exception e) {
+                updateCounter.add(1, FAILED);
+                logger.warn("Failed to update summary of conversation {}: {}", conversationId, e.getMessage());
+            } finally {
+                inProgress.remove(conversationId);
+            }
+        });
+    }
+
+    private void update(Long conversationId) {
+        Pending pending = readTransaction.execute(status -> {
+            ConversationSummary summary = summaryRepository.findByConversationId(conversationId).orElse(null);
+            long coveredId = summary != null ? summary.getCoveredMessageId() : 0L;
+            List<HistoryEntry> messages = messageRepository
+                    .findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(conversationId, coveredId);
+            int fold = messages.size() - keepRecentMessages;
+            if (fold < minFoldMessages) {
+                return null;
+            }
+            return new Pending(summary != null ? summary.getContent() : "", List.copyOf(messages.subList(0, fold)),
+                    messages.get(fold - 1).id());
+        });
+        if (pending == null) {
+            return;
+        }
+
+        String summarizer = LOCAL_MODEL;
+        String content = null;
+        if (!model.isEmpty()) {
+            try {
+                content = summarizeWithModel(pending);
+                summarizer = model;
+            } catch (Exception e) {
+                logger.warn("Summary model {} failed for conversation {}, using local summary: {}",
+                        model, conversationId, e.getMessage());
+            }
+        }
+        if (content == null || content.isBlank()) {
+            content = summarizeLocally(pending);
+            summarizer = LOCAL_MODEL;
+        }
+
+        String finalContent = content.length() > maxSummaryChars ? content.substring(0, maxSummaryChars) : content;
+        String finalSummarizer = summarizer;
+        writeTransaction.executeWithoutResult(status -> {
+            ConversationSummary summary = summaryRepository.findByConversationId(conversationId)
+                    .orElseGet(() -> {
+                        ConversationSummary created = new ConversationSummary();
+                        created.setConversation(conversationRepository.getReferenceById(conversationId));
+                        return created;
+                    });
+            if (summary.getCoveredMessageId() != null && summary.getCoveredMessageId() >= pending.coveredMessageId()) {
+                return;
+            }
+            summary.setContent(finalContent);
+            summary.setCoveredMessageId(pending.coveredMessageId());
+            summary.setCoveredMessages(summary.getCoveredMessages() + pending.messages().size());
+            summary.setModel(finalSummarizer);
+            summaryRepository.save(summary);
+            historyCache.putSummary(conversationId, pending.coveredMessageId(), finalContent);
+        });
+        updateCounter.add(1, LOCAL_MODEL.equals(summarizer) ? LOCAL : MODEL);
+        logger.debug("Summary of conversation {} now covers messages up to {}", conversationId,
+                pending.coveredMessageId());
+    }
+
+    private String summarizeWithModel(Pending pending) {
+        StringBuilder transcript = new StringBuilder();
+        for (HistoryEntry message : pending.messages()) {
+            String line = label(message.role()) + ": " + message.content() + "\n";
+            if (transcript.length() + line.length() > maxInputChars) {
+                transcript.append(line, 0, Math.max(0, maxInputChars - transcript.length()));
+                break;
+            }
+            transcript.append(line);
+        }
+        String prompt = String.format(INSTRUCTIONS, maxSummaryChars,
+                pending.previous().isEmpty() ? "(none)" : pending.previous(), transcript);
+        return openRouterService.sendChatMessage(prompt, model, List.of(), null);
+    }
+
+    /**
+     * Appends one line per message with its opening, then drops the oldest lines beyond
+     * {@code max-summary-chars}.
+     */
+    private String summarizeLocally(Pending pending) {
+        Deque<String> lines = new ArrayDeque<>();
+        if (!pending.previous().isEmpty()) {
+            lines.addAll(List.of(pending.previous().split("\n")));
+        }
+        for (HistoryEntry message : pending.messages()) {
+            lines.addLast("- " + label(message.role()) + ": " + excerpt(message.content()));
+        }
+        int length = lines.stream().mapToInt(line -> line.length() + 1).sum();
+        while (length > maxSummaryChars && lines.size() > 1) {
+            length -= lines.removeFirst().length() + 1;
+        }
+        return String.join("\n", lines);
+    }
+
+    private String excerpt(String content) {
+        String text = content == null ? "" : content.strip().replaceAll("\\s+", " ");
+        if (text.length() <= excerptChars) {
+            return text;
+        }
+        int sentenceEnd = text.lastIndexOf(". ", excerptChars);
+        return sentenceEnd > excerptChars / 2 ? text.substring(0, sentenceEnd + 1) : text.substring(0, excerptChars) + "…";
+    }
+
+    private static String label(Message.MessageRole role) {
+        return role == Message.MessageRole.USER ? "User" : "Assistant";
+    }
+
+    private record Pending(String previous, List<HistoryEntry> messages, long coveredMessageId) {
+    }
+}
@@ -0,0 +1,342 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.model.ConversationSummary;
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.repository.ConversationSummaryRepository;
+import com.madlen.chat.repository.MessageRepository;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.util.CacheHelper;
+import com.madlen.chat.util.MessageHistoryBuilder;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps each conversation's messages as a Redis list of {@code id \t role \t content}
+ * entries, appended to whenever a message is saved, next to the latest summary and a
+ * generation counter. All operations are Lua scripts, so a read is one round trip.
+ *
+ * Every write that can make a list stale (a message saved while no list exists, an append
+ * out of id order, a deleted conversation) increments the generation; a fill after a miss
+ * only applies if the generation is still the one the miss returned, so a rebuild from the
+ * database that raced with a write is discarded instead of caching an outdated history.
+ * Lists reaching {@code max-entries} are dropped and rebuilt from the summary onwards.
+ * Redis failures are treated as misses.
+ */
+@Service
+public class HistoryCacheServiceImpl implements HistoryCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryCacheServiceImpl.class);
+    private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+    private static final Attributes HIT = Attributes.of(RESULT, "hit");
+    private static final Attributes MISS = Attributes.of(RESULT, "miss");
+    private static final Attributes ERROR = Attributes.of(RESULT, "error");
+    private static final char SEPARATOR = '\t';
+    private static final long NO_GENERATION = -1;
+
+    // KEYS: list, generation, summary. ARGV: ttl ms
+    private static final RedisScript<List> READ = new DefaultRedisScript<>("""
+            local entries = redis.call('LRANGE', KEYS[1], 0, -1)
+            local gen = redis.call('GET', KEYS[2]) or '0'
+            if #entries == 0 then
+              return {gen}
+            end
+            local ttl = tonumber(ARGV[1])
+            redis.call('PEXPIRE', KEYS[1], ttl)
+            redis.call('PEXPIRE', KEYS[2], ttl * 2)
+            local summary = redis.call('GET', KEYS[3])
+            if summary then
+              redis.call('PEXPIRE', KEYS[3], ttl)
+            end
+            local result = {gen, summary or ''}
+            for i = 1, #entries do
+              result[i + 2] = entries[i]
+            end
+            return result
+            """, List.class);
+
+    // ARGV: expected generation, ttl ms, summary or '', entries...
+    private static final RedisScript<Long> FILL = new DefaultRedisScript<>("""
+            local gen = redis.call('GET', KEYS[2]) or '0'
+            if gen ~= ARGV[1] or redis.call('EXISTS', KEYS[1]) == 1 then
+              return 0
+            end
+            local ttl = tonumber(ARGV[2])
+            redis.call('RPUSH', KEYS[1], '#')
+            for i = 4, #ARGV, 500 do
+              redis.call('RPUSH', KEYS[1], unpack(ARGV, i, math.min(i + 499, #ARGV)))
+            end
+            redis.call('PEXPIRE', KEYS[1], ttl)
+            redis.call('SET', KEYS[2], gen, 'PX', ttl * 2)
+            if ARGV[3] == '' then
+              redis.call('DEL', KEYS[3])
+            else
+              redis.call('SET', KEYS[3], ARGV[3], 'PX', ttl)
+            end
+            return 1
+            """, Long.class);
+
+    // ARGV: message id, entry, ttl ms, max entries
+    private static final RedisScript<Long> APPEND = new DefaultRedisScript<>("""
+            local ttl = tonumber(ARGV[3])
+            local last = redis.call('LINDEX', KEYS[1], -1)
+            if not last then
+              redis.call('INCR', KEYS[2])
+              redis.call('PEXPIRE', KEYS[2], ttl * 2)
+              return 0
+            end
+            local lastId = tonumber(string.match(last, '^(%d+)\\t')) or 0
+            local id = tonumber(ARGV[1])
+            if lastId == id then
+              return 1
+            end
+            if lastId > id or redis.call('LLEN', KEYS[1]) > tonumber(ARGV[4]) then
+              redis.call('DEL', KEYS[1])
+              redis.call('INCR', KEYS[2])
+              redis.call('PEXPIRE', KEYS[2], ttl * 2)
+              return 0
+            end
+            redis.call('RPUSH', KEYS[1], ARGV[2])
+            redis.call('PEXPIRE', KEYS[1], ttl)
+            redis.call('PEXPIRE', KEYS[2], ttl * 2)
+            return 1
+            """, Long.class);
+
+    // ARGV: summary, ttl ms
+    private static final RedisScript<Long> PUT_SUMMARY = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              return 0
+            end
+            redis.call('SET', KEYS[3], ARGV[1], 'PX', tonumber(ARGV[2]))
+            return 1
+            """, Long.class);
+
+    // ARGV: ttl ms
+    private static final RedisScript<Long> INVALIDATE = new DefaultRedisScript<>("""
+            redis.call('INCR', KEYS[2])
+            redis.call('PEXPIRE', KEYS[2], tonumber(ARGV[1]) * 2)
+            redis.call('DEL', KEYS[1], KEYS[3])
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MessageRepository messageRepository;
+    private final ConversationSummaryRepository summaryRepository;
+    private final boolean enabled;
+    private final String ttlMillis;
+    private final int maxEntries;
+    private final LongCounter lookupCounter;
+
+    public HistoryCacheServiceImpl(StringRedisTemplate redisTemplate,
+            MessageRepository messageRepository,
+            ConversationSummaryRepository summaryRepository,
+            Meter meter,
+            @Value("${chat.history-cache.enabled:true}") boolean enabled,
+            @Value("${chat.history-cache.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${chat.history-cache.max-entries:1000}") int maxEntries) {
+        this.redisTemplate = redisTemplate;
+        this.messageRepository = messageRepository;
+        this.summaryRepository = summaryRepository;
+        this.enabled = enabled;
+        this.ttlMillis = String.valueOf(ttlSeconds * 1000);
+        this.maxEntries = maxEntries;
+        this.lookupCounter = meter.counterBuilder("chat.history_cache.lookups")
+                .setDescription("Conversation history cache lookups by result (hit, miss, error)")
+                .build();
+    }
+
+    @Override
+    public List<Map<String, String>> load(Long conversationId) {
+        Lookup lookup = read(conversationId);
+        if (lookup.hit()) {
+            return lookup.history();
+        }
+        Optional<ConversationSummary> summary = summaryRepository.findByConversationId(conversationId);
+        Long coveredId = summary.map(ConversationSummary::getCoveredMessageId).orElse(null);
+        String content = summary.map(ConversationSummary::getContent).orElse(null);
+        List<HistoryEntry> messages = coveredId == null
+                ? messageRepository.findHistoryByConversationIdOrderByCreatedAtAsc(conversationId)
+                : messageRepository.findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(
+                        conversationId, coveredId);
+        fill(conversationId, lookup.generation(), messages, coveredId, content);
+        return toHistory(messages, coveredId, content);
+    }
+
+    @Override
+    public Lookup read(Long conversationId) {
+        if (!enabled || conversationId == null) {
+            return new Lookup(null, NO_GENERATION);
+        }
+        List<?> result;
+        try {
+            result = redisTemplate.execute(READ, keys(conversationId), ttlMillis);
+        } catch (Exception e) {
+            lookupCounter.add(1, ERROR);
+            logger.warn("History cache read failed for conversation {}, loading from database: {}",
+                    conversationId, e.getMessage());
+            return new Lookup(null, NO_GENERATION);
+        }
+        long generation = Long.parseLong((String) result.get(0));
+        if (result.size() == 1) {
+            lookupCounter.add(1, MISS);
+            return new Lookup(null, generation);
+        }
+
+        String summary = (String) result.get(1);
+        Long coveredId = null;
+        String content = null;
+        if (!summary.isEmpty()) {
+            int separator = summary.indexOf(SEPARATOR);
+            coveredId = Long.parseLong(summary.substring(0, separator));
+            content = summary.substring(separator + 1);
+        }
+        // index 2 is the list header
+        List<HistoryEntry> messages = new ArrayList<>(result.size() - 3);
+        for (int i = 3; i < result.size(); i++) {
+            messages.add(decode((String) result.get(i)));
+        }
+        lookupCounter.add(1, HIT);
+        return new Lookup(toHistory(messages, coveredId, content), generation);
+    }
+
+    @Override
+    public void fill(Long conversationId, long generation, List<HistoryEntry> messages,
+            Long summaryCoveredMessageId, String summary) {
+        if (!enabled || generation == NO_GENERATION || messages.size() >= maxEntries) {
+            return;
+        }
+        String[] args = new String[messages.size() + 3];
+        args[0] = String.valueOf(generation);
+        args[1] = ttlMillis;
+        args[2] = summary != null ? encodeSummary(summaryCoveredMessageId, summary) : "";
+        for (int i = 0; i < messages.size(); i++) {
+            args[i + 3] = encode(messages.get(i));
+        }
+        try {
+            redisTemplate.execute(FILL, keys(conversationId), (Object[]) args);
+        } catch (Exception e) {
+            logger.warn("Failed to fill history cache for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    @Override
+    public List<Map<String, String>> toHistory(List<HistoryEntry> messages, Long summaryCoveredMessageId,
+            String summary) {
+        List<Map<String, String>> history = new ArrayList<>(messages.size() + 1);
+        if (summary != null) {
+            history.add(MessageHistoryBuilder.summaryEntry(summary));
+        }
+        for (HistoryEntry message : messages) {
+            if (summaryCoveredMessageId == null || message.id() > summaryCoveredMessageId) {
+                history.add(MessageHistoryBuilder.historyEntry(message.role(), message.content()));
+            }
+        }
+        return Collections.unmodifiableList(history);
+    }
+
+    @Override
+    public void append(Long conversationId, HistoryEntry message) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> {
+            try {
+                redisTemplate.execute(APPEND, keys(conversationId), String.valueOf(message.id()), encode(message),
+                        ttlMillis, String.valueOf(maxEntries));
+            } catch (Exception e) {
+                logger.warn("Failed to append to history cache for conversation {}: {}",
+                        conversationId, e.getMessage());
+                invalidateNow(conversationId);
+            }
+        });
+    }
+
+    @Override
+    public void putSummary(Long conversationId, long coveredMessageId, String summary) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> {
+            try {
+                redisTemplate.execute(PUT_SUMMARY, keys(conversationId), encodeSummary(coveredMessageId, summary),
+                        ttlMillis);
+            } catch (Exception e) {
+                logger.warn("Failed to store summary in history cache for conversation {}: {}",
+                        conversationId, e.getMessage());
+                invalidateNow(conversationId);
+            }
+        });
+    }
+
+    @Override
+    public void invalidate(Long conversationId) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> invalidateNow(conversationId));
+    }
+
+    private void invalidateNow(Long conversationId) {
+        try {
+            redisTemplate.execute(INVALIDATE, keys(conversationId), ttlMillis);
+        } catch (Exception e) {
+            logger.warn("Failed to invalidate history cache for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * Runs {@code action} once the current transaction commits, so the cache never holds a
+     * message that was rolled back, or immediately outside a transaction.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static List<String> keys(Long conversationId) {
+        return List.of(CacheHelper.getHistoryCacheKey(conversationId),
+                CacheHelper.getHistoryGenerationKey(conversationId),
+                CacheHelper.getHistorySummaryKey(conversationId));
+    }
+
+    private static String encode(HistoryEntry message) {
+        String content = message.content() != null ? message.content() : "";
+        return message.id() + "" + SEPARATOR + message.role().name() + SEPARATOR + content;
+    }
+
+    private static HistoryEntry decode(String entry) {
+        int first = entry.indexOf(SEPARATOR);
+        int second = entry.indexOf(SEPARATOR, first + 1);
+        return new HistoryEntry(Long.parseLong(entry.substring(0, first)),
+                Message.MessageRole.valueOf(entry.substring(first + 1, second)), entry.substring(second + 1));
+    }
+
+    private static String encodeSummary(Long coveredMessageId, String summary) {
+        return coveredMessageId + "" + SEPARATOR + summary;
+    }
+}
@@ -0,0 +1,122 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.exception.BadRequestException;
+import com.madlen.chat.model.MessageImage;
+import com.madlen.chat.repository.MessageRepository;
+import com.madlen.chat.service.ImageMigrationService;
+import com.madlen.chat.service.ImageStoreService;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Started once the application is ready when {@code chat.images.migration.enabled} is set.
+ * Walks messages with inline images in id order, {@code batch-size} at a time with
+ * {@code batch-delay-ms} between batches, stores each image and replaces the data URL with
+ * the image's URL in one short transaction per batch. Running it again, or on several
+ * instances at once, is harmless: the store deduplicates and the update is idempotent.
+ * Images that cannot be decoded are left as they are.
+ */
+@Service
+public class ImageMigrationServiceImpl implements ImageMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageMigrationServiceImpl.class);
+    private static final String DATA_URL_PREFIX = "data:";
+
+    private final MessageRepository messageRepository;
+    private final ImageStoreService imageStore;
+    private final TransactionTemplate writeTransaction;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long batchDelayMs;
+    private final long retryDelayMs;
+    private final LongCounter migratedCounter;
+    private volatile long lastId;
+    private volatile long migrated;
+
+    public ImageMigrationServiceImpl(MessageRepository messageRepository,
+            ImageStoreService imageStore,
+            PlatformTransactionManager transactionManager,
+            Meter meter,
+            @Value("${chat.images.migration.enabled:true}") boolean enabled,
+            @Value("${chat.images.migration.batch-size:50}") int batchSize,
+            @Value("${chat.images.migration.batch-delay-ms:500}") long batchDelayMs,
+            @Value("${chat.images.migration.retry-delay-ms:60000}") long retryDelayMs) {
+        this.messageRepository = messageRepository;
+        this.imageStore = imageStore;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.batchDelayMs = batchDelayMs;
+        this.retryDelayMs = retryDelayMs;
+        this.migratedCounter = meter.counterBuilder("chat.images.migrated")
+                .setDescription("Inline message images moved to the image store")
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnReady() {
+        if (enabled) {
+            scheduleNext(0);
+        }
+    }
+
+    @Override
+    public int migrateNextBatch() {
+        List<MessageImage> batch = messageRepository.findImagesByIdGreaterThanAndImageUrlStartingWithOrderByIdAsc(
+                lastId, DATA_URL_PREFIX, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<Long, String> urls = new LinkedHashMap<>();
+        for (MessageImage image : batch) {
+            int comma = image.imageUrl().indexOf(',');
+            try {
+                urls.put(image.id(), ImageStoreService.urlFor(imageStore.store(image.imageUrl().substring(comma + 1))));
+            } catch (BadRequestException e) {
+                logger.warn("Leaving unreadable inline image of message {} in place: {}", image.id(), e.getMessage());
+            }
+        }
+        writeTransaction.executeWithoutResult(status -> urls.forEach(messageRepository::updateImageUrl));
+        lastId = batch.get(batch.size() - 1).id();
+        migrated += urls.size();
+        migratedCounter.add(urls.size());
+        return batch.size();
+    }
+
+    private void scheduleNext(long delayMs) {
+        Schedulers.boundedElastic().schedule(this::runBatch, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runBatch() {
+        int examined;
+        try {
+            examined = migrateNextBatch();
+        } catch (Exception e) {
+            logger.warn("Image migration batch failed, retrying in {} ms: {}", retryDelayMs, e.getMessage());
+            scheduleNext(retryDelayMs);
+            return;
+        }
+        if (examined == 0) {
+            if (migrated > 0) {
+                logger.info("Image migration finished: {} inline images moved to the image store", migrated);
+            }
+            return;
+        }
+        scheduleNext(batchDelayMs);
+    }
+}
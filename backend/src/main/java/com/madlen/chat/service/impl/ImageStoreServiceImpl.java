@@ -0,0 +1,176 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.exception.BadRequestException;
+import com.madlen.chat.service.ImageStoreService;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Filesystem {@link ImageStoreService} under {@code chat.images.dir}. Images live in
+ * {@code ab/cd/abcd...} by hash, which keeps directories small.
+ *
+ * New content is written to a temporary file and moved into place atomically, so a reader
+ * never sees a partial file and concurrent writers of the same image both end with one
+ * complete copy. Decoded base64 is hashed before anything is written, so a duplicate costs
+ * no disk write at all; streams are hashed while they are copied. Images larger than
+ * {@code max-bytes} are rejected.
+ */
+@Service
+public class ImageStoreServiceImpl implements ImageStoreService {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+    private static final Attributes STORED = Attributes.of(RESULT, "stored");
+    private static final Attributes DEDUPLICATED = Attributes.of(RESULT, "deduplicated");
+
+    private final Path root;
+    private final Path tmp;
+    private final long maxBytes;
+    private final LongCounter storeCounter;
+
+    public ImageStoreServiceImpl(Meter meter,
+            @Value("${chat.images.dir:./data/images}") String dir,
+            @Value("${chat.images.max-bytes:10485760}") long maxBytes) throws IOException {
+        this.root = Path.of(dir).toAbsolutePath().normalize();
+        this.tmp = Files.createDirectories(root.resolve("tmp"));
+        this.maxBytes = maxBytes;
+        this.storeCounter = meter.counterBuilder("chat.images.stores")
+                .setDescription("Images written to the image store by result (stored, deduplicated)")
+                .build();
+    }
+
+    @Override
+    public String store(String base64) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getMimeDecoder().decode(base64);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Image is not valid base64");
+        }
+        if (bytes.length == 0 || bytes.length > maxBytes) {
+            throw new BadRequestException("Image must be between 1 and " + maxBytes + " bytes");
+        }
+        String hash = HexFormat.of().formatHex(sha256().digest(bytes));
+        Path target = pathOf(hash);
+        if (Files.exists(target)) {
+            storeCounter.add(1, DEDUPLICATED);
+            return hash;
+        }
+        try {
+            Path temp = Files.createTempFile(tmp, "upload-", ".part");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                moveIntoPlace(temp, target);
+                return hash;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store image", e);
+        }
+    }
+
+    @Override
+    public String store(InputStream content) {
+        MessageDigest digest = sha256();
+        try {
+            Path temp = Files.createTempFile(tmp, "upload-", ".part");
+            try {
+                long size;
+                try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                    size = copy(content, out);
+                }
+                if (size == 0) {
+                    throw new BadRequestException("Image is empty");
+                }
+                String hash = HexFormat.of().formatHex(digest.digest());
+                moveIntoPlace(temp, pathOf(hash));
+                return hash;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store image", e);
+        }
+    }
+
+    @Override
+    public Optional<Path> find(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            return Optional.empty();
+        }
+        Path path = pathOf(hash);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    private long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            size += read;
+            if (size > maxBytes) {
+                throw new BadRequestException("Image must not exceed " + maxBytes + " bytes");
+            }
+            out.write(buffer, 0, read);
+        }
+        return size;
+    }
+
+    private void moveIntoPlace(Path temp, Path target) throws IOException {
+        if (Files.exists(target)) {
+            Files.deleteIfExists(temp);
+            storeCounter.add(1, DEDUPLICATED);
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            storeCounter.add(1, STORED);
+        } catch (FileAlreadyExistsException e) {
+            // another request stored the same image meanwhile
+            Files.deleteIfExists(temp);
+            storeCounter.add(1, DEDUPLICATED);
+        }
+    }
+
+    private Path pathOf(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
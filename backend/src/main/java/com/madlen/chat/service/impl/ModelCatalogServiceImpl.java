@@ -0,0 +1,274 @@
+package com.madlen.chat.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madlen.chat.dto.ModelInfo;
+import com.madlen.chat.model.ModelCatalog;
+import com.madlen.chat.service.ModelCatalogService;
+import com.madlen.chat.util.ModelCatalogIndex;
+import com.madlen.chat.util.OpenRouterConstants;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the OpenRouter model list as an in-process {@link ModelCatalog} snapshot, so reading
+ * it never touches Redis or the network.
+ *
+ * The list is fetched once the application is ready and then refreshed in the background
+ * when it reaches {@code refresh-ahead-ratio} of {@code ttl-seconds}, with a conditional GET
+ * (ETag / Last-Modified) so an unchanged list costs a 304. A snapshot older than the TTL is
+ * still served while a refresh runs. Failed refreshes keep the previous snapshot and are
+ * retried after {@code retry-interval-ms}; until the first successful fetch the built-in
+ * fallback list is served. A {@link ModelCatalogIndex} is built whenever the list changes.
+ */
+@Service
+public class ModelCatalogServiceImpl implements ModelCatalogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelCatalogServiceImpl.class);
+    private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+    private static final Attributes UPDATED = Attributes.of(RESULT, "updated");
+    private static final Attributes NOT_MODIFIED = Attributes.of(RESULT, "not_modified");
+    private static final Attributes FAILED = Attributes.of(RESULT, "failed");
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final int maxCachedResponses;
+    private final Duration ttl;
+    private final Duration refreshAhead;
+    private final Duration retryInterval;
+    private final Duration timeout;
+    private final AtomicReference<ModelCatalog> catalog = new AtomicReference<>(fallbackCatalog());
+    private final AtomicReference<ModelCatalogIndex> index;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Instant nextAttemptAt = Instant.EPOCH;
+    private final LongCounter refreshCounter;
+
+    public ModelCatalogServiceImpl(WebClient openRouterWebClient, ObjectMapper objectMapper, Meter meter,
+            @Value("${openrouter.models.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${openrouter.models.refresh-ahead-ratio:0.8}") double refreshAheadRatio,
+            @Value("${openrouter.models.retry-interval-ms:30000}") long retryIntervalMs,
+            @Value("${openrouter.models.timeout-ms:10000}") long timeoutMs,
+            @Value("${openrouter.models.max-cached-responses:64}") int maxCachedResponses) {
+        this.webClient = openRouterWebClient;
+        this.objectMapper = objectMapper;
+        this.maxCachedResponses = maxCachedResponses;
+        this.index = new AtomicReference<>(buildIndex(catalog.get()));
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.refreshAhead = Duration.ofMillis((long) (ttlSeconds * 1000 * refreshAheadRatio));
+        this.retryInterval = Duration.ofMillis(retryIntervalMs);
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.refreshCounter = meter.counterBuilder("openrouter.models.refreshes")
+                .setDescription("Model list refreshes by result (updated, not_modified, failed)")
+                .build();
+        meter.gaugeBuilder("openrouter.models.catalog_age_seconds")
+                .setDescription("Age of the served model list; the fallback list reports -1")
+                .ofLongs()
+                .buildWithCallback(measurement -> {
+                    ModelCatalog current = catalog.get();
+                    measurement.record(current.fallback() ? -1
+                            : Duration.between(current.fetchedAt(), Instant.now()).toSeconds());
+                });
+    }
+
+    @Override
+    public ModelCatalog getCatalog() {
+        ModelCatalog current = catalog.get();
+        Instant now = Instant.now();
+        if (!now.isBefore(current.fetchedAt().plus(ttl)) && !now.isBefore(nextAttemptAt)) {
+            refreshInBackground();
+        }
+        return current;
+    }
+
+    @Override
+    public ModelCatalogIndex getIndex() {
+        getCatalog();
+        return index.get();
+    }
+
+    @Override
+    public ModelCatalog refresh() {
+        try {
+            apply(fetch(catalog.get(), false).block());
+        } catch (Exception e) {
+            onFailure(e);
+        }
+        return catalog.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        refreshInBackground();
+    }
+
+    @Scheduled(fixedDelayString = "${openrouter.models.check-interval-ms:10000}",
+            initialDelayString = "${openrouter.models.check-interval-ms:10000}")
+    public void refreshAheadOfExpiry() {
+        Instant now = Instant.now();
+        if (!now.isBefore(catalog.get().fetchedAt().plus(refreshAhead)) && !now.isBefore(nextAttemptAt)) {
+            refreshInBackground();
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        fetch(catalog.get(), true)
+                .doFinally(signal -> refreshing.set(false))
+                .subscribe(this::apply, this::onFailure);
+    }
+
+    private void apply(ModelCatalog fetched) {
+        if (fetched.models() == catalog.get().models()) {
+            catalog.set(fetched);
+            refreshCounter.add(1, NOT_MODIFIED);
+            return;
+        }
+        ModelCatalogIndex rebuilt = buildIndex(fetched);
+        // an identical list keeps its index, so ETags handed out earlier stay valid
+        if (!rebuilt.version().equals(index.get().version())) {
+            index.set(rebuilt);
+        }
+        catalog.set(fetched);
+        refreshCounter.add(1, UPDATED);
+        logger.info("Model catalog refreshed: {} models", fetched.models().size());
+    }
+
+    private void onFailure(Throwable error) {
+        nextAttemptAt = Instant.now().plus(retryInterval);
+        refreshCounter.add(1, FAILED);
+        ModelCatalog current = catalog.get();
+        logger.warn("Failed to refresh model catalog, serving {} list: {}",
+                current.fallback() ? "fallback" : "cached", error.getMessage());
+    }
+
+    private ModelCatalogIndex buildIndex(ModelCatalog source) {
+        return new ModelCatalogIndex(source, this::serialize, maxCachedResponses);
+    }
+
+    private byte[] serialize(List<ModelInfo> models) {
+        try {
+            return objectMapper.writeValueAsBytes(models);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize model list", e);
+        }
+    }
+
+    /**
+     * A conditional request revalidates {@code current} if it came from upstream; a 304
+     * yields the same models with a new fetch time.
+     */
+    private Mono<ModelCatalog> fetch(ModelCatalog current, boolean conditional) {
+        boolean validate = conditional && !current.fallback();
+        return webClient.get()
+                .uri(OpenRouterConstants.MODELS_ENDPOINT)
+                .headers(headers -> {
+                    if (validate && current.etag() != null) {
+                        headers.setIfNoneMatch(current.etag());
+                    }
+                    if (validate && current.lastModified() != null) {
+                        headers.set(HttpHeaders.IF_MODIFIED_SINCE, current.lastModified());
+                    }
+                })
+                .exchangeToMono(response -> {
+                    if (validate && response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                        return response.releaseBody().then(Mono.fromSupplier(() -> current.revalidated(Instant.now())));
+                    }
+                    if (!response.statusCode().is2xxSuccessful()) {
+                        return response.createException().flatMap(Mono::error);
+                    }
+                    HttpHeaders headers = response.headers().asHttpHeaders();
+                    return response.bodyToMono(ModelsPayload.class)
+                            .map(payload -> toCatalog(payload, headers.getETag(),
+                                    headers.getFirst(HttpHeaders.LAST_MODIFIED)));
+                })
+                .timeout(timeout);
+    }
+
+    private static ModelCatalog toCatalog(ModelsPayload payload, String etag, String lastModified) {
+        if (payload.data() == null || payload.data().isEmpty()) {
+            throw new IllegalStateException("OpenRouter returned an empty model list");
+        }
+        List<ModelCatalog.Model> models = new ArrayList<>(payload.data().size());
+        for (RawModel raw : payload.data()) {
+            if (raw.id() == null) {
+                continue;
+            }
+            BigDecimal promptPrice = raw.pricing() != null ? price(raw.pricing().prompt()) : null;
+            BigDecimal completionPrice = raw.pricing() != null ? price(raw.pricing().completion()) : null;
+            boolean free = promptPrice != null && promptPrice.signum() == 0
+                    && completionPrice != null && completionPrice.signum() == 0;
+            boolean supportsVision = raw.architecture() != null && raw.architecture().inputModalities() != null
+                    && raw.architecture().inputModalities().contains(OpenRouterConstants.CONTENT_TYPE_IMAGE);
+            models.add(new ModelCatalog.Model(raw.id(), raw.name() != null ? raw.name() : raw.id(), free,
+                    supportsVision, raw.contextLength() != null ? raw.contextLength() : 0, promptPrice,
+                    completionPrice, raw.created() != null ? raw.created() : 0));
+        }
+        return new ModelCatalog(models, Instant.now(), etag, lastModified, false);
+    }
+
+    private static BigDecimal price(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static ModelCatalog fallbackCatalog() {
+        return new ModelCatalog(List.of(
+                fallbackModel("meta-llama/llama-3.2-3b-instruct:free", "Meta Llama 3.2 3B (Free)", false),
+                fallbackModel("amazon/nova-2-lite-v1:free", "Amazon Nova 2 Lite (Free)", true),
+                fallbackModel("google/gemma-3-4b-it:free", "Google Gemma 3 4B (ImageFree)", false),
+                fallbackModel("openai/gpt-oss-20b:free", "OpenAI GPT-OSS 20B (Free)", false)),
+                Instant.EPOCH, null, null, true);
+    }
+
+    private static ModelCatalog.Model fallbackModel(String id, String name, boolean supportsVision) {
+        return new ModelCatalog.Model(id, name, true, supportsVision, 0, BigDecimal.ZERO, BigDecimal.ZERO, 0);
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record ModelsPayload(List<RawModel> data) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record RawModel(String id, String name, Long created, @JsonProperty("context_length") Integer contextLength,
+            Pricing pricing, Architecture architecture) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Pricing(String prompt, String completion) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Architecture(@JsonProperty("input_modalities") List<String> inputModalities) {
+    }
+}
@@ -1,23 +1,34 @@
 package com.madlen.chat.service.impl;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madlen.chat.dto.StreamDelta;
+import com.madlen.chat.exception.ModelOverloadedException;
+import com.madlen.chat.exception.ModelUnavailableException;
 import com.madlen.chat.exception.OpenRouterException;
+import com.madlen.chat.exception.ResourceNotFoundException;
+import com.madlen.chat.service.ImageStoreService;
 import com.madlen.chat.service.OpenRouterService;
-import com.madlen.chat.util.CacheConstants;
+import com.madlen.chat.util.ImagePreprocessor;
+import com.madlen.chat.util.ModelBulkheads;
+import com.madlen.chat.util.ModelCircuitBreakers;
 import com.madlen.chat.util.OpenRouterConstants;
 import com.madlen.chat.util.OpenRouterRequestBuilder;
+import com.madlen.chat.util.OpenRouterRetryPolicy;
+import com.madlen.chat.util.OpenRouterStreamDecoder;
+import com.madlen.chat.util.RequestFingerprint;
+import com.madlen.chat.util.SingleFlight;
+import com.madlen.chat.util.UpstreamImage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.http.HttpHeaders;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -27,32 +38,38 @@ public class OpenRouterServiceImpl implements OpenRouterService {
     private static final Logger logger = LoggerFactory.getLogger(OpenRouterServiceImpl.class);
     
     private final WebClient webClient;
-    private final String apiKey;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
-    public OpenRouterServiceImpl(@Value("${openrouter.api.key}") String apiKey,
-            @Value("${openrouter.api.base-url}") String baseUrl) {
-        this.apiKey = apiKey;
-        this.webClient = WebClient.builder()
-                .baseUrl(baseUrl)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                .defaultHeader(OpenRouterConstants.HEADER_HTTP_REFERER, OpenRouterConstants.DEFAULT_HTTP_REFERER)
-                .defaultHeader(OpenRouterConstants.HEADER_X_TITLE, OpenRouterConstants.DEFAULT_X_TITLE)
-                .build();
+    private final ModelBulkheads bulkheads;
+    private final ModelCircuitBreakers circuitBreakers;
+    private final OpenRouterRetryPolicy retryPolicy;
+    private final SingleFlight singleFlight;
+    private final ImagePreprocessor imagePreprocessor;
+    private final ImageStoreService imageStore;
+
+    public OpenRouterServiceImpl(WebClient openRouterWebClient, ModelBulkheads bulkheads,
+            ModelCircuitBreakers circuitBreakers, OpenRouterRetryPolicy retryPolicy, SingleFlight singleFlight,
+            ImagePreprocessor imagePreprocessor, ImageStoreService imageStore) {
+        this.webClient = openRouterWebClient;
+        this.bulkheads = bulkheads;
+        this.circuitBreakers = circuitBreakers;
+        this.retryPolicy = retryPolicy;
+        this.singleFlight = singleFlight;
+        this.imagePreprocessor = imagePreprocessor;
+        this.imageStore = imageStore;
     }
 
     @Override
-    public String sendChatMessage(String message, String model, List<Map<String, String>> messages, String image) {
-        Map<String, Object> requestBody = OpenRouterRequestBuilder.buildChatRequest(
-                message, model, messages, image, false);
+    public String sendChatMessage(String message, String model, List<Map<String, String>> messages,
+            String imageHash) {
+        UpstreamImage image = upstreamImage(imageHash, model);
 
         try {
-            Map<String, Object> response = webClient.post()
-                    .uri(OpenRouterConstants.CHAT_COMPLETIONS_ENDPOINT)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(Map.class)
+            Map<String, Object> response = singleFlight.mono(singleFlightKey(message, model, messages, image != null),
+                    () -> guarded(model, webClient.post()
+                            .uri(OpenRouterConstants.CHAT_COMPLETIONS_ENDPOINT)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(OpenRouterRequestBuilder.buildChatRequest(message, model, messages, image, false))
+                            .retrieve()
+                            .bodyToMono(Map.class)))
                     .block();
 
             if (response != null && response.containsKey("choices")) {
@@ -84,6 +101,8 @@ public class OpenRouterServiceImpl implements OpenRouterService {
                 }
             }
             throw new OpenRouterException(errorMessage + " from POST " + e.getRequest().getURI(), e);
+        } catch (ModelOverloadedException | ModelUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             throw new OpenRouterException("Failed to communicate with OpenRouter API: " + e.getMessage(), e);
         }
@@ -91,106 +110,78 @@ public class OpenRouterServiceImpl implements OpenRouterService {
 
     @Override
     public Flux<String> streamChatMessage(String message, String model, List<Map<String, String>> messages,
-            String image) {
-        Map<String, Object> requestBody = OpenRouterRequestBuilder.buildChatRequest(
-                message, model, messages, image, true);
+            String imageHash) {
+        return streamChatMessage(message, model, messages, imageHash, true);
+    }
 
-        return webClient.post()
+    @Override
+    public Flux<String> streamChatMessage(String message, String model, List<Map<String, String>> messages,
+            String imageHash, boolean shareInFlight) {
+        if (imageHash == null) {
+            return stream(message, model, messages, null, shareInFlight);
+        }
+        // reading, decoding and scaling the image blocks, keep it off the event loop
+        return Mono.fromCallable(() -> upstreamImage(imageHash, model))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(image -> stream(message, model, messages, image, shareInFlight));
+    }
+
+    private Flux<String> stream(String message, String model, List<Map<String, String>> messages,
+            UpstreamImage image, boolean shareInFlight) {
+        Flux<String> content = webClient.post()
                 .uri(OpenRouterConstants.CHAT_COMPLETIONS_ENDPOINT)
-                .bodyValue(requestBody)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(OpenRouterRequestBuilder.buildChatRequest(message, model, messages, image, true))
                 .accept(MediaType.TEXT_EVENT_STREAM)
                 .retrieve()
-                .bodyToFlux(String.class)
-                .filter(line -> !line.isEmpty() 
-                        && !line.equals(OpenRouterConstants.STREAM_DONE_MARKER) 
-                        && !line.contains(OpenRouterConstants.STREAM_DONE_MARKER))
-                .map(line -> {
-                    try {
-                        String jsonStr = line.startsWith(OpenRouterConstants.SSE_DATA_PREFIX) 
-                                ? line.substring(OpenRouterConstants.SSE_DATA_PREFIX.length()) 
-                                : line;
-                        if (jsonStr.isEmpty() || jsonStr.equals(OpenRouterConstants.STREAM_DONE_MARKER)) {
-                            return "";
-                        }
-                        JsonNode root = objectMapper.readTree(jsonStr);
-                        JsonNode choices = root.get("choices");
-                        if (choices != null && choices.isArray() && choices.size() > 0) {
-                            JsonNode delta = choices.get(0).get("delta");
-                            if (delta != null && delta.has("content")) {
-                                return delta.get("content").asText();
-                            }
-                        }
-                        return "";
-                    } catch (Exception e) {
-                        logger.debug("Failed to parse streaming chunk: {}", e.getMessage());
-                        return "";
+                .bodyToFlux(DataBuffer.class)
+                .transform(OpenRouterStreamDecoder::decode)
+                .doOnNext(delta -> {
+                    if (delta.getUsage() != null || delta.getFinishReason() != null) {
+                        logger.debug("Stream finished for model {}: finishReason={}, completionTokens={}",
+                                model, delta.getFinishReason(),
+                                delta.getUsage() != null ? delta.getUsage().getCompletionTokens() : null);
                     }
                 })
-                .filter(content -> !content.isEmpty())
+                .filter(StreamDelta::hasContent)
+                .map(StreamDelta::getContent);
+
+        String key = shareInFlight ? singleFlightKey(message, model, messages, image != null) : null;
+        return singleFlight.flux(key, () -> guarded(model, content))
                 .onErrorResume(e -> {
+                    if (e instanceof ModelOverloadedException || e instanceof ModelUnavailableException) {
+                        return Flux.error(e);
+                    }
                     return Flux.error(new OpenRouterException("Streaming failed: " + e.getMessage(), e));
                 });
     }
 
-    @Override
-    @Cacheable(value = CacheConstants.CACHE_MODELS)
-    public List<Map<String, Object>> getAvailableModels() {
-        try {
-            Map<String, Object> response = webClient.get()
-                    .uri(OpenRouterConstants.MODELS_ENDPOINT)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block();
+    private UpstreamImage upstreamImage(String imageHash, String model) {
+        if (imageHash == null) {
+            return null;
+        }
+        Path file = imageStore.find(imageHash)
+                .orElseThrow(() -> new ResourceNotFoundException("Image", imageHash));
+        return imagePreprocessor.prepare(imageHash, file, model);
+    }
 
-            if (response != null && response.containsKey("data")) {
-                List<Map<String, Object>> allModels = (List<Map<String, Object>>) response.get("data");
-                List<Map<String, Object>> processedModels = new ArrayList<>();
-                for (Map<String, Object> model : allModels) {
-                    Map<String, Object> processedModel = new HashMap<>(model);
-                    boolean isFree = false;
-                    if (model.containsKey("pricing")) {
-                        Object pricingObj = model.get("pricing");
-                        if (pricingObj instanceof Map) {
-                            Map<String, Object> pricing = (Map<String, Object>) pricingObj;
-                            Object promptPrice = pricing.get("prompt");
-                            Object completionPrice = pricing.get("completion");
-                            isFree = (promptPrice != null && String.valueOf(promptPrice).equals("0")) &&
-                                    (completionPrice != null && String.valueOf(completionPrice).equals("0"));
-                        }
-                    }
-                    processedModel.put("free", isFree);
-
-                    boolean supportsVision = false;
-                    if (model.containsKey("architecture")) {
-                        Object archObj = model.get("architecture");
-                        if (archObj instanceof Map) {
-                            Map<String, Object> architecture = (Map<String, Object>) archObj;
-                            Object inputModalities = architecture.get("input_modalities");
-                            if (inputModalities instanceof List) {
-                                List<String> modalities = (List<String>) inputModalities;
-                                supportsVision = modalities.contains(OpenRouterConstants.CONTENT_TYPE_IMAGE);
-                            }
-                        }
-                    }
-                    processedModel.put("supportsVision", supportsVision);
+    /**
+     * Retry (outermost, each attempt is a separate call) around the model's circuit breaker
+     * around its bulkhead.
+     */
+    private <T> Mono<T> guarded(String model, Mono<T> call) {
+        return retryPolicy.mono(circuitBreakers.mono(model, bulkheads.mono(model, call)));
+    }
 
-                    processedModels.add(processedModel);
-                }
-                return processedModels;
-            }
-        } catch (Exception e) {
-            logger.error("Failed to fetch models from OpenRouter: {}", e.getMessage(), e);
-        }
+    private <T> Flux<T> guarded(String model, Flux<T> call) {
+        return retryPolicy.flux(circuitBreakers.flux(model, bulkheads.flux(model, call)));
+    }
 
-        List<Map<String, Object>> freeModels = new ArrayList<>();
-        freeModels.add(Map.of("id", "meta-llama/llama-3.2-3b-instruct:free", "name", "Meta Llama 3.2 3B (Free)", "free",
-                true, "supportsVision", false));
-        freeModels.add(Map.of("id", "amazon/nova-2-lite-v1:free", "name", "Amazon Nova 2 Lite (Free)", "free", true,
-                "supportsVision", true));
-        freeModels.add(Map.of("id", "google/gemma-3-4b-it:free", "name", "Google Gemma 3 4B (ImageFree)", "free", true,
-                "supportsVision", false));
-        freeModels.add(Map.of("id", "openai/gpt-oss-20b:free", "name", "OpenAI GPT-OSS 20B (Free)", "free", true,
-                "supportsVision", false));
-        return freeModels;
+    /**
+     * Requests with an image are not coalesced; identical images rarely arrive together.
+     */
+    private static String singleFlightKey(String message, String model, List<Map<String, String>> messages,
+            boolean hasImage) {
+        return hasImage ? null : RequestFingerprint.of(message, model, messages);
     }
 }
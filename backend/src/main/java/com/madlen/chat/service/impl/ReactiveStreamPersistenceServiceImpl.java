@@ -0,0 +1,109 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.exception.ResourceNotFoundException;
+import com.madlen.chat.model.ConversationRecord;
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.model.MessageRecord;
+import com.madlen.chat.repository.ReactiveConversationRepository;
+import com.madlen.chat.repository.ReactiveMessageRepository;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.service.StreamPersistenceService;
+import com.madlen.chat.util.Constants;
+import com.madlen.chat.util.ConversationHelper;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+
+/**
+ * R2DBC counterpart of {@link StreamPersistenceServiceImpl} used by the reactive streaming
+ * path. Saves run on the driver's event loop, so no executor or queue is needed.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.streaming.reactive.enabled", havingValue = "true")
+public class ReactiveStreamPersistenceServiceImpl implements StreamPersistenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveStreamPersistenceServiceImpl.class);
+    private static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("outcome");
+
+    private final ReactiveConversationRepository conversationRepository;
+    private final ReactiveMessageRepository messageRepository;
+    private final HistoryCacheService historyCache;
+    private final TransactionalOperator transactionalOperator;
+    private final LongCounter saveCounter;
+
+    public ReactiveStreamPersistenceServiceImpl(ReactiveConversationRepository conversationRepository,
+            ReactiveMessageRepository messageRepository,
+            HistoryCacheService historyCache,
+            TransactionalOperator transactionalOperator,
+            Meter meter) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.historyCache = historyCache;
+        this.transactionalOperator = transactionalOperator;
+        this.saveCounter = meter.counterBuilder("chat.stream.persistence.saves")
+                .setDescription("Completed stream persistence tasks by outcome")
+                .build();
+    }
+
+    @Override
+    public Mono<Long> saveAssistantMessage(Long conversationId, String content, String model, String titleSource) {
+        return persist(conversationId, content, model, titleSource, false)
+                .doOnSuccess(id -> saveCounter.add(1, Attributes.of(OUTCOME, "saved")))
+                .doOnError(error -> {
+                    saveCounter.add(1, Attributes.of(OUTCOME, "failed"));
+                    logger.error("Failed to persist streamed message for conversation {}: {}",
+                            conversationId, error.getMessage());
+                });
+    }
+
+    @Override
+    public void saveInterruptedMessage(Long conversationId, String partialContent, String model, String titleSource) {
+        persist(conversationId, partialContent, model, titleSource, true)
+                .subscribe(
+                        id -> saveCounter.add(1, Attributes.of(OUTCOME, "interrupted")),
+                        error -> {
+                            saveCounter.add(1, Attributes.of(OUTCOME, "failed"));
+                            logger.error("Failed to persist interrupted message for conversation {}: {}",
+                                    conversationId, error.getMessage());
+                        });
+    }
+
+    private Mono<Long> persist(Long conversationId, String content, String model, String titleSource,
+            boolean interrupted) {
+        return conversationRepository.findById(conversationId)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Conversation", conversationId)))
+                .flatMap(conversation -> messageRepository.save(new MessageRecord(null, conversationId,
+                                Message.MessageRole.ASSISTANT, content, model, null, interrupted, LocalDateTime.now()))
+                        .flatMap(saved -> updateTitleIfNeeded(conversation, titleSource).thenReturn(saved)))
+                .as(transactionalOperator::transactional)
+                // the cache client is blocking, keep it off the event loop
+                .flatMap(saved -> Mono.fromRunnable(() -> historyCache.append(conversationId,
+                                HistoryEntry.of(saved)))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(saved.getId()));
+    }
+
+    private Mono<Void> updateTitleIfNeeded(ConversationRecord conversation, String titleSource) {
+        if (!Constants.DEFAULT_CONVERSATION_TITLE.equals(conversation.getTitle())
+                || titleSource == null || titleSource.isEmpty()) {
+            return Mono.empty();
+        }
+        return messageRepository.countByConversationId(conversation.getId())
+                .filter(count -> count <= 2)
+                .flatMap(count -> conversationRepository.updateTitleIfUnchanged(conversation.getId(),
+                        Constants.DEFAULT_CONVERSATION_TITLE, ConversationHelper.titleFrom(titleSource),
+                        LocalDateTime.now()))
+                .then();
+    }
+}
@@ -0,0 +1,212 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.dto.ChatRequest;
+import com.madlen.chat.exception.BadRequestException;
+import com.madlen.chat.exception.ResourceNotFoundException;
+import com.madlen.chat.model.ConversationRecord;
+import com.madlen.chat.model.ConversationSummaryRecord;
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.model.MessageRecord;
+import com.madlen.chat.repository.ReactiveConversationRepository;
+import com.madlen.chat.repository.ReactiveConversationSummaryRepository;
+import com.madlen.chat.repository.ReactiveMessageRepository;
+import com.madlen.chat.service.ConversationSummaryService;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.service.ImageStoreService;
+import com.madlen.chat.service.OpenRouterService;
+import com.madlen.chat.service.ResponseCacheService;
+import com.madlen.chat.service.StreamPersistenceService;
+import com.madlen.chat.service.StreamReplayService;
+import com.madlen.chat.util.CacheConstants;
+import com.madlen.chat.util.Constants;
+import com.madlen.chat.util.ContextWindowBuilder;
+import com.madlen.chat.util.SseContentCoalescer;
+import com.madlen.chat.util.StreamHedger;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Non-blocking variant of the streaming chat flow, enabled with
+ * {@code chat.streaming.reactive.enabled=true}.
+ *
+ * Resolving the conversation, storing the user message, loading the history and saving
+ * the answer all go through R2DBC, so an open stream never holds a request thread or a
+ * JDBC connection; the handler returns immediately and everything else runs on the
+ * event loop.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.streaming.reactive.enabled", havingValue = "true")
+public class ReactiveStreamingChatServiceImpl extends AbstractStreamingChatService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveStreamingChatServiceImpl.class);
+
+    private final ReactiveConversationRepository conversationRepository;
+    private final ReactiveMessageRepository messageRepository;
+    private final ReactiveConversationSummaryRepository summaryRepository;
+    private final HistoryCacheService historyCache;
+    private final ImageStoreService imageStore;
+    private final TransactionalOperator transactionalOperator;
+    private final CacheManager cacheManager;
+
+    public ReactiveStreamingChatServiceImpl(OpenRouterService openRouterService,
+            ReactiveConversationRepository conversationRepository,
+            ReactiveMessageRepository messageRepository,
+            ReactiveConversationSummaryRepository summaryRepository,
+            HistoryCacheService historyCache,
+            ImageStoreService imageStore,
+            TransactionalOperator transactionalOperator,
+            CacheManager cacheManager,
+            StreamPersistenceService streamPersistenceService,
+            StreamReplayService streamReplayService,
+            SseContentCoalescer contentCoalescer,
+            StreamHedger streamHedger,
+            ResponseCacheService responseCache,
+            ContextWindowBuilder contextWindowBuilder,
+            ConversationSummaryService conversationSummaryService,
+            Tracer tracer,
+            @Value("${chat.streaming.heartbeat-interval-ms:5000}") long heartbeatIntervalMs) {
+        super(openRouterService, streamPersistenceService, streamReplayService, contentCoalescer, streamHedger,
+                responseCache, contextWindowBuilder, conversationSummaryService, tracer, heartbeatIntervalMs);
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.summaryRepository = summaryRepository;
+        this.historyCache = historyCache;
+        this.imageStore = imageStore;
+        this.transactionalOperator = transactionalOperator;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public Flux<ServerSentEvent<String>> streamChat(ChatRequest request, Long userId) {
+        return Flux.defer(() -> {
+            Span span = startSpan(request, userId);
+            return storeImage(request)
+                    .flatMap(imageUrl -> resolveConversation(request, userId)
+                            .flatMap(conversation -> messageRepository.save(
+                                    userMessage(request, conversation.getId(), imageUrl.orElse(null))))
+                            .as(transactionalOperator::transactional))
+                    .flatMap(saved -> appendToHistoryCache(saved).thenReturn(saved.getConversationId()))
+                    .flatMap(conversationId -> request.getConversationId() == null
+                            ? evictConversationList(userId).thenReturn(conversationId)
+                            : Mono.just(conversationId))
+                    .flatMapMany(conversationId -> loadHistory(conversationId)
+                            .flatMapMany(history -> {
+                                span.setAttribute("conversationId", conversationId);
+                                span.setAttribute("historySize", history.size());
+                                return startStream(request, userId, conversationId, history, span);
+                            }))
+                    .onErrorResume(error -> {
+                        // the SSE response is already committed, so failures before the stream
+                        // starts are reported as an error event instead of an HTTP status
+                        span.setStatus(StatusCode.ERROR, error.getMessage());
+                        span.recordException(error);
+                        span.end();
+                        logger.warn("Could not start reactive stream for user {}: {}", userId, error.getMessage());
+                        return Flux.just(errorEvent(error instanceof ResourceNotFoundException
+                                || error instanceof BadRequestException
+                                ? error.getMessage()
+                                : "Could not start the conversation. Please try again."));
+                    });
+        });
+    }
+
+    private Mono<ConversationRecord> resolveConversation(ChatRequest request, Long userId) {
+        if (request.getConversationId() != null) {
+            return conversationRepository.findByIdAndUserId(request.getConversationId(), userId)
+                    .switchIfEmpty(Mono.error(
+                            new ResourceNotFoundException("Conversation", request.getConversationId())));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return conversationRepository.save(
+                new ConversationRecord(null, Constants.DEFAULT_CONVERSATION_TITLE, userId, now, now));
+    }
+
+    /**
+     * Writes the image to the {@link ImageStoreService} off the event loop, as file I/O blocks.
+     */
+    private Mono<Optional<String>> storeImage(ChatRequest request) {
+        if (request.getImage() == null || request.getImage().isEmpty()) {
+            return Mono.just(Optional.ofNullable(imageStore.storeImage(request)));
+        }
+        return Mono.fromCallable(() -> Optional.ofNullable(imageStore.storeImage(request)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private MessageRecord userMessage(ChatRequest request, Long conversationId, String imageUrl) {
+        return new MessageRecord(null, conversationId, Message.MessageRole.USER, request.getMessage(),
+                request.getModel(), imageUrl, false, LocalDateTime.now());
+    }
+
+    /**
+     * History from the {@link HistoryCacheService}; on a miss the summary and the messages
+     * after it are read through R2DBC and written back to the cache in the background.
+     */
+    private Mono<List<Map<String, String>>> loadHistory(Long conversationId) {
+        // the cache client is blocking, keep it off the event loop
+        return Mono.fromCallable(() -> historyCache.read(conversationId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(lookup -> lookup.hit()
+                        ? Mono.just(lookup.history())
+                        : loadHistoryFromDatabase(conversationId, lookup.generation()));
+    }
+
+    private Mono<List<Map<String, String>>> loadHistoryFromDatabase(Long conversationId, long generation) {
+        return summaryRepository.findByConversationId(conversationId)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(summary -> {
+                    Long coveredId = summary.map(ConversationSummaryRecord::getCoveredMessageId).orElse(null);
+                    String content = summary.map(ConversationSummaryRecord::getContent).orElse(null);
+                    Flux<HistoryEntry> messages = coveredId == null
+                            ? messageRepository.findHistoryByConversationIdOrderByCreatedAtAsc(conversationId)
+                            : messageRepository.findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(
+                                    conversationId, coveredId);
+                    return messages
+                            .collectList()
+                            .map(cached -> {
+                                Schedulers.boundedElastic().schedule(() -> historyCache.fill(
+                                        conversationId, generation, cached, coveredId, content));
+                                return historyCache.toHistory(cached, coveredId, content);
+                            });
+                });
+    }
+
+    private Mono<Void> appendToHistoryCache(MessageRecord message) {
+        return Mono.<Void>fromRunnable(() -> historyCache.append(message.getConversationId(), HistoryEntry.of(message)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> evictConversationList(Long userId) {
+        // the cache client is blocking, keep it off the event loop
+        return Mono.<Void>fromRunnable(() -> {
+                    Cache cache = cacheManager.getCache(CacheConstants.CACHE_CONVERSATIONS);
+                    if (cache != null) {
+                        cache.evict(userId);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(error -> {
+                    logger.warn("Failed to evict conversation list cache for user {}: {}", userId, error.getMessage());
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,233 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.service.ResponseCacheService;
+import com.madlen.chat.util.CacheHelper;
+import com.madlen.chat.util.NearDuplicateResponseCache;
+import com.madlen.chat.util.RequestFingerprint;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache of complete model answers with two opt-in layers.
+ *
+ * The exact-match layer ({@code chat.response-cache.enabled}) stores answers in Redis under
+ * the request fingerprint with a per-model TTL ({@code model-ttls}, falling back to
+ * {@code ttl-seconds}); the most recently used ones are also kept in an in-process LRU
+ * front bounded by entry count and total size. Redis failures are treated as misses.
+ * Behind it, the {@link NearDuplicateResponseCache} answers first-turn prompts that are
+ * almost identical to a cached one.
+ */
+@Service
+public class ResponseCacheServiceImpl implements ResponseCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCacheServiceImpl.class);
+    private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+    private static final Attributes HIT_MEMORY = Attributes.of(RESULT, "hit_memory");
+    private static final Attributes HIT_REDIS = Attributes.of(RESULT, "hit_redis");
+    private static final Attributes MISS = Attributes.of(RESULT, "miss");
+
+    private final StringRedisTemplate redisTemplate;
+    private final NearDuplicateResponseCache nearDuplicates;
+    private final boolean enabled;
+    private final Duration defaultTtl;
+    private final Map<String, Duration> modelTtls;
+    private final Duration frontTtl;
+    private final int maxResponseChars;
+    private final FrontCache front;
+    private final LongCounter lookupCounter;
+    private final LongCounter storeCounter;
+
+    public ResponseCacheServiceImpl(StringRedisTemplate redisTemplate, NearDuplicateResponseCache nearDuplicates,
+            Meter meter,
+            @Value("${chat.response-cache.enabled:false}") boolean enabled,
+            @Value("${chat.response-cache.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${chat.response-cache.model-ttls:}") String modelTtls,
+            @Value("${chat.response-cache.front.max-entries:1000}") int frontMaxEntries,
+            @Value("${chat.response-cache.front.max-bytes:16777216}") long frontMaxBytes,
+            @Value("${chat.response-cache.front.ttl-seconds:300}") long frontTtlSeconds,
+            @Value("${chat.response-cache.max-response-chars:32768}") int maxResponseChars) {
+        this.redisTemplate = redisTemplate;
+        this.nearDuplicates = nearDuplicates;
+        this.enabled = enabled;
+        this.defaultTtl = Duration.ofSeconds(ttlSeconds);
+        this.modelTtls = parseModelTtls(modelTtls);
+        this.frontTtl = Duration.ofSeconds(frontTtlSeconds);
+        this.maxResponseChars = maxResponseChars;
+        this.front = new FrontCache(frontMaxEntries, frontMaxBytes);
+        this.lookupCounter = meter.counterBuilder("chat.response_cache.lookups")
+                .setDescription("Response cache lookups by result (hit_memory, hit_redis, miss)")
+                .build();
+        this.storeCounter = meter.counterBuilder("chat.response_cache.stores")
+                .setDescription("Answers written to the response cache")
+                .build();
+    }
+
+    @Override
+    public Key keyFor(String message, String model, List<Map<String, String>> history, String image) {
+        if (model == null || (image != null && !image.isEmpty())) {
+            return null;
+        }
+        String fingerprint = enabled ? RequestFingerprint.of(message, model, history) : null;
+        String prompt = nearDuplicates.promptKey(message, history);
+        return fingerprint == null && prompt == null ? null : new Key(model, fingerprint, prompt);
+    }
+
+    @Override
+    public Optional<String> get(Key key) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        Optional<String> exact = key.fingerprint() != null ? getExact(key.model(), key.fingerprint()) : Optional.empty();
+        if (exact.isPresent() || key.prompt() == null) {
+            return exact;
+        }
+        return nearDuplicates.find(key.model(), key.prompt());
+    }
+
+    @Override
+    public void put(Key key, String response) {
+        if (key == null || response == null || response.isEmpty() || response.length() > maxResponseChars) {
+            return;
+        }
+        if (key.fingerprint() != null) {
+            putExact(key.model(), key.fingerprint(), response);
+        }
+        if (key.prompt() != null) {
+            nearDuplicates.add(key.model(), key.prompt(), response);
+        }
+    }
+
+    private Optional<String> getExact(String model, String fingerprint) {
+        String cached = front.get(fingerprint);
+        if (cached != null) {
+            lookupCounter.add(1, HIT_MEMORY);
+            return Optional.of(cached);
+        }
+        try {
+            cached = redisTemplate.opsForValue().get(CacheHelper.getResponseCacheKey(fingerprint));
+        } catch (Exception e) {
+            logger.warn("Response cache lookup failed, treating as miss: {}", e.getMessage());
+        }
+        if (cached == null) {
+            lookupCounter.add(1, MISS);
+            return Optional.empty();
+        }
+        front.put(fingerprint, cached, frontTtlFor(model));
+        lookupCounter.add(1, HIT_REDIS);
+        return Optional.of(cached);
+    }
+
+    private void putExact(String model, String fingerprint, String response) {
+        Duration ttl = ttlFor(model);
+        front.put(fingerprint, response, frontTtlFor(model));
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                redisTemplate.opsForValue().set(CacheHelper.getResponseCacheKey(fingerprint), response, ttl);
+                storeCounter.add(1);
+            } catch (Exception e) {
+                logger.warn("Failed to store response in cache: {}", e.getMessage());
+            }
+        });
+    }
+
+    private Duration ttlFor(String model) {
+        return modelTtls.getOrDefault(model, defaultTtl);
+    }
+
+    private Duration frontTtlFor(String model) {
+        Duration ttl = ttlFor(model);
+        return ttl.compareTo(frontTtl) < 0 ? ttl : frontTtl;
+    }
+
+    /**
+     * Parses {@code model=seconds} pairs separated by commas; model ids contain slashes and
+     * colons, which do not work as YAML map keys.
+     */
+    private static Map<String, Duration> parseModelTtls(String value) {
+        Map<String, Duration> ttls = new HashMap<>();
+        if (value == null || value.isBlank()) {
+            return ttls;
+        }
+        for (String pair : value.split(",")) {
+            int separator = pair.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid chat.response-cache.model-ttls entry: " + pair);
+            }
+            ttls.put(pair.substring(0, separator).trim(),
+                    Duration.ofSeconds(Long.parseLong(pair.substring(separator + 1).trim())));
+        }
+        return ttls;
+    }
+
+    /**
+     * Access-ordered LRU bounded by entry count and by approximate heap size of the values.
+     */
+    private static final class FrontCache {
+
+        private final int maxEntries;
+        private final long maxBytes;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        private FrontCache(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized String get(String key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiresAtNanos >= 0) {
+                remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        private synchronized void put(String key, String value, Duration ttl) {
+            if (maxEntries <= 0 || sizeOf(value) > maxBytes) {
+                return;
+            }
+            remove(key);
+            entries.put(key, new Entry(value, System.nanoTime() + ttl.toNanos()));
+            bytes += sizeOf(value);
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                bytes -= sizeOf(eldest.next().getValue().value);
+                eldest.remove();
+            }
+        }
+
+        private void remove(String key) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                bytes -= sizeOf(removed.value);
+            }
+        }
+
+        private static long sizeOf(String value) {
+            return 2L * value.length();
+        }
+
+        private record Entry(String value, long expiresAtNanos) {
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.exception.ResourceNotFoundException;
+import com.madlen.chat.model.Conversation;
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.repository.ConversationRepository;
+import com.madlen.chat.repository.MessageRepository;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.service.StreamPersistenceService;
+import com.madlen.chat.util.ConversationHelper;
+import com.madlen.chat.util.MessageFactory;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persists completed streamed answers on a dedicated, bounded executor instead of the
+ * reactor thread that delivered the last upstream chunk.
+ *
+ * The executor queue is bounded by {@code chat.persistence.queue-capacity}. When it is full
+ * the configured overflow policy applies:
+ * <ul>
+ *   <li>{@code REJECT} (default) - the save fails fast and the client receives an error event</li>
+ *   <li>{@code SPILL} - the save runs on {@code Schedulers.boundedElastic()} instead, so the
+ *       message is kept without blocking the reactor thread that submitted it</li>
+ * </ul>
+ */
+@Service
+@ConditionalOnProperty(name = "chat.streaming.reactive.enabled", havingValue = "false", matchIfMissing = true)
+public class StreamPersistenceServiceImpl implements StreamPersistenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamPersistenceServiceImpl.class);
+    private static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("outcome");
+
+    public enum OverflowPolicy {
+        REJECT, SPILL
+    }
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final HistoryCacheService historyCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final LongCounter saveCounter;
+    private final LongHistogram queueWaitHistogram;
+
+    public StreamPersistenceServiceImpl(ConversationRepository conversationRepository,
+            MessageRepository messageRepository,
+            HistoryCacheService historyCache,
+            PlatformTransactionManager transactionManager,
+            Meter meter,
+            @Value("${chat.persistence.threads:4}") int threads,
+            @Value("${chat.persistence.queue-capacity:1000}") int queueCapacity,
+            @Value("${chat.persistence.overflow-policy:REJECT}") OverflowPolicy overflowPolicy) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.historyCache = historyCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.saveCounter = meter.counterBuilder("chat.stream.persistence.saves")
+                .setDescription("Completed stream persistence tasks by outcome")
+                .build();
+        this.queueWaitHistogram = meter.histogramBuilder("chat.stream.persistence.queue.wait")
+                .setDescription("Time a completed stream waited for a persistence thread")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), namedThreadFactory(), rejectionHandler(overflowPolicy));
+        this.scheduler = Schedulers.fromExecutorService(executor, "stream-persistence");
+
+        meter.gaugeBuilder("chat.stream.persistence.queue.depth")
+                .setDescription("Completed streams waiting to be persisted")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(executor.getQueue().size()));
+        meter.gaugeBuilder("chat.stream.persistence.queue.remaining")
+                .setDescription("Free slots in the stream persistence queue")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(executor.getQueue().remainingCapacity()));
+        meter.gaugeBuilder("chat.stream.persistence.active")
+                .setDescription("Persistence threads currently saving a message")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(executor.getActiveCount()));
+    }
+
+    @Override
+    public Mono<Long> saveAssistantMessage(Long conversationId, String content, String model, String titleSource) {
+        return Mono.defer(() -> {
+            long enqueuedAt = System.nanoTime();
+            return Mono.fromCallable(() -> {
+                        queueWaitHistogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt));
+                        return persist(conversationId, content, model, titleSource, false);
+                    })
+                    .subscribeOn(scheduler);
+        })
+                .doOnSuccess(id -> saveCounter.add(1, Attributes.of(OUTCOME, "saved")))
+                .doOnError(error -> {
+                    saveCounter.add(1, Attributes.of(OUTCOME, "failed"));
+                    logger.error("Failed to persist streamed message for conversation {}: {}",
+                            conversationId, error.getMessage());
+                });
+    }
+
+    @Override
+    public void saveInterruptedMessage(Long conversationId, String partialContent, String model, String titleSource) {
+        Mono.fromCallable(() -> persist(conversationId, partialContent, model, titleSource, true))
+                .subscribeOn(scheduler)
+                .subscribe(
+                        id -> saveCounter.add(1, Attributes.of(OUTCOME, "interrupted")),
+                        error -> {
+                            saveCounter.add(1, Attributes.of(OUTCOME, "failed"));
+                            logger.error("Failed to persist interrupted message for conversation {}: {}",
+                                    conversationId, error.getMessage());
+                        });
+    }
+
+    private Long persist(Long conversationId, String content, String model, String titleSource,
+            boolean interrupted) {
+        return transactionTemplate.execute(status -> {
+            Conversation conversation = conversationRepository.findById(conversationId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Conversation", conversationId));
+            Message saved = messageRepository.save(
+                    MessageFactory.createAssistantMessage(conversation, content, model, interrupted));
+            historyCache.append(conversationId, HistoryEntry.of(saved));
+            ConversationHelper.updateConversationTitleIfNeeded(conversation, titleSource, conversationRepository);
+            return saved.getId();
+        });
+    }
+
+    private RejectedExecutionHandler rejectionHandler(OverflowPolicy overflowPolicy) {
+        RejectedExecutionHandler delegate = overflowPolicy == OverflowPolicy.REJECT
+                ? new ThreadPoolExecutor.AbortPolicy()
+                : (task, pool) -> Schedulers.boundedElastic().schedule(task);
+        return (task, pool) -> {
+            saveCounter.add(1, Attributes.of(OUTCOME, "overflow_" + overflowPolicy.name().toLowerCase()));
+            logger.warn("Stream persistence queue is full ({} queued), applying {} policy",
+                    pool.getQueue().size(), overflowPolicy);
+            delegate.rejectedExecution(task, pool);
+        };
+    }
+
+    private static ThreadFactory namedThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "stream-persistence-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Stream persistence queue did not drain before shutdown, {} tasks dropped",
+                        executor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scheduler.dispose();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.service.StreamReplayService;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a bounded replay log per streamed answer so a client that lost its connection can
+ * reconnect with {@code Last-Event-ID} and continue where it stopped, without restarting
+ * the upstream generation.
+ *
+ * The generation is paced by its clients: it is only asked for events up to the furthest
+ * point any attached client has requested, so a slow client slows the upstream read and
+ * the content coalescer sees the client's real demand. Replayed events do not count.
+ *
+ * Generation is only kept alive for a client that may come back: once the last subscriber of
+ * a running stream goes away and nobody resumes within {@code resume-grace-ms}, the upstream
+ * subscription is disposed, which cancels the OpenRouter exchange. {@code 0} cancels as soon
+ * as the client disconnects.
+ *
+ * Event ids have the form {@code <conversationId>:<streamId>:<sequence>}. Logs are evicted
+ * {@code ttl} after the stream finished, after {@code max-age} regardless of state, and
+ * oldest-first (finished streams before running ones) once the total buffered size goes
+ * over {@code memory-budget-bytes}.
+ */
+@Service
+public class StreamReplayServiceImpl implements StreamReplayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamReplayServiceImpl.class);
+    private static final long EVENT_OVERHEAD_BYTES = 96;
+    private static final long INITIAL_ATTACH_MILLIS = 5000;
+    private static final Sinks.EmitFailureHandler RETRY_CONCURRENT_EMIT =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
+    private final ConcurrentHashMap<String, StreamLog> logs = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final int maxEventsPerStream;
+    private final long ttlMillis;
+    private final long maxAgeMillis;
+    private final long memoryBudgetBytes;
+    private final long resumeGraceMillis;
+    private final LongCounter abandonedCounter;
+
+    public StreamReplayServiceImpl(Meter meter,
+            @Value("${chat.streaming.replay.max-events-per-stream:2000}") int maxEventsPerStream,
+            @Value("${chat.streaming.replay.ttl-seconds:120}") long ttlSeconds,
+            @Value("${chat.streaming.replay.max-age-seconds:900}") long maxAgeSeconds,
+            @Value("${chat.streaming.replay.memory-budget-bytes:67108864}") long memoryBudgetBytes,
+            @Value("${chat.streaming.replay.resume-grace-ms:5000}") long resumeGraceMillis) {
+        this.maxEventsPerStream = Math.max(1, maxEventsPerStream);
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.resumeGraceMillis = Math.max(0, resumeGraceMillis);
+
+        this.abandonedCounter = meter.counterBuilder("chat.stream.abandoned")
+                .setDescription("Streams whose generation was cancelled because the client went away")
+                .build();
+
+        meter.gaugeBuilder("chat.stream.replay.logs")
+                .setDescription("Streamed answers currently held for resumption")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(logs.size()));
+        meter.gaugeBuilder("chat.stream.replay.bytes")
+                .setDescription("Approximate memory held by stream replay logs")
+                .setUnit("By")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(totalBytes.get()));
+    }
+
+    @Override
+    public Flux<ServerSentEvent<String>> register(Long conversationId, Long userId,
+            Flux<ServerSentEvent<String>> events) {
+        String key = conversationId + ":" + UUID.randomUUID().toString().replace("-", "");
+        StreamLog log = new StreamLog(key, userId);
+        logs.put(key, log);
+        if (totalBytes.get() > memoryBudgetBytes) {
+            evictOverBudget();
+        }
+
+        log.start(events);
+        return log.view(-1);
+    }
+
+    @Override
+    public Optional<Flux<ServerSentEvent<String>>> resume(String lastEventId, Long userId) {
+        int sequenceSeparator = lastEventId.lastIndexOf(':');
+        if (sequenceSeparator <= 0) {
+            return Optional.empty();
+        }
+        long lastSequence;
+        try {
+            lastSequence = Long.parseLong(lastEventId.substring(sequenceSeparator + 1));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+
+        StreamLog log = logs.get(lastEventId.substring(0, sequenceSeparator));
+        if (log == null || !log.userId.equals(userId)) {
+            return Optional.empty();
+        }
+        logger.debug("Resuming stream {} after event {}", log.key, lastSequence);
+        return Optional.of(log.view(lastSequence));
+    }
+
+    @Scheduled(fixedDelayString = "${chat.streaming.replay.cleanup-interval-ms:5000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        logs.values().removeIf(log -> {
+            boolean expired = (log.completedAt > 0 && now - log.completedAt > ttlMillis)
+                    || now - log.createdAt > maxAgeMillis;
+            if (expired) {
+                log.evict();
+            }
+            return expired;
+        });
+        if (totalBytes.get() > memoryBudgetBytes) {
+            evictOverBudget();
+        }
+    }
+
+    private synchronized void evictOverBudget() {
+        List<StreamLog> candidates = new ArrayList<>(logs.values());
+        candidates.sort(Comparator.comparing((StreamLog log) -> log.completedAt == 0)
+                .thenComparingLong(log -> log.createdAt));
+        for (StreamLog log : candidates) {
+            if (totalBytes.get() <= memoryBudgetBytes) {
+                break;
+            }
+            if (logs.remove(log.key, log)) {
+                log.evict();
+                logger.debug("Evicted stream replay log {} to stay within memory budget", log.key);
+            }
+        }
+    }
+
+    /**
+     * Bytes currently counted against {@code memory-budget-bytes}.
+     */
+    long bufferedBytes() {
+        return totalBytes.get();
+    }
+
+    private static long sequenceOf(ServerSentEvent<String> event) {
+        String id = event.id();
+        return id == null ? -1 : Long.parseLong(id.substring(id.lastIndexOf(':') + 1));
+    }
+
+    private final class StreamLog {
+
+        private final String key;
+        private final Long userId;
+        private final long createdAt = System.currentTimeMillis();
+        private final Sinks.Many<ServerSentEvent<String>> sink = Sinks.many().replay().limit(maxEventsPerStream);
+        private final AtomicLong nextSequence = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        // sizes of the retained events by sequence, to release what the replay limit drops
+        private final long[] retainedSizes = new long[maxEventsPerStream];
+        private final Generation generation = new Generation();
+        private final AtomicLong requestedFromGeneration = new AtomicLong();
+        private volatile long completedAt;
+        // guarded by retainedSizes; an evicted log no longer counts towards totalBytes
+        private boolean evicted;
+        private Disposable pendingAbort;
+        private int subscribers;
+
+        private StreamLog(String key, Long userId) {
+            this.key = key;
+            this.userId = userId;
+        }
+
+        private synchronized void start(Flux<ServerSentEvent<String>> events) {
+            events.subscribe(generation);
+            // covers a client that disconnected before it ever subscribed to the view
+            scheduleAbortIfAbandoned(Math.max(resumeGraceMillis, INITIAL_ATTACH_MILLIS));
+        }
+
+        private void append(ServerSentEvent<String> event) {
+            long sequence = nextSequence.getAndIncrement();
+            ServerSentEvent<String> sequenced = ServerSentEvent.<String>builder()
+                    .id(key + ":" + sequence)
+                    .event(event.event())
+                    .data(event.data())
+                    .build();
+            long size = EVENT_OVERHEAD_BYTES + (event.data() != null ? 2L * event.data().length() : 0);
+            synchronized (retainedSizes) {
+                int slot = (int) (sequence % maxEventsPerStream);
+                // the replay sink drops the event that held this slot
+                long released = sequence >= maxEventsPerStream ? retainedSizes[slot] : 0;
+                retainedSizes[slot] = size;
+                bytes.addAndGet(size - released);
+                if (!evicted) {
+                    totalBytes.addAndGet(size - released);
+                }
+            }
+            // generation and abort may race on the last events
+            sink.emitNext(sequenced, RETRY_CONCURRENT_EMIT);
+        }
+
+        /**
+         * Releases the log's bytes from the global total. A running generation keeps feeding
+         * its attached clients, but its further events are no longer counted.
+         */
+        private void evict() {
+            synchronized (retainedSizes) {
+                if (!evicted) {
+                    evicted = true;
+                    totalBytes.addAndGet(-bytes.get());
+                }
+            }
+        }
+
+        private void complete() {
+            completedAt = System.currentTimeMillis();
+            sink.emitComplete(RETRY_CONCURRENT_EMIT);
+        }
+
+        private void fail(Throwable error) {
+            logger.warn("Stream {} failed: {}", key, error.getMessage());
+            append(ServerSentEvent.<String>builder()
+                    .event("error")
+                    .data(error.getMessage() != null ? error.getMessage() : "An error occurred while streaming")
+                    .build());
+            complete();
+        }
+
+        private Flux<ServerSentEvent<String>> view(long afterSequence) {
+            long firstRetained = Math.max(0, nextSequence.get() - maxEventsPerStream);
+            if (afterSequence + 1 < firstRetained) {
+                return Flux.just(ServerSentEvent.<String>builder()
+                        .event("error")
+                        .data("Stream can no longer be resumed. Please reload the conversation.")
+                        .build());
+            }
+            Flux<ServerSentEvent<String>> events = sink.asFlux()
+                    .doOnSubscribe(subscription -> onSubscriberAttached())
+                    .doFinally(signal -> onSubscriberDetached());
+            if (afterSequence >= 0) {
+                events = events.filter(event -> sequenceOf(event) > afterSequence);
+            }
+            // the sequence this client has asked for up to, exclusive
+            AtomicLong wanted = new AtomicLong(afterSequence + 1);
+            return events.doOnRequest(n -> requestUpTo(wanted.accumulateAndGet(n, Operators::addCap)));
+        }
+
+        private void requestUpTo(long sequence) {
+            long previous = requestedFromGeneration.getAndAccumulate(sequence, Math::max);
+            if (sequence > previous) {
+                generation.request(sequence - previous);
+            }
+        }
+
+        private synchronized void onSubscriberAttached() {
+            subscribers++;
+            if (pendingAbort != null) {
+                pendingAbort.dispose();
+                pendingAbort = null;
+            }
+        }
+
+        private synchronized void onSubscriberDetached() {
+            subscribers--;
+            scheduleAbortIfAbandoned(resumeGraceMillis);
+        }
+
+        private void scheduleAbortIfAbandoned(long delayMillis) {
+            if (subscribers > 0 || completedAt > 0 || pendingAbort != null) {
+                return;
+            }
+            if (delayMillis == 0) {
+                abortIfAbandoned();
+            } else {
+                pendingAbort = Schedulers.parallel().schedule(this::abortIfAbandoned,
+                        delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void abortIfAbandoned() {
+            pendingAbort = null;
+            if (subscribers > 0 || completedAt > 0) {
+                return;
+            }
+            logger.debug("No client attached to stream {}, cancelling generation", key);
+            abandonedCounter.add(1);
+            generation.dispose();
+            append(ServerSentEvent.<String>builder()
+                    .event("error")
+                    .data("Response generation was interrupted.")
+                    .build());
+            complete();
+        }
+
+        /**
+         * Subscribes to the generation without demand of its own; events are requested on
+         * behalf of the attached clients.
+         */
+        private final class Generation extends BaseSubscriber<ServerSentEvent<String>> {
+
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                long requested = requestedFromGeneration.get();
+                if (requested > 0) {
+                    subscription.request(requested);
+                }
+            }
+
+            @Override
+            protected void hookOnNext(ServerSentEvent<String> event) {
+                append(event);
+            }
+
+            @Override
+            protected void hookOnError(Throwable error) {
+                fail(error);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.exception.ModelOverloadedException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Concurrency limit for one upstream model that adapts to observed latency.
+ *
+ * The limit follows a gradient rule: a fast and a slow moving average of the latency are
+ * tracked, and while recent latency stays within {@code tolerance} of the long-term
+ * baseline the limit grows (by roughly its square root per adjustment); when latency rises
+ * the limit shrinks proportionally. Drops (429, 5xx, timeouts) cut the limit
+ * multiplicatively, as in AIMD. Callers over the limit wait in a bounded FIFO queue up to
+ * their deadline and are rejected immediately once the queue is full.
+ *
+ * Latency is tracked separately per {@link SampleKind}, because time to first token and
+ * the duration of a complete answer are not comparable.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    public enum SampleKind {
+        FIRST_TOKEN, FULL_RESPONSE
+    }
+
+    private static final double SHORT_WEIGHT = 0.3;
+    private static final double LONG_WEIGHT = 0.02;
+    private static final double SMOOTHING = 0.2;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final LatencyAverages[] latency = {new LatencyAverages(), new LatencyAverages()};
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue,
+            double tolerance, double backoffRatio) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueue = maxQueue;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Emits a permit as soon as the call fits under the limit. Fails with
+     * {@link ModelOverloadedException} right away if the queue is full, or after
+     * {@code maxWait} if no permit became free in time. A permit that is emitted after the
+     * subscriber cancelled is discarded and released again.
+     */
+    public Mono<Permit> acquire(Duration maxWait) {
+        return Mono.<Permit>create(sink -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    waiter = null;
+                } else if (queue.size() >= maxQueue || maxWait.isZero()) {
+                    sink.error(new ModelOverloadedException(name, "too many concurrent requests"));
+                    return;
+                } else {
+                    waiter = new Waiter(sink);
+                    waiter.timeout = Schedulers.parallel().schedule(() -> expire(waiter),
+                            maxWait.toMillis(), TimeUnit.MILLISECONDS);
+                    queue.addLast(waiter);
+                }
+            }
+            if (waiter == null) {
+                sink.success(new Permit());
+            } else {
+                sink.onCancel(() -> abandon(waiter));
+            }
+        }).doOnDiscard(Permit.class, Permit::onIgnore);
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return;
+            }
+        }
+        waiter.sink.error(new ModelOverloadedException(name, "no capacity became free in time"));
+    }
+
+    private void abandon(Waiter waiter) {
+        synchronized (this) {
+            queue.remove(waiter);
+        }
+        waiter.timeout.dispose();
+    }
+
+    private void release(SampleKind kind, long latencyNanos, boolean dropped) {
+        List<Waiter> admitted;
+        synchronized (this) {
+            inFlight--;
+            if (dropped) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (kind != null) {
+                adjust(latency[kind.ordinal()], latencyNanos);
+            }
+            admitted = admitWaiters();
+        }
+        // completing a waiter may start the next call inline, so never do it under the lock
+        for (Waiter waiter : admitted) {
+            waiter.timeout.dispose();
+            waiter.sink.success(new Permit());
+        }
+    }
+
+    private void adjust(LatencyAverages averages, long latencyNanos) {
+        averages.record(latencyNanos);
+        if (averages.samples < 10) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * averages.longTerm / averages.shortTerm));
+        double target = limit * gradient + Math.sqrt(limit);
+        // do not grow while the current limit is not even half used
+        if (target > limit && inFlight < limit / 2) {
+            return;
+        }
+        double smoothed = limit * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, smoothed));
+        if (averages.longTerm / averages.shortTerm > 2) {
+            // latency dropped for good (e.g. provider recovered), let the baseline catch up
+            averages.longTerm *= 0.95;
+        }
+    }
+
+    private List<Waiter> admitWaiters() {
+        List<Waiter> admitted = null;
+        while (inFlight < (int) limit && !queue.isEmpty()) {
+            if (admitted == null) {
+                admitted = new ArrayList<>(2);
+            }
+            admitted.add(queue.pollFirst());
+            inFlight++;
+        }
+        return admitted != null ? admitted : List.of();
+    }
+
+    /**
+     * One admitted call. Exactly one of the completion methods must be called; later calls
+     * are ignored.
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        public void onSuccess(SampleKind kind, long latencyNanos) {
+            if (released.compareAndSet(false, true)) {
+                release(kind, latencyNanos, false);
+            }
+        }
+
+        /** The upstream signalled overload (rate limit, server error, timeout). */
+        public void onDropped() {
+            if (released.compareAndSet(false, true)) {
+                release(null, 0, true);
+            }
+        }
+
+        /** The call ended without a usable latency sample, e.g. cancelled or a client error. */
+        public void onIgnore() {
+            if (released.compareAndSet(false, true)) {
+                release(null, 0, false);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private Disposable timeout;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    private static final class LatencyAverages {
+        private double shortTerm;
+        private double longTerm;
+        private long samples;
+
+        private void record(long latencyNanos) {
+            if (samples++ == 0) {
+                shortTerm = latencyNanos;
+                longTerm = latencyNanos;
+                return;
+            }
+            shortTerm += SHORT_WEIGHT * (latencyNanos - shortTerm);
+            longTerm += LONG_WEIGHT * (latencyNanos - longTerm);
+        }
+    }
+}
@@ -24,4 +24,21 @@ public final class CacheHelper {
     public static String getRateLimitKey(Long userId) {
         return CacheConstants.KEY_PREFIX_RATE_LIMIT + userId + ":chat";
     }
+    
+    public static String getResponseCacheKey(String fingerprint) {
+        return CacheConstants.KEY_PREFIX_RESPONSE + fingerprint;
+    }
+    
+    // the braces make the three keys of a conversation share one cluster hash slot, as the scripts need
+    public static String getHistoryCacheKey(Long conversationId) {
+        return CacheConstants.KEY_PREFIX_HISTORY + "{" + conversationId + "}";
+    }
+    
+    public static String getHistoryGenerationKey(Long conversationId) {
+        return getHistoryCacheKey(conversationId) + ":gen";
+    }
+    
+    public static String getHistorySummaryKey(Long conversationId) {
+        return getHistoryCacheKey(conversationId) + ":summary";
+    }
 }
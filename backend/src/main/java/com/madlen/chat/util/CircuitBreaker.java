@@ -0,0 +1,220 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.dto.CircuitBreakerStatus;
+
+import java.time.Duration;
+
+/**
+ * Count-based circuit breaker for one upstream model.
+ *
+ * While CLOSED the outcome of the last {@code windowSize} calls is kept; once at least
+ * {@code minimumCalls} are recorded and the failure rate reaches {@code failureRateThreshold}
+ * the breaker OPENs and rejects calls for {@code openDuration} (or the upstream's
+ * {@code Retry-After}, if longer). After that it goes HALF_OPEN and lets {@code probes}
+ * trial calls through: if all succeed it closes, any failure opens it again.
+ *
+ * Outcomes of calls admitted in an earlier state are ignored, so a slow call started
+ * before the breaker opened cannot close it.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified on every state change, under the breaker's lock.
+     */
+    public interface TransitionListener {
+        void onTransition(String name, State from, State to);
+    }
+
+    private final String name;
+    private final boolean[] outcomes;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final long maxOpenNanos;
+    private final int probes;
+    private final TransitionListener listener;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private int recorded;
+    private int next;
+    private int failures;
+    private long openUntilNanos;
+    private int probesStarted;
+    private int probeSuccesses;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+            Duration openDuration, Duration maxOpenDuration, int probes, TransitionListener listener) {
+        this.name = name;
+        this.outcomes = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.maxOpenNanos = Math.max(openNanos, maxOpenDuration.toNanos());
+        this.probes = Math.max(1, probes);
+        this.listener = listener;
+    }
+
+    /**
+     * Admits a call, or returns {@code null} while the breaker is open or all half-open
+     * probes are taken.
+     */
+    public synchronized Permit tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openUntilNanos < 0) {
+                return null;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= probes) {
+                return null;
+            }
+            probesStarted++;
+            return new Permit(generation, true);
+        }
+        return new Permit(generation, false);
+    }
+
+    /**
+     * Time until the breaker lets probes through again; zero unless it is open.
+     */
+    public synchronized Duration remainingOpen() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openUntilNanos - System.nanoTime()));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Forces the breaker closed and forgets the recorded outcomes.
+     */
+    public synchronized void reset() {
+        if (state != State.CLOSED) {
+            transitionTo(State.CLOSED);
+        } else {
+            clearWindow();
+        }
+    }
+
+    public synchronized CircuitBreakerStatus status() {
+        return new CircuitBreakerStatus(name, state.name(), recorded, failures,
+                recorded == 0 ? 0 : (double) failures / recorded, remainingOpen().toMillis());
+    }
+
+    private void onOutcome(Permit permit, boolean failed, Duration retryAfter) {
+        if (permit.generation != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                open(retryAfter);
+            } else if (++probeSuccesses >= probes) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        next = (next + 1) % outcomes.length;
+        if (failed) {
+            failures++;
+        }
+        if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+            open(retryAfter);
+        }
+    }
+
+    private void onIgnored(Permit permit) {
+        if (permit.generation == generation && permit.probe) {
+            probesStarted--;
+        }
+    }
+
+    private void open(Duration retryAfter) {
+        long nanos = openNanos;
+        if (retryAfter != null) {
+            nanos = Math.min(maxOpenNanos, Math.max(nanos, retryAfter.toNanos()));
+        }
+        openUntilNanos = System.nanoTime() + nanos;
+        transitionTo(State.OPEN);
+    }
+
+    private void transitionTo(State to) {
+        State from = state;
+        state = to;
+        generation++;
+        probesStarted = 0;
+        probeSuccesses = 0;
+        if (to == State.CLOSED) {
+            clearWindow();
+        }
+        listener.onTransition(name, from, to);
+    }
+
+    private void clearWindow() {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+
+    /**
+     * One admitted call. The first reported outcome counts, later ones are ignored.
+     */
+    public final class Permit {
+
+        private final long generation;
+        private final boolean probe;
+        private boolean done;
+
+        private Permit(long generation, boolean probe) {
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        public void onSuccess() {
+            synchronized (CircuitBreaker.this) {
+                if (!done) {
+                    done = true;
+                    onOutcome(this, false, null);
+                }
+            }
+        }
+
+        public void onFailure(Duration retryAfter) {
+            synchronized (CircuitBreaker.this) {
+                if (!done) {
+                    done = true;
+                    onOutcome(this, true, retryAfter);
+                }
+            }
+        }
+
+        /** The call ended without telling anything about the model's health. */
+        public void onIgnore() {
+            synchronized (CircuitBreaker.this) {
+                if (!done) {
+                    done = true;
+                    onIgnored(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.service.ModelCatalogService;
+import io.opentelemetry.api.trace.Span;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fits conversation history into the requested model's context window.
+ *
+ * The budget is the model's context length from the catalog ({@code default-context-tokens}
+ * if unknown) minus {@code reserved-output-tokens} for the answer, minus the current message.
+ * History is grouped into turns (a user message and the replies up to the next one); the
+ * most recent turns are kept whole while they fit. The conversation summary, or without
+ * one the first user message, is always kept, truncated if it alone exceeds the budget.
+ * Tokens are estimated from character counts, as no tokenizer is available for most models.
+ */
+@Component
+public class ContextWindowBuilder {
+
+    private static final String USER_ROLE = "user";
+    private static final String ROLE = "role";
+    private static final String CONTENT = "content";
+
+    /**
+     * The history to send, the token budget for the whole prompt, the estimated tokens used
+     * and how many turns were left out in full or in part.
+     */
+    public record Window(List<Map<String, String>> history, int budgetTokens, int usedTokens, int droppedTurns) {
+
+        public void recordOn(Span span) {
+            span.setAttribute("context.budget_tokens", budgetTokens);
+            span.setAttribute("context.used_tokens", usedTokens);
+            span.setAttribute("context.dropped_turns", droppedTurns);
+        }
+    }
+
+    private final ModelCatalogService modelCatalogService;
+    private final boolean enabled;
+    private final int defaultContextTokens;
+    private final int reservedOutputTokens;
+    private final double charsPerToken;
+    private final int messageOverheadTokens;
+    private final int imageTokens;
+
+    public ContextWindowBuilder(ModelCatalogService modelCatalogService,
+            @Value("${chat.context.enabled:true}") boolean enabled,
+            @Value("${chat.context.default-context-tokens:8192}") int defaultContextTokens,
+            @Value("${chat.context.reserved-output-tokens:2048}") int reservedOutputTokens,
+            @Value("${chat.context.chars-per-token:3.5}") double charsPerToken,
+            @Value("${chat.context.message-overhead-tokens:4}") int messageOverheadTokens,
+            @Value("${chat.context.image-tokens:1024}") int imageTokens) {
+        this.modelCatalogService = modelCatalogService;
+        this.enabled = enabled;
+        this.defaultContextTokens = defaultContextTokens;
+        this.reservedOutputTokens = reservedOutputTokens;
+        this.charsPerToken = charsPerToken;
+        this.messageOverheadTokens = messageOverheadTokens;
+        this.imageTokens = imageTokens;
+    }
+
+    public Window fit(String model, List<Map<String, String>> history, String message, boolean hasImage) {
+        List<Map<String, String>> entries = history != null ? history : List.of();
+        int contextTokens = modelCatalogService.getCatalog().find(model)
+                .map(entry -> entry.contextLength())
+                .filter(length -> length > 0)
+                .orElse(defaultContextTokens);
+        // small windows reserve at most half for the answer
+        int budget = contextTokens - Math.min(reservedOutputTokens, contextTokens / 2);
+        int used = estimate(message) + (hasImage ? imageTokens : 0);
+        if (!enabled) {
+            return new Window(entries, budget, used + estimate(entries), 0);
+        }
+
+        List<Integer> turnStarts = turnStarts(entries);
+        int pinned = pinnedIndex(entries);
+        int windowStart = entries.size();
+        int keptTurns = 0;
+        int pinnedTokens = pinned >= 0 ? estimate(entries.get(pinned).get(CONTENT)) : 0;
+        int remaining = budget - used - pinnedTokens;
+        for (int turn = turnStarts.size() - 1; turn >= 0; turn--) {
+            int start = turnStarts.get(turn);
+            int end = turn + 1 < turnStarts.size() ? turnStarts.get(turn + 1) : entries.size();
+            int tokens = estimate(entries.subList(start, end));
+            if (start <= pinned && pinned < end) {
+                tokens -= pinnedTokens;
+            }
+            if (tokens > remaining) {
+                break;
+            }
+            remaining -= tokens;
+            windowStart = start;
+            keptTurns++;
+        }
+
+        List<Map<String, String>> window = new ArrayList<>(entries.size() - windowStart + 1);
+        if (pinned >= 0 && pinned < windowStart) {
+            Map<String, String> entry = entries.get(pinned);
+            int available = remaining + pinnedTokens;
+            if (pinnedTokens <= available) {
+                window.add(entry);
+            } else if (available > messageOverheadTokens) {
+                window.add(truncate(entry, available));
+                remaining = 0;
+            } else {
+                remaining = available;
+            }
+        }
+        window.addAll(entries.subList(windowStart, entries.size()));
+        return new Window(window, budget, budget - remaining, turnStarts.size() - keptTurns);
+    }
+
+    /**
+     * Index of each turn's first entry. Entries before the first user message form a turn
+     * of their own.
+     */
+    private static List<Integer> turnStarts(List<Map<String, String>> entries) {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (i == 0 || USER_ROLE.equals(entries.get(i).get(ROLE))) {
+                starts.add(i);
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * A leading summary entry, otherwise the first user message, or -1.
+     */
+    private static int pinnedIndex(List<Map<String, String>> entries) {
+        if (!entries.isEmpty() && MessageHistoryBuilder.SUMMARY_ROLE.equals(entries.get(0).get(ROLE))) {
+            return 0;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            if (USER_ROLE.equals(entries.get(i).get(ROLE))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Map<String, String> truncate(Map<String, String> entry, int tokens) {
+        String content = entry.get(CONTENT);
+        int chars = (int) Math.max(0, (tokens - messageOverheadTokens) * charsPerToken);
+        Map<String, String> truncated = new HashMap<>(entry);
+        truncated.put(CONTENT, content.substring(0, Math.min(content.length(), chars)));
+        return truncated;
+    }
+
+    private int estimate(List<Map<String, String>> entries) {
+        int tokens = 0;
+        for (Map<String, String> entry : entries) {
+            tokens += estimate(entry.get(CONTENT));
+        }
+        return tokens;
+    }
+
+    private int estimate(String content) {
+        int length = content != null ? content.length() : 0;
+        return messageOverheadTokens + (int) Math.ceil(length / charsPerToken);
+    }
+}
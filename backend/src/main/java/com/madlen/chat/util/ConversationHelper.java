@@ -41,11 +41,14 @@ public final class ConversationHelper {
         boolean hasFewMessages = conversationMessages == null || conversationMessages.size() <= 2;
         
         if (isNewConversation && hasFewMessages && titleSource != null && !titleSource.isEmpty()) {
-            String title = titleSource.length() > Constants.MAX_TITLE_LENGTH
-                    ? titleSource.substring(0, Constants.MAX_TITLE_LENGTH) + Constants.TITLE_ELLIPSIS
-                    : titleSource;
-            conversation.setTitle(title);
+            conversation.setTitle(titleFrom(titleSource));
             conversationRepository.save(conversation);
         }
     }
+    
+    public static String titleFrom(String titleSource) {
+        return titleSource.length() > Constants.MAX_TITLE_LENGTH
+                ? titleSource.substring(0, Constants.MAX_TITLE_LENGTH) + Constants.TITLE_ELLIPSIS
+                : titleSource;
+    }
 }
@@ -0,0 +1,70 @@
+package com.madlen.chat.util;
+
+import java.util.Optional;
+
+/**
+ * Image formats recognised from their leading bytes, regardless of what the client claimed.
+ */
+public enum ImageFormat {
+
+    JPEG("image/jpeg", true),
+    PNG("image/png", true),
+    GIF("image/gif", true),
+    WEBP("image/webp", true),
+    BMP("image/bmp", false);
+
+    /**
+     * Bytes needed by {@link #sniff}.
+     */
+    public static final int HEADER_BYTES = 12;
+
+    private final String mimeType;
+    private final boolean acceptedUpstream;
+
+    ImageFormat(String mimeType, boolean acceptedUpstream) {
+        this.mimeType = mimeType;
+        this.acceptedUpstream = acceptedUpstream;
+    }
+
+    public String mimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Whether vision models accept the format as it is; others are converted before sending.
+     */
+    public boolean acceptedUpstream() {
+        return acceptedUpstream;
+    }
+
+    public static Optional<ImageFormat> sniff(byte[] header) {
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            return Optional.of(JPEG);
+        }
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return Optional.of(PNG);
+        }
+        if (startsWith(header, 0, 'G', 'I', 'F', '8')) {
+            return Optional.of(GIF);
+        }
+        if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+            return Optional.of(WEBP);
+        }
+        if (startsWith(header, 0, 'B', 'M')) {
+            return Optional.of(BMP);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, int... expected) {
+        if (bytes.length < offset + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((bytes[offset + i] & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
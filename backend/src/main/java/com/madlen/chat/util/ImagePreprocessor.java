@@ -0,0 +1,279 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Prepares the image of a chat request for upstream: the real format is sniffed from the
+ * bytes, and images larger than the model's useful resolution ({@code max-dimension}, or the
+ * model's entry in {@code model-max-dimensions}) or than {@code max-bytes} are scaled down
+ * and re-encoded as JPEG, lowering the quality step by step to {@code min-quality} until
+ * they fit. Images that already fit are sent unchanged with their real MIME type.
+ *
+ * Images are decoded from their file in the image store, and large JPEGs are subsampled
+ * while decoding, so a huge photo is never held in memory at full size. Results are cached
+ * by content hash and target size, so a hedged or retried request does not process the
+ * same image again. Images that cannot be decoded are sent as they are.
+ */
+@Component
+public class ImagePreprocessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessor.class);
+    private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+    private static final Attributes UNCHANGED = Attributes.of(RESULT, "unchanged");
+    private static final Attributes RESIZED = Attributes.of(RESULT, "resized");
+    private static final Attributes RECOMPRESSED = Attributes.of(RESULT, "recompressed");
+    private static final Attributes CACHED = Attributes.of(RESULT, "cached");
+    private static final float QUALITY_STEP = 0.1f;
+
+    private final boolean enabled;
+    private final int defaultMaxDimension;
+    private final Map<String, Integer> modelMaxDimensions;
+    private final long maxBytes;
+    private final float quality;
+    private final float minQuality;
+    private final VariantCache cache;
+    private final LongCounter processedCounter;
+
+    public ImagePreprocessor(Meter meter,
+            @Value("${chat.images.upstream.enabled:true}") boolean enabled,
+            @Value("${chat.images.upstream.max-dimension:1568}") int defaultMaxDimension,
+            @Value("${chat.images.upstream.model-max-dimensions:}") String modelMaxDimensions,
+            @Value("${chat.images.upstream.max-bytes:1048576}") long maxBytes,
+            @Value("${chat.images.upstream.quality:0.85}") float quality,
+            @Value("${chat.images.upstream.min-quality:0.5}") float minQuality,
+            @Value("${chat.images.upstream.cache.max-entries:128}") int cacheMaxEntries,
+            @Value("${chat.images.upstream.cache.max-bytes:33554432}") long cacheMaxBytes) {
+        this.enabled = enabled;
+        this.defaultMaxDimension = defaultMaxDimension;
+        this.modelMaxDimensions = parseModelMaxDimensions(modelMaxDimensions);
+        this.maxBytes = maxBytes;
+        this.quality = quality;
+        this.minQuality = minQuality;
+        this.cache = new VariantCache(cacheMaxEntries, cacheMaxBytes);
+        this.processedCounter = meter.counterBuilder("chat.images.preprocessed")
+                .setDescription("Images prepared for upstream by result (unchanged, resized, recompressed, cached)")
+                .build();
+    }
+
+    /**
+     * Image to send for the stored image {@code hash} in {@code file}, or {@code null}
+     * without an image. The image is decoded from the file, not from memory.
+     */
+    public UpstreamImage prepare(String hash, Path file, String model) {
+        if (hash == null || file == null) {
+            return null;
+        }
+        try {
+            if (!enabled) {
+                return unchanged(file, sniff(file));
+            }
+            int maxDimension = modelMaxDimensions.getOrDefault(model, defaultMaxDimension);
+            String key = hash + ":" + maxDimension;
+            UpstreamImage cached = cache.get(key);
+            if (cached != null) {
+                processedCounter.add(1, CACHED);
+                return cached;
+            }
+            UpstreamImage image = prepare(file, maxDimension);
+            cache.put(key, image);
+            return image;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read image " + hash, e);
+        }
+    }
+
+    private UpstreamImage prepare(Path file, int maxDimension) throws IOException {
+        Optional<ImageFormat> format = sniff(file);
+        if (format.isEmpty() || format.get() == ImageFormat.GIF || format.get() == ImageFormat.WEBP) {
+            // unknown formats are left to upstream; GIFs may be animated and WebP has no decoder here
+            processedCounter.add(1, UNCHANGED);
+            return unchanged(file, format);
+        }
+        long size = Files.size(file);
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                processedCounter.add(1, UNCHANGED);
+                return unchanged(file, format);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                boolean resize = longSide > maxDimension;
+                if (!resize && size <= maxBytes && format.get().acceptedUpstream()) {
+                    processedCounter.add(1, UNCHANGED);
+                    return unchanged(file, format);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                // decode at no less than twice the target size and scale smoothly from there
+                int step = Math.max(1, longSide / (2 * maxDimension));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                BufferedImage image = scale(reader.read(0, param), maxDimension);
+                byte[] encoded = encodeJpeg(image);
+                if (!resize && encoded.length >= size && format.get().acceptedUpstream()) {
+                    processedCounter.add(1, UNCHANGED);
+                    return unchanged(file, format);
+                }
+                processedCounter.add(1, resize ? RESIZED : RECOMPRESSED);
+                return UpstreamImage.of(ImageFormat.JPEG.mimeType(), encoded);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Could not process {} image, sending it unchanged: {}",
+                    format.get().mimeType(), e.getMessage());
+            processedCounter.add(1, UNCHANGED);
+            return unchanged(file, format);
+        }
+    }
+
+    private static Optional<ImageFormat> sniff(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return ImageFormat.sniff(in.readNBytes(ImageFormat.HEADER_BYTES));
+        }
+    }
+
+    private static UpstreamImage unchanged(Path file, Optional<ImageFormat> format) {
+        return UpstreamImage.of(format.map(ImageFormat::mimeType).orElse("image/jpeg"), file);
+    }
+
+    /**
+     * Fits the image into {@code maxDimension} on an opaque white background, as JPEG has no
+     * transparency.
+     */
+    private static BufferedImage scale(BufferedImage source, int maxDimension) {
+        double ratio = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Encodes at {@code quality}, then at lower qualities while the result exceeds
+     * {@code max-bytes}; the last attempt is kept even if it is still too large.
+     */
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            byte[] encoded;
+            float current = quality;
+            do {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(current);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+                    writer.setOutput(imageOut);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                }
+                encoded = out.toByteArray();
+                current -= QUALITY_STEP;
+            } while (encoded.length > maxBytes && current >= minQuality - 1e-6f);
+            return encoded;
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Parses {@code model=pixels} pairs separated by commas, like
+     * {@code chat.response-cache.model-ttls}.
+     */
+    private static Map<String, Integer> parseModelMaxDimensions(String value) {
+        Map<String, Integer> dimensions = new HashMap<>();
+        if (value == null || value.isBlank()) {
+            return dimensions;
+        }
+        for (String pair : value.split(",")) {
+            int separator = pair.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid chat.images.upstream.model-max-dimensions entry: " + pair);
+            }
+            dimensions.put(pair.substring(0, separator).trim(), Integer.parseInt(pair.substring(separator + 1).trim()));
+        }
+        return dimensions;
+    }
+
+    /**
+     * Access-ordered LRU of prepared images bounded by entry count and the total size of
+     * re-encoded images; unchanged images only remember their file.
+     */
+    private static final class VariantCache {
+
+        private final int maxEntries;
+        private final long maxBytes;
+        private final LinkedHashMap<String, UpstreamImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        private VariantCache(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized UpstreamImage get(String key) {
+            return entries.get(key);
+        }
+
+        private synchronized void put(String key, UpstreamImage value) {
+            if (maxEntries <= 0 || weight(value) > maxBytes) {
+                return;
+            }
+            UpstreamImage previous = entries.put(key, value);
+            bytes += weight(value) - (previous != null ? weight(previous) : 0);
+            Iterator<Map.Entry<String, UpstreamImage>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                bytes -= weight(eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+
+        private static long weight(UpstreamImage image) {
+            return image.inMemory() ? image.bytes().length : 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.service.ImageStoreService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Signs the image URLs handed out with a user's messages. Images are loaded by {@code <img>}
+ * tags, which cannot send the JWT, so the URL carries its own authorization: an expiry and
+ * an HMAC-SHA256 of hash and expiry. Only the owner of a message gets its URL, so a valid
+ * signature stands for the ownership check, and knowing a hash alone reveals nothing.
+ *
+ * Expiries are rounded up to a multiple of {@code url-ttl-seconds}, so a page reloaded
+ * within the same window gets the same URLs and the browser cache keeps working; a URL is
+ * valid for between one and two TTLs.
+ */
+@Component
+public class ImageUrlSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+
+    public ImageUrlSigner(
+            @Value("${chat.images.url-signing-key:${spring.security.jwt.secret}}") String key,
+            @Value("${chat.images.url-ttl-seconds:3600}") long ttlSeconds) {
+        this.key = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.ttlSeconds = Math.max(1, ttlSeconds);
+    }
+
+    /**
+     * The stored URL of an image with an expiry and signature appended. Anything else, e.g.
+     * an inline {@code data:} URL not migrated yet, is returned unchanged.
+     */
+    public String sign(String url) {
+        if (url == null || !url.startsWith(ImageStoreService.URL_PREFIX)) {
+            return url;
+        }
+        String hash = url.substring(ImageStoreService.URL_PREFIX.length());
+        long expires = (now() / ttlSeconds + 2) * ttlSeconds;
+        return url + "?expires=" + expires + "&sig=" + signature(hash, expires);
+    }
+
+    public boolean verify(String hash, Long expires, String signature) {
+        if (hash == null || expires == null || signature == null || expires <= now()) {
+            return false;
+        }
+        return MessageDigest.isEqual(signature(hash, expires).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String signature(String hash, long expires) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] digest = mac.doFinal((hash + ":" + expires).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign image URL", e);
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -8,26 +8,33 @@ public final class MessageFactory {
     private MessageFactory() {
     }
     
-    public static Message createUserMessage(Conversation conversation, String content, String model, String imageBase64) {
+    /**
+     * {@code imageUrl} is the stored image's URL (see {@code ImageStoreService#storeImage}), if any.
+     */
+    public static Message createUserMessage(Conversation conversation, String content, String model, String imageUrl) {
         Message message = new Message();
         message.setConversation(conversation);
         message.setRole(Message.MessageRole.USER);
         message.setContent(content);
         message.setModel(model);
         
-        if (imageBase64 != null && !imageBase64.isEmpty()) {
-            message.setImageUrl(Constants.IMAGE_DATA_PREFIX + imageBase64);
-        }
+        message.setImageUrl(imageUrl);
         
         return message;
     }
     
     public static Message createAssistantMessage(Conversation conversation, String content, String model) {
+        return createAssistantMessage(conversation, content, model, false);
+    }
+    
+    public static Message createAssistantMessage(Conversation conversation, String content, String model,
+            boolean interrupted) {
         Message message = new Message();
         message.setConversation(conversation);
         message.setRole(Message.MessageRole.ASSISTANT);
         message.setContent(content);
         message.setModel(model);
+        message.setInterrupted(interrupted);
         
         return message;
     }
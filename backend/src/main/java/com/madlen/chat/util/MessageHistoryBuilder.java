@@ -1,15 +1,19 @@
 package com.madlen.chat.util;
 
+import com.madlen.chat.model.HistoryEntry;
 import com.madlen.chat.model.Message;
 import com.madlen.chat.repository.MessageRepository;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 public final class MessageHistoryBuilder {
     
+    public static final String SUMMARY_ROLE = "system";
+    private static final String SUMMARY_PREFIX = "Summary of the earlier part of this conversation:\n";
+    
     private MessageHistoryBuilder() {
     }
     
@@ -17,16 +21,24 @@ public final class MessageHistoryBuilder {
             Long conversationId,
             MessageRepository messageRepository) {
         
-        List<Message> messages = messageRepository.findByConversationIdOrderByCreatedAtAsc(conversationId);
-        List<Map<String, String>> history = new ArrayList<>();
+        List<HistoryEntry> messages = messageRepository.findHistoryByConversationIdOrderByCreatedAtAsc(conversationId);
+        List<Map<String, String>> history = new ArrayList<>(messages.size());
         
-        for (Message message : messages) {
-            Map<String, String> msgMap = new HashMap<>();
-            msgMap.put("role", message.getRole().name().toLowerCase());
-            msgMap.put("content", message.getContent());
-            history.add(msgMap);
+        for (HistoryEntry message : messages) {
+            history.add(historyEntry(message.role(), message.content()));
         }
         
-        return history;
+        return Collections.unmodifiableList(history);
+    }
+    
+    /**
+     * Assistant replies can be stored without content, those are sent as an empty string.
+     */
+    public static Map<String, String> historyEntry(Message.MessageRole role, String content) {
+        return Map.of("role", role.name().toLowerCase(), "content", content != null ? content : "");
+    }
+    
+    public static Map<String, String> summaryEntry(String summary) {
+        return Map.of("role", SUMMARY_ROLE, "content", SUMMARY_PREFIX + summary);
     }
 }
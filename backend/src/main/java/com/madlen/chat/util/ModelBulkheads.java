@@ -0,0 +1,163 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.exception.ModelOverloadedException;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongMeasurement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * One {@link AdaptiveConcurrencyLimiter} per upstream model, so a slow or overloaded model
+ * only queues its own callers and cannot take connections and threads away from the others.
+ *
+ * Streaming calls are timed to the first token, blocking calls to the complete response; a
+ * permit is held until the call terminates. Model ids come from the client, so at most
+ * {@code max-models} get their own bulkhead and any further ids share one.
+ */
+@Component
+public class ModelBulkheads {
+
+    private static final String SHARED = "other";
+    private static final AttributeKey<String> MODEL = AttributeKey.stringKey("model");
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final int maxModels;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final Duration maxWait;
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private final LongCounter rejectedCounter;
+
+    public ModelBulkheads(Meter meter,
+            @Value("${chat.bulkhead.enabled:true}") boolean enabled,
+            @Value("${chat.bulkhead.initial-limit:20}") int initialLimit,
+            @Value("${chat.bulkhead.min-limit:2}") int minLimit,
+            @Value("${chat.bulkhead.max-limit:200}") int maxLimit,
+            @Value("${chat.bulkhead.max-queue:50}") int maxQueue,
+            @Value("${chat.bulkhead.max-wait-ms:5000}") long maxWaitMs,
+            @Value("${chat.bulkhead.max-models:100}") int maxModels,
+            @Value("${chat.bulkhead.latency-tolerance:1.5}") double tolerance,
+            @Value("${chat.bulkhead.backoff-ratio:0.9}") double backoffRatio) {
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWait = Duration.ofMillis(Math.max(0, maxWaitMs));
+        this.maxModels = maxModels;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.rejectedCounter = meter.counterBuilder("chat.bulkhead.rejected")
+                .setDescription("Upstream calls rejected because the model's bulkhead was full")
+                .build();
+        gauge(meter, "chat.bulkhead.limit", "Current adaptive concurrency limit",
+                AdaptiveConcurrencyLimiter::getLimit);
+        gauge(meter, "chat.bulkhead.in_flight", "Upstream calls currently holding a permit",
+                AdaptiveConcurrencyLimiter::getInFlight);
+        gauge(meter, "chat.bulkhead.queued", "Upstream calls waiting for a permit",
+                AdaptiveConcurrencyLimiter::getQueued);
+    }
+
+    /**
+     * Runs a blocking-style call (one response) inside the model's bulkhead.
+     */
+    public <T> Mono<T> mono(String model, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return acquire(model).flatMap(permit -> {
+            long startedAt = System.nanoTime();
+            return call
+                    .doOnSuccess(result -> permit.onSuccess(
+                            AdaptiveConcurrencyLimiter.SampleKind.FULL_RESPONSE, System.nanoTime() - startedAt))
+                    .doOnError(error -> release(permit, error))
+                    .doOnCancel(permit::onIgnore);
+        });
+    }
+
+    /**
+     * Runs a streaming call inside the model's bulkhead. The permit is held for the whole
+     * stream, the latency sample is the time to the first element.
+     */
+    public <T> Flux<T> flux(String model, Flux<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return acquire(model).flatMapMany(permit -> {
+            long startedAt = System.nanoTime();
+            AtomicLong firstElementNanos = new AtomicLong(-1);
+            return call
+                    .doOnNext(element -> firstElementNanos.compareAndSet(-1, System.nanoTime() - startedAt))
+                    .doOnComplete(() -> releaseStream(permit, firstElementNanos.get()))
+                    .doOnError(error -> release(permit, error))
+                    .doOnCancel(() -> releaseStream(permit, firstElementNanos.get()));
+        });
+    }
+
+    private Mono<AdaptiveConcurrencyLimiter.Permit> acquire(String model) {
+        String key = keyFor(model);
+        return limiters.computeIfAbsent(key, this::newLimiter)
+                .acquire(maxWait)
+                .doOnError(ModelOverloadedException.class,
+                        error -> rejectedCounter.add(1, Attributes.of(MODEL, key)));
+    }
+
+    private String keyFor(String model) {
+        if (model == null) {
+            return SHARED;
+        }
+        if (limiters.containsKey(model) || limiters.size() < maxModels) {
+            return model;
+        }
+        return SHARED;
+    }
+
+    private AdaptiveConcurrencyLimiter newLimiter(String model) {
+        return new AdaptiveConcurrencyLimiter(model, initialLimit, minLimit, maxLimit, maxQueue,
+                tolerance, backoffRatio);
+    }
+
+    private static void releaseStream(AdaptiveConcurrencyLimiter.Permit permit, long firstElementNanos) {
+        if (firstElementNanos < 0) {
+            permit.onIgnore();
+        } else {
+            permit.onSuccess(AdaptiveConcurrencyLimiter.SampleKind.FIRST_TOKEN, firstElementNanos);
+        }
+    }
+
+    private static void release(AdaptiveConcurrencyLimiter.Permit permit, Throwable error) {
+        if (UpstreamErrors.isOverload(error)) {
+            permit.onDropped();
+        } else {
+            permit.onIgnore();
+        }
+    }
+
+    private void gauge(Meter meter, String name, String description,
+            ToIntFunction<AdaptiveConcurrencyLimiter> value) {
+        meter.gaugeBuilder(name)
+                .setDescription(description)
+                .ofLongs()
+                .buildWithCallback(measurement -> record(measurement, value));
+    }
+
+    private void record(ObservableLongMeasurement measurement, ToIntFunction<AdaptiveConcurrencyLimiter> value) {
+        limiters.forEach((model, limiter) -> measurement.record(value.applyAsInt(limiter),
+                Attributes.of(MODEL, model)));
+    }
+}
@@ -0,0 +1,273 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.dto.ModelInfo;
+import com.madlen.chat.model.ModelCatalog;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Query structures for one version of the {@link ModelCatalog}, built once when the catalog
+ * changes: bit sets for the boolean and provider filters, and model positions sorted by
+ * context length, prices, name and creation time for range filters and ordering.
+ *
+ * Serialized responses are kept per distinct query (up to {@code maxCachedResponses}) with a
+ * strong ETag derived from the catalog content and the query, so repeating a query costs a
+ * map lookup.
+ */
+public final class ModelCatalogIndex {
+
+    public enum Sort {
+        NAME, CONTEXT, PRICE, CREATED
+    }
+
+    /**
+     * A {@code null} filter does not filter; an empty {@code providers} set neither.
+     */
+    public record Query(Boolean free, Boolean vision, Integer minContext, BigDecimal maxPromptPrice,
+            BigDecimal maxCompletionPrice, Set<String> providers, Sort sort, boolean descending) {
+
+        public static final Query ALL = new Query(null, null, null, null, null, Set.of(), null, false);
+
+        public Query {
+            providers = providers == null ? Set.of()
+                    : providers.stream().map(p -> p.toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+        }
+
+        /**
+         * Canonical form: equal queries have equal keys regardless of parameter order.
+         */
+        String key() {
+            return "free=" + free + "&vision=" + vision + "&minContext=" + minContext
+                    + "&maxPromptPrice=" + plain(maxPromptPrice) + "&maxCompletionPrice=" + plain(maxCompletionPrice)
+                    + "&provider=" + String.join(",", new TreeSet<>(providers))
+                    + "&sort=" + sort + "&desc=" + descending;
+        }
+
+        private static String plain(BigDecimal value) {
+            return value == null ? null : value.stripTrailingZeros().toPlainString();
+        }
+    }
+
+    public record Response(String etag, byte[] body) {
+    }
+
+    private final List<ModelCatalog.Model> models;
+    private final List<ModelInfo> infos;
+    private final BitSet free;
+    private final BitSet vision;
+    private final Map<String, BitSet> byProvider;
+    private final int[] byContext;
+    private final int[] contextValues;
+    private final int[] byPromptPrice;
+    private final BigDecimal[] promptPriceValues;
+    private final int[] byCompletionPrice;
+    private final BigDecimal[] completionPriceValues;
+    private final int[] byName;
+    private final int[] byCreated;
+    private final String version;
+    private final Function<List<ModelInfo>, byte[]> serializer;
+    private final int maxCachedResponses;
+    private final Map<String, Response> responses = new ConcurrentHashMap<>();
+
+    public ModelCatalogIndex(ModelCatalog catalog, Function<List<ModelInfo>, byte[]> serializer,
+            int maxCachedResponses) {
+        this.models = catalog.models();
+        this.serializer = serializer;
+        this.maxCachedResponses = maxCachedResponses;
+        int n = models.size();
+        this.infos = models.stream()
+                .map(model -> new ModelInfo(model.id(), model.name(), model.free(), model.supportsVision(),
+                        model.contextLength(), model.promptPrice(), model.completionPrice(), model.provider()))
+                .toList();
+        this.free = new BitSet(n);
+        this.vision = new BitSet(n);
+        this.byProvider = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            ModelCatalog.Model model = models.get(i);
+            free.set(i, model.free());
+            vision.set(i, model.supportsVision());
+            byProvider.computeIfAbsent(model.provider().toLowerCase(Locale.ROOT), key -> new BitSet(n)).set(i);
+        }
+        this.byContext = order(Comparator.comparingInt(i -> models.get(i).contextLength()));
+        this.contextValues = Arrays.stream(byContext).map(i -> models.get(i).contextLength()).toArray();
+        this.byPromptPrice = priced(ModelCatalog.Model::promptPrice);
+        this.promptPriceValues = prices(byPromptPrice, ModelCatalog.Model::promptPrice);
+        this.byCompletionPrice = priced(ModelCatalog.Model::completionPrice);
+        this.completionPriceValues = prices(byCompletionPrice, ModelCatalog.Model::completionPrice);
+        this.byName = order(Comparator.comparing(i -> models.get(i).name(), String.CASE_INSENSITIVE_ORDER));
+        this.byCreated = order(Comparator.comparingLong((ToLongFunction<Integer>) i -> models.get(i).created()));
+        byte[] all = serializer.apply(infos);
+        this.version = sha256(all).substring(0, 16);
+        responses.put(Query.ALL.key(), new Response(etag(Query.ALL.key()), all));
+    }
+
+    /**
+     * Content version of the catalog; unchanged when a refresh returns the same models.
+     */
+    public String version() {
+        return version;
+    }
+
+    public List<ModelInfo> query(Query query) {
+        BitSet matches = matches(query);
+        int[] order = query.sort() == null ? null : switch (query.sort()) {
+            case NAME -> byName;
+            case CONTEXT -> byContext;
+            case PRICE -> byPromptPrice;
+            case CREATED -> byCreated;
+        };
+        if (order == null) {
+            return matches.stream().mapToObj(infos::get).toList();
+        }
+        IntStream ordered = IntStream.range(0, order.length)
+                .map(i -> order[query.descending() ? order.length - 1 - i : i])
+                .filter(matches::get);
+        if (query.sort() == Sort.PRICE) {
+            // models without a price always come last
+            BitSet unpriced = (BitSet) matches.clone();
+            Arrays.stream(byPromptPrice).forEach(unpriced::clear);
+            ordered = IntStream.concat(ordered, unpriced.stream());
+        }
+        return ordered.mapToObj(infos::get).toList();
+    }
+
+    public Response response(Query query) {
+        String key = query.key();
+        Response cached = responses.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Response response = new Response(etag(key), serializer.apply(query(query)));
+        if (responses.size() < maxCachedResponses) {
+            responses.putIfAbsent(key, response);
+        }
+        return response;
+    }
+
+    private BitSet matches(Query query) {
+        BitSet result = new BitSet(models.size());
+        result.set(0, models.size());
+        if (query.free() != null) {
+            apply(result, free, query.free());
+        }
+        if (query.vision() != null) {
+            apply(result, vision, query.vision());
+        }
+        if (!query.providers().isEmpty()) {
+            BitSet providers = new BitSet(models.size());
+            for (String provider : query.providers()) {
+                BitSet bits = byProvider.get(provider);
+                if (bits != null) {
+                    providers.or(bits);
+                }
+            }
+            result.and(providers);
+        }
+        if (query.minContext() != null) {
+            int from = lowerBound(contextValues, query.minContext());
+            result.and(positions(byContext, from, byContext.length));
+        }
+        if (query.maxPromptPrice() != null) {
+            result.and(positions(byPromptPrice, 0, upperBound(promptPriceValues, query.maxPromptPrice())));
+        }
+        if (query.maxCompletionPrice() != null) {
+            result.and(positions(byCompletionPrice, 0,
+                    upperBound(completionPriceValues, query.maxCompletionPrice())));
+        }
+        return result;
+    }
+
+    private static void apply(BitSet result, BitSet filter, boolean value) {
+        if (value) {
+            result.and(filter);
+        } else {
+            result.andNot(filter);
+        }
+    }
+
+    private BitSet positions(int[] order, int from, int to) {
+        BitSet bits = new BitSet(models.size());
+        for (int i = from; i < to; i++) {
+            bits.set(order[i]);
+        }
+        return bits;
+    }
+
+    private int[] order(Comparator<Integer> comparator) {
+        return IntStream.range(0, models.size()).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Positions of the models that have a price, cheapest first.
+     */
+    private int[] priced(Function<ModelCatalog.Model, BigDecimal> price) {
+        return IntStream.range(0, models.size())
+                .filter(i -> price.apply(models.get(i)) != null)
+                .boxed()
+                .sorted(Comparator.comparing(i -> price.apply(models.get(i))))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private BigDecimal[] prices(int[] order, Function<ModelCatalog.Model, BigDecimal> price) {
+        return Arrays.stream(order).mapToObj(i -> price.apply(models.get(i))).toArray(BigDecimal[]::new);
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(BigDecimal[] sorted, BigDecimal value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(value) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private String etag(String queryKey) {
+        return "\"" + version + "-" + sha256(queryKey.getBytes(StandardCharsets.UTF_8)).substring(0, 8) + "\"";
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.dto.CircuitBreakerStatus;
+import com.madlen.chat.exception.ModelUnavailableException;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One {@link CircuitBreaker} per upstream model. While a model's breaker is open, calls
+ * fail immediately with {@link ModelUnavailableException} instead of adding load to a
+ * provider that is already failing.
+ *
+ * Only overload errors (429, 5xx, timeouts, connection failures) count as failures; a
+ * stream that delivered its first token counts as a success even if it is cancelled later.
+ */
+@Component
+public class ModelCircuitBreakers {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelCircuitBreakers.class);
+    private static final String SHARED = "other";
+    private static final AttributeKey<String> MODEL = AttributeKey.stringKey("model");
+    private static final AttributeKey<String> FROM = AttributeKey.stringKey("from");
+    private static final AttributeKey<String> TO = AttributeKey.stringKey("to");
+
+    private final boolean enabled;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration openDuration;
+    private final Duration maxOpenDuration;
+    private final int probes;
+    private final int maxModels;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final LongCounter transitionCounter;
+    private final LongCounter rejectedCounter;
+
+    public ModelCircuitBreakers(Meter meter,
+            @Value("${chat.circuit-breaker.enabled:true}") boolean enabled,
+            @Value("${chat.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${chat.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${chat.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${chat.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+            @Value("${chat.circuit-breaker.max-open-duration-ms:300000}") long maxOpenDurationMs,
+            @Value("${chat.circuit-breaker.half-open-probes:3}") int probes,
+            @Value("${chat.circuit-breaker.max-models:100}") int maxModels) {
+        this.enabled = enabled;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = Duration.ofMillis(openDurationMs);
+        this.maxOpenDuration = Duration.ofMillis(maxOpenDurationMs);
+        this.probes = probes;
+        this.maxModels = maxModels;
+        this.transitionCounter = meter.counterBuilder("chat.circuit_breaker.transitions")
+                .setDescription("Circuit breaker state changes")
+                .build();
+        this.rejectedCounter = meter.counterBuilder("chat.circuit_breaker.rejected")
+                .setDescription("Upstream calls rejected because the model's circuit breaker was open")
+                .build();
+        // 0 = closed, 1 = open, 2 = half open
+        meter.gaugeBuilder("chat.circuit_breaker.state")
+                .setDescription("Circuit breaker state per model (0 closed, 1 open, 2 half open)")
+                .ofLongs()
+                .buildWithCallback(measurement -> breakers.forEach((model, breaker) ->
+                        measurement.record(breaker.getState().ordinal(), Attributes.of(MODEL, model))));
+    }
+
+    public <T> Mono<T> mono(String model, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            CircuitBreaker.Permit permit = acquire(model);
+            return call
+                    .doOnSuccess(result -> permit.onSuccess())
+                    .doOnError(error -> release(permit, error))
+                    .doOnCancel(permit::onIgnore);
+        });
+    }
+
+    public <T> Flux<T> flux(String model, Flux<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Flux.defer(() -> {
+            CircuitBreaker.Permit permit = acquire(model);
+            AtomicBoolean firstElement = new AtomicBoolean();
+            return call
+                    .doOnNext(element -> {
+                        if (firstElement.compareAndSet(false, true)) {
+                            permit.onSuccess();
+                        }
+                    })
+                    .doOnComplete(permit::onSuccess)
+                    .doOnError(error -> release(permit, error))
+                    .doOnCancel(permit::onIgnore);
+        });
+    }
+
+    public List<CircuitBreakerStatus> statuses() {
+        return breakers.values().stream()
+                .map(CircuitBreaker::status)
+                .sorted(Comparator.comparing(CircuitBreakerStatus::getModel))
+                .toList();
+    }
+
+    /**
+     * Closes the model's breaker; returns {@code false} if the model has none.
+     */
+    public boolean reset(String model) {
+        CircuitBreaker breaker = breakers.get(model);
+        if (breaker == null) {
+            return false;
+        }
+        breaker.reset();
+        return true;
+    }
+
+    private CircuitBreaker.Permit acquire(String model) {
+        String key = keyFor(model);
+        CircuitBreaker breaker = breakers.computeIfAbsent(key, this::newBreaker);
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        if (permit == null) {
+            rejectedCounter.add(1, Attributes.of(MODEL, key));
+            Duration remaining = breaker.remainingOpen();
+            throw new ModelUnavailableException(model, remaining.isZero() ? Duration.ofSeconds(1) : remaining);
+        }
+        return permit;
+    }
+
+    private String keyFor(String model) {
+        if (model == null) {
+            return SHARED;
+        }
+        if (breakers.containsKey(model) || breakers.size() < maxModels) {
+            return model;
+        }
+        return SHARED;
+    }
+
+    private CircuitBreaker newBreaker(String model) {
+        return new CircuitBreaker(model, windowSize, minimumCalls, failureRateThreshold, openDuration,
+                maxOpenDuration, probes, this::onTransition);
+    }
+
+    private void onTransition(String model, CircuitBreaker.State from, CircuitBreaker.State to) {
+        transitionCounter.add(1, Attributes.of(MODEL, model, FROM, from.name(), TO, to.name()));
+        if (to == CircuitBreaker.State.OPEN) {
+            logger.warn("Circuit breaker for model {} opened ({} -> {})", model, from, to);
+        } else {
+            logger.info("Circuit breaker for model {}: {} -> {}", model, from, to);
+        }
+    }
+
+    private static void release(CircuitBreaker.Permit permit, Throwable error) {
+        if (UpstreamErrors.isOverload(error)) {
+            permit.onFailure(UpstreamErrors.retryAfter(error));
+        } else {
+            permit.onIgnore();
+        }
+    }
+}
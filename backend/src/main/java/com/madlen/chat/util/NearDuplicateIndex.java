@@ -0,0 +1,156 @@
+package com.madlen.chat.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory LSH index of prompts and their answers for one model.
+ *
+ * MinHash signatures are split into {@code bands} bands of {@code rows} values; prompts
+ * sharing any band are candidates, and a candidate only matches if the exact Jaccard
+ * similarity of the shingle sets reaches {@code threshold}. The index keeps at most
+ * {@code maxEntries} prompts, evicting the least recently used, and drops entries older
+ * than {@code ttl}.
+ */
+public final class NearDuplicateIndex {
+
+    public record Match(String prompt, String response, double similarity) {
+    }
+
+    /**
+     * Result of a lookup: the best match (or {@code null}) and how many LSH candidates were
+     * examined and rejected by verification.
+     */
+    public record Lookup(Match match, int candidates, int rejected) {
+    }
+
+    private final int bands;
+    private final int rows;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final double threshold;
+    private final List<Map<Long, List<Entry>>> buckets;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public NearDuplicateIndex(int bands, int rows, int maxEntries, Duration ttl, double threshold) {
+        this.bands = bands;
+        this.rows = rows;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.threshold = threshold;
+        this.buckets = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    public int signatureSize() {
+        return bands * rows;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Lookup find(long[] shingles, long[] signature) {
+        long now = System.nanoTime();
+        Map<Entry, Boolean> seen = new IdentityHashMap<>();
+        Entry best = null;
+        double bestSimilarity = 0;
+        int rejected = 0;
+        List<Entry> expired = new ArrayList<>();
+        for (int band = 0; band < bands; band++) {
+            List<Entry> bucket = buckets.get(band).get(bandKey(signature, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry candidate : bucket) {
+                if (seen.put(candidate, Boolean.TRUE) != null) {
+                    continue;
+                }
+                if (now - candidate.expiresAtNanos >= 0) {
+                    expired.add(candidate);
+                    continue;
+                }
+                double similarity = PromptSimilarity.jaccard(shingles, candidate.shingles);
+                if (similarity < threshold) {
+                    rejected++;
+                } else if (similarity > bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        expired.forEach(this::remove);
+        if (best == null) {
+            return new Lookup(null, seen.size() - expired.size(), rejected);
+        }
+        entries.get(best.prompt);
+        return new Lookup(new Match(best.prompt, best.response, bestSimilarity), seen.size() - expired.size(),
+                rejected);
+    }
+
+    public synchronized void add(String prompt, long[] shingles, long[] signature, String response) {
+        Entry existing = entries.get(prompt);
+        if (existing != null) {
+            remove(existing);
+        }
+        Entry entry = new Entry(prompt, shingles, signature, response, System.nanoTime() + ttlNanos);
+        entries.put(prompt, entry);
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).computeIfAbsent(bandKey(signature, band), key -> new ArrayList<>(1)).add(entry);
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            unlink(evicted);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.prompt, entry)) {
+            unlink(entry);
+        }
+    }
+
+    private void unlink(Entry entry) {
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(entry.signature, band);
+            List<Entry> bucket = buckets.get(band).get(key);
+            if (bucket != null && bucket.remove(entry) && bucket.isEmpty()) {
+                buckets.get(band).remove(key);
+            }
+        }
+    }
+
+    private long bandKey(long[] signature, int band) {
+        long key = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = PromptSimilarity.mix(key * 31 + signature[i]);
+        }
+        return key;
+    }
+
+    private static final class Entry {
+        private final String prompt;
+        private final long[] shingles;
+        private final long[] signature;
+        private final String response;
+        private final long expiresAtNanos;
+
+        private Entry(String prompt, long[] shingles, long[] signature, String response, long expiresAtNanos) {
+            this.prompt = prompt;
+            this.shingles = shingles;
+            this.signature = signature;
+            this.response = response;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Near-duplicate layer of the response cache: answers to first-turn prompts are indexed per
+ * model in a {@link NearDuplicateIndex}, so a prompt that differs from a cached one only in
+ * case, punctuation, whitespace or a few characters is answered from the cache as well.
+ * Runs entirely in-process.
+ *
+ * In {@code shadow} mode matches are looked up and counted but never served. Instead, when
+ * the real answer arrives it is compared with the answer the cache would have served
+ * ({@code chat.near_duplicate_cache.answer_similarity}); answers below
+ * {@code divergence-threshold} are counted as likely false positives. This is the data for
+ * tuning {@code threshold} before turning serving on. Once serving, a
+ * {@code verify-sample-rate} share of hits is still treated this way to keep measuring.
+ */
+@Component
+public class NearDuplicateResponseCache {
+
+    private static final AttributeKey<String> RESULT = AttributeKey.stringKey("result");
+    private static final Attributes HIT = Attributes.of(RESULT, "hit");
+    private static final Attributes SHADOW_HIT = Attributes.of(RESULT, "shadow_hit");
+    private static final Attributes VERIFY = Attributes.of(RESULT, "verify");
+    private static final Attributes MISS = Attributes.of(RESULT, "miss");
+
+    private final boolean enabled;
+    private final boolean shadow;
+    private final double threshold;
+    private final double divergenceThreshold;
+    private final double verifySampleRate;
+    private final int bands;
+    private final int rows;
+    private final int maxEntriesPerModel;
+    private final int maxModels;
+    private final int maxPromptChars;
+    private final Duration ttl;
+    private final Map<String, NearDuplicateIndex> indexes = new ConcurrentHashMap<>();
+    private final LongCounter lookupCounter;
+    private final LongCounter rejectedCounter;
+    private final LongCounter divergentCounter;
+    private final DoubleHistogram similarityHistogram;
+    private final DoubleHistogram answerSimilarityHistogram;
+
+    public NearDuplicateResponseCache(Meter meter,
+            @Value("${chat.response-cache.near-duplicate.enabled:false}") boolean enabled,
+            @Value("${chat.response-cache.near-duplicate.shadow:true}") boolean shadow,
+            @Value("${chat.response-cache.near-duplicate.threshold:0.85}") double threshold,
+            @Value("${chat.response-cache.near-duplicate.divergence-threshold:0.5}") double divergenceThreshold,
+            @Value("${chat.response-cache.near-duplicate.verify-sample-rate:0.01}") double verifySampleRate,
+            @Value("${chat.response-cache.near-duplicate.bands:16}") int bands,
+            @Value("${chat.response-cache.near-duplicate.rows:4}") int rows,
+            @Value("${chat.response-cache.near-duplicate.max-entries-per-model:2000}") int maxEntriesPerModel,
+            @Value("${chat.response-cache.near-duplicate.max-models:50}") int maxModels,
+            @Value("${chat.response-cache.near-duplicate.max-prompt-chars:2000}") int maxPromptChars,
+            @Value("${chat.response-cache.near-duplicate.ttl-seconds:3600}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.shadow = shadow;
+        this.threshold = threshold;
+        this.divergenceThreshold = divergenceThreshold;
+        this.verifySampleRate = verifySampleRate;
+        this.bands = bands;
+        this.rows = rows;
+        this.maxEntriesPerModel = maxEntriesPerModel;
+        this.maxModels = maxModels;
+        this.maxPromptChars = maxPromptChars;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.lookupCounter = meter.counterBuilder("chat.near_duplicate_cache.lookups")
+                .setDescription("Near-duplicate lookups by result (hit, shadow_hit, verify, miss)")
+                .build();
+        this.rejectedCounter = meter.counterBuilder("chat.near_duplicate_cache.candidates_rejected")
+                .setDescription("LSH candidates below the similarity threshold")
+                .build();
+        this.divergentCounter = meter.counterBuilder("chat.near_duplicate_cache.divergent")
+                .setDescription("Matches whose fresh answer differed from the cached one (likely false positives)")
+                .build();
+        this.similarityHistogram = meter.histogramBuilder("chat.near_duplicate_cache.similarity")
+                .setDescription("Prompt similarity of near-duplicate matches")
+                .build();
+        this.answerSimilarityHistogram = meter.histogramBuilder("chat.near_duplicate_cache.answer_similarity")
+                .setDescription("Similarity between a fresh answer and the cached answer of its near-duplicate")
+                .build();
+        meter.gaugeBuilder("chat.near_duplicate_cache.entries")
+                .setDescription("Prompts held in the near-duplicate index")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(
+                        indexes.values().stream().mapToLong(NearDuplicateIndex::size).sum()));
+    }
+
+    /**
+     * The normalized prompt if the request is eligible (enabled, first turn of a
+     * conversation, not too long), otherwise {@code null}.
+     */
+    public String promptKey(String message, List<Map<String, String>> history) {
+        if (!enabled || message == null || message.length() > maxPromptChars || !isFirstTurn(history)) {
+            return null;
+        }
+        String normalized = PromptSimilarity.normalize(message);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    public Optional<String> find(String model, String prompt) {
+        NearDuplicateIndex index = indexes.get(model);
+        if (index == null) {
+            lookupCounter.add(1, MISS);
+            return Optional.empty();
+        }
+        long[] shingles = PromptSimilarity.shingles(prompt);
+        NearDuplicateIndex.Lookup lookup = index.find(shingles,
+                PromptSimilarity.signature(shingles, index.signatureSize()));
+        if (lookup.rejected() > 0) {
+            rejectedCounter.add(lookup.rejected());
+        }
+        if (lookup.match() == null) {
+            lookupCounter.add(1, MISS);
+            return Optional.empty();
+        }
+        similarityHistogram.record(lookup.match().similarity());
+        if (shadow) {
+            lookupCounter.add(1, SHADOW_HIT);
+            return Optional.empty();
+        }
+        if (verifySampleRate > 0 && ThreadLocalRandom.current().nextDouble() < verifySampleRate) {
+            lookupCounter.add(1, VERIFY);
+            return Optional.empty();
+        }
+        lookupCounter.add(1, HIT);
+        return Optional.of(lookup.match().response());
+    }
+
+    public void add(String model, String prompt, String response) {
+        NearDuplicateIndex index = indexes.get(model);
+        if (index == null) {
+            if (indexes.size() >= maxModels) {
+                return;
+            }
+            index = indexes.computeIfAbsent(model,
+                    key -> new NearDuplicateIndex(bands, rows, maxEntriesPerModel, ttl, threshold));
+        }
+        long[] shingles = PromptSimilarity.shingles(prompt);
+        long[] signature = PromptSimilarity.signature(shingles, index.signatureSize());
+        recordDivergence(index.find(shingles, signature).match(), response);
+        index.add(prompt, shingles, signature, response);
+    }
+
+    /**
+     * Compares a fresh answer with the answer the cache would have served for it. For an
+     * identical normalized prompt this measures how much the model's answers vary anyway.
+     */
+    private void recordDivergence(NearDuplicateIndex.Match match, String response) {
+        if (match == null) {
+            return;
+        }
+        double similarity = PromptSimilarity.jaccard(
+                PromptSimilarity.shingles(PromptSimilarity.normalize(response)),
+                PromptSimilarity.shingles(PromptSimilarity.normalize(match.response())));
+        answerSimilarityHistogram.record(similarity);
+        if (similarity < divergenceThreshold) {
+            divergentCounter.add(1);
+        }
+    }
+
+    private static boolean isFirstTurn(List<Map<String, String>> history) {
+        return history == null || history.isEmpty();
+    }
+}
@@ -0,0 +1,56 @@
+package com.madlen.chat.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Opens {@code openrouter.client.preconnect} connections to OpenRouter once the application
+ * is ready, so the TCP and TLS handshakes are paid before the first user request instead of
+ * during it. The requests are cheap HEAD calls whose status is ignored; the connections stay
+ * in the pool until {@code max-idle-time-ms}.
+ */
+@Component
+public class OpenRouterConnectionWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenRouterConnectionWarmer.class);
+    private static final Duration PRECONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final WebClient openRouterWebClient;
+    private final int preconnect;
+
+    public OpenRouterConnectionWarmer(WebClient openRouterWebClient,
+            @Value("${openrouter.client.preconnect:2}") int preconnect) {
+        this.openRouterWebClient = openRouterWebClient;
+        this.preconnect = preconnect;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preconnect() {
+        if (preconnect <= 0) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        // all requests run concurrently, otherwise they would reuse the same connection
+        Flux.range(0, preconnect)
+                .flatMap(i -> openRouterWebClient.head()
+                        .uri(OpenRouterConstants.MODELS_ENDPOINT)
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(1))
+                        .timeout(PRECONNECT_TIMEOUT)
+                        .onErrorResume(error -> {
+                            logger.debug("OpenRouter preconnect failed: {}", error.getMessage());
+                            return Mono.just(0);
+                        }), preconnect)
+                .reduce(Integer::sum)
+                .subscribe(opened -> logger.info("Pre-connected {}/{} OpenRouter connections in {} ms",
+                        opened, preconnect, Duration.ofNanos(System.nanoTime() - startedAt).toMillis()));
+    }
+}
@@ -1,58 +1,145 @@
 package com.madlen.chat.util;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.reactive.function.BodyInserter;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Encodes chat completion requests with a {@link JsonGenerator} straight into the outgoing
+ * buffer, from the history entries and the image as they are; no intermediate maps are built
+ * and the image is base64-encoded while it is copied from its file or bytes.
+ *
+ * Keys are written in sorted order, so without the {@code stream} flag the output is the
+ * canonical form {@link RequestFingerprint} hashes.
+ */
 public final class OpenRouterRequestBuilder {
-    
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int ENTRY_OVERHEAD = 32;
+
     private OpenRouterRequestBuilder() {
     }
-    
-    public static Map<String, Object> buildChatRequest(
+
+    /**
+     * Request body for {@code WebClient}; it is encoded anew for each subscription, so a retry
+     * sends the same body. With an image it is encoded off the event loop, as reading the
+     * file blocks.
+     */
+    public static BodyInserter<Void, ReactiveHttpOutputMessage> buildChatRequest(
             String message,
             String model,
             List<Map<String, String>> history,
-            String imageBase64,
+            UpstreamImage image,
             boolean stream) {
-        
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", model);
-        if (stream) {
-            requestBody.put("stream", true);
+        return (outputMessage, context) -> {
+            Mono<DataBuffer> body = Mono.fromCallable(() -> {
+                DataBuffer buffer = outputMessage.bufferFactory()
+                        .allocateBuffer(estimateSize(message, model, history, image));
+                try (OutputStream out = buffer.asOutputStream()) {
+                    writeChatRequest(out, message, model, history, image, stream);
+                    return buffer;
+                } catch (IOException | RuntimeException e) {
+                    DataBufferUtils.release(buffer);
+                    throw e;
+                }
+            });
+            return outputMessage.writeWith(image != null ? body.subscribeOn(Schedulers.boundedElastic()) : body);
+        };
+    }
+
+    /**
+     * {@code out} is flushed but not closed.
+     */
+    public static void writeChatRequest(
+            OutputStream out,
+            String message,
+            String model,
+            List<Map<String, String>> history,
+            UpstreamImage image,
+            boolean stream) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(StreamUtils.nonClosing(out))) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("messages");
+            if (history != null) {
+                for (Map<String, String> entry : history) {
+                    json.writeStartObject();
+                    json.writeStringField("content", entry.get("content"));
+                    json.writeStringField("role", entry.get("role"));
+                    json.writeEndObject();
+                }
+            }
+            json.writeStartObject();
+            json.writeFieldName("content");
+            if (image != null) {
+                json.writeStartArray();
+                json.writeStartObject();
+                json.writeStringField("text", message);
+                json.writeStringField("type", OpenRouterConstants.CONTENT_TYPE_TEXT);
+                json.writeEndObject();
+                json.writeStartObject();
+                json.writeObjectFieldStart("image_url");
+                json.writeFieldName("url");
+                writeDataUrl(json, out, image);
+                json.writeEndObject();
+                json.writeStringField("type", OpenRouterConstants.CONTENT_TYPE_IMAGE_URL);
+                json.writeEndObject();
+                json.writeEndArray();
+            } else {
+                json.writeString(message);
+            }
+            json.writeStringField("role", OpenRouterConstants.ROLE_USER);
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeStringField("model", model);
+            if (stream) {
+                json.writeBooleanField("stream", true);
+            }
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the {@code data:} URL as a JSON string whose base64 part goes from the image to
+     * {@code out} directly; only the prefix with the MIME type needs escaping, base64 never does.
+     */
+    private static void writeDataUrl(JsonGenerator json, OutputStream out, UpstreamImage image) throws IOException {
+        char[] prefix = JsonStringEncoder.getInstance().quoteAsString("data:" + image.mimeType() + ";base64,");
+        json.writeRawValue("\"" + new String(prefix));
+        json.flush();
+        try (OutputStream base64 = Base64.getEncoder().wrap(StreamUtils.nonClosing(out))) {
+            image.writeTo(base64);
         }
-        
-        List<Map<String, Object>> requestMessages = new ArrayList<>();
-        
+        json.writeRaw('"');
+    }
+
+    private static int estimateSize(String message, String model, List<Map<String, String>> history,
+            UpstreamImage image) throws IOException {
+        long size = 2L * ENTRY_OVERHEAD + length(message) + length(model);
         if (history != null) {
-            for (Map<String, String> msg : history) {
-                Map<String, Object> msgMap = new HashMap<>();
-                msgMap.put("role", msg.get("role"));
-                msgMap.put("content", msg.get("content"));
-                requestMessages.add(msgMap);
+            for (Map<String, String> entry : history) {
+                size += ENTRY_OVERHEAD + length(entry.get("content"));
             }
         }
-        
-        Map<String, Object> currentMessage = new HashMap<>();
-        currentMessage.put("role", OpenRouterConstants.ROLE_USER);
-        
-        if (imageBase64 != null && !imageBase64.isEmpty()) {
-            List<Map<String, Object>> contentList = new ArrayList<>();
-            contentList.add(Map.of(
-                    "type", OpenRouterConstants.CONTENT_TYPE_TEXT,
-                    "text", message));
-            contentList.add(Map.of(
-                    "type", OpenRouterConstants.CONTENT_TYPE_IMAGE_URL,
-                    "image_url", Map.of("url", Constants.IMAGE_DATA_PREFIX + imageBase64)));
-            currentMessage.put("content", contentList);
-        } else {
-            currentMessage.put("content", message);
+        if (image != null) {
+            size += 2 * ENTRY_OVERHEAD + (image.size() + 2) / 3 * 4;
         }
-        
-        requestMessages.add(currentMessage);
-        requestBody.put("messages", requestMessages);
-        
-        return requestBody;
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
     }
 }
@@ -0,0 +1,108 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retries OpenRouter calls that failed transiently before producing anything, as far as
+ * {@link UpstreamErrors#isRetryable} can tell the request was not processed.
+ *
+ * The delay is exponential with full jitter ({@code random(0, min(max, base * 2^n))}) so
+ * callers that failed together do not come back together. If the upstream sent
+ * {@code Retry-After} the delay is at least that long; a {@code Retry-After} beyond
+ * {@code max-retry-after-ms} is not waited for and the error is returned right away.
+ *
+ * Streams are only retried until their first element: after that the client has already
+ * seen part of an answer and a second generation would not continue it.
+ */
+@Component
+public class OpenRouterRetryPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenRouterRetryPolicy.class);
+    private static final AttributeKey<String> REASON = AttributeKey.stringKey("reason");
+
+    private final int maxRetries;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final Duration maxRetryAfter;
+    private final LongCounter retryCounter;
+
+    public OpenRouterRetryPolicy(Meter meter,
+            @Value("${openrouter.retry.max-retries:2}") int maxRetries,
+            @Value("${openrouter.retry.base-delay-ms:250}") long baseDelayMs,
+            @Value("${openrouter.retry.max-delay-ms:4000}") long maxDelayMs,
+            @Value("${openrouter.retry.max-retry-after-ms:10000}") long maxRetryAfterMs) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayNanos = Duration.ofMillis(Math.max(1, baseDelayMs)).toNanos();
+        this.maxDelayNanos = Math.max(baseDelayNanos, Duration.ofMillis(maxDelayMs).toNanos());
+        this.maxRetryAfter = Duration.ofMillis(maxRetryAfterMs);
+        this.retryCounter = meter.counterBuilder("openrouter.retries")
+                .setDescription("OpenRouter calls retried after a transient failure")
+                .build();
+    }
+
+    public <T> Mono<T> mono(Mono<T> call) {
+        if (maxRetries == 0) {
+            return call;
+        }
+        return call.retryWhen(retry(new AtomicBoolean()));
+    }
+
+    public <T> Flux<T> flux(Flux<T> call) {
+        if (maxRetries == 0) {
+            return call;
+        }
+        return Flux.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            return call
+                    .doOnNext(element -> started.set(true))
+                    .retryWhen(retry(started));
+        });
+    }
+
+    private Retry retry(AtomicBoolean started) {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            Throwable error = signal.failure();
+            if (started.get() || signal.totalRetries() >= maxRetries || !UpstreamErrors.isRetryable(error)) {
+                return Mono.error(error);
+            }
+            Duration retryAfter = UpstreamErrors.retryAfter(error);
+            if (retryAfter != null && retryAfter.compareTo(maxRetryAfter) > 0) {
+                return Mono.error(error);
+            }
+            Duration delay = backoff(signal.totalRetries(), retryAfter);
+            retryCounter.add(1, Attributes.of(REASON, reasonOf(error)));
+            logger.debug("Retrying OpenRouter call in {} ms (attempt {}): {}", delay.toMillis(),
+                    signal.totalRetries() + 2, error.getMessage());
+            return Mono.delay(delay);
+        }));
+    }
+
+    private Duration backoff(long retriesSoFar, Duration retryAfter) {
+        long ceiling = baseDelayNanos << Math.min(retriesSoFar, 20);
+        long jittered = ThreadLocalRandom.current().nextLong(Math.min(maxDelayNanos, ceiling) + 1);
+        Duration delay = Duration.ofNanos(jittered);
+        return retryAfter != null && retryAfter.compareTo(delay) > 0 ? retryAfter : delay;
+    }
+
+    private static String reasonOf(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return String.valueOf(response.getStatusCode().value());
+        }
+        return error.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,240 @@
+package com.madlen.chat.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.madlen.chat.dto.StreamDelta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Incremental decoder for the OpenRouter chat completion event stream.
+ *
+ * Works directly on the raw response bytes: SSE lines are framed inside a reusable
+ * byte array (so events split across network buffers are stitched together without
+ * intermediate Strings) and every {@code data:} payload is walked with a streaming
+ * {@link JsonParser} that only materializes {@code choices[0].delta.content},
+ * {@code choices[0].finish_reason} and {@code usage}. Everything else is skipped.
+ *
+ * One instance per upstream response; not thread-safe.
+ */
+public final class OpenRouterStreamDecoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenRouterStreamDecoder.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] DATA_FIELD = OpenRouterConstants.SSE_DATA_PREFIX.trim()
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE_MARKER = OpenRouterConstants.STREAM_DONE_MARKER
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int length;
+    private int scanned;
+    private boolean done;
+
+    public static Flux<StreamDelta> decode(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            OpenRouterStreamDecoder decoder = new OpenRouterStreamDecoder();
+            return body
+                    .concatMapIterable(decoder::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(decoder.finish())))
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        });
+    }
+
+    public List<StreamDelta> feed(DataBuffer dataBuffer) {
+        try {
+            int readable = dataBuffer.readableByteCount();
+            ensureCapacity(length + readable);
+            dataBuffer.read(buffer, length, readable);
+            length += readable;
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+        return drainLines();
+    }
+
+    public List<StreamDelta> feed(byte[] bytes, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+        return drainLines();
+    }
+
+    /**
+     * Decodes a trailing event that was not terminated by a newline before the
+     * upstream closed the connection.
+     */
+    public List<StreamDelta> finish() {
+        if (length == 0 || done) {
+            return Collections.emptyList();
+        }
+        StreamDelta delta = decodeLine(0, length);
+        length = 0;
+        scanned = 0;
+        return delta != null ? List.of(delta) : Collections.emptyList();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    private List<StreamDelta> drainLines() {
+        List<StreamDelta> deltas = null;
+        int lineStart = 0;
+        for (int i = scanned; i < length; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            int lineEnd = (i > lineStart && buffer[i - 1] == '\r') ? i - 1 : i;
+            StreamDelta delta = decodeLine(lineStart, lineEnd - lineStart);
+            if (delta != null) {
+                if (deltas == null) {
+                    deltas = new ArrayList<>(4);
+                }
+                deltas.add(delta);
+            }
+            lineStart = i + 1;
+        }
+
+        if (lineStart > 0) {
+            System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+            length -= lineStart;
+        }
+        scanned = length;
+        return deltas != null ? deltas : Collections.emptyList();
+    }
+
+    private StreamDelta decodeLine(int offset, int count) {
+        if (done || count == 0 || buffer[offset] == ':' || !startsWith(offset, count, DATA_FIELD)) {
+            return null;
+        }
+        int payloadStart = offset + DATA_FIELD.length;
+        int payloadEnd = offset + count;
+        while (payloadStart < payloadEnd && buffer[payloadStart] == ' ') {
+            payloadStart++;
+        }
+        int payloadLength = payloadEnd - payloadStart;
+        if (payloadLength == 0) {
+            return null;
+        }
+        if (startsWith(payloadStart, payloadLength, DONE_MARKER)) {
+            done = true;
+            return null;
+        }
+        return parseChunk(payloadStart, payloadLength);
+    }
+
+    private StreamDelta parseChunk(int offset, int count) {
+        String content = null;
+        String finishReason = null;
+        StreamDelta.Usage usage = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(buffer, offset, count)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String choiceField = parser.currentName();
+                            JsonToken choiceValue = parser.nextToken();
+                            if ("delta".equals(choiceField) && choiceValue == JsonToken.START_OBJECT) {
+                                content = readContent(parser);
+                            } else if ("finish_reason".equals(choiceField) && choiceValue == JsonToken.VALUE_STRING) {
+                                finishReason = parser.getText();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            parser.skipChildren();
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    usage = readUsage(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to parse streaming chunk: {}", e.getMessage());
+            return null;
+        }
+
+        if (content == null && finishReason == null && usage == null) {
+            return null;
+        }
+        return new StreamDelta(content, finishReason, usage);
+    }
+
+    private static String readContent(JsonParser parser) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    private static StreamDelta.Usage readUsage(JsonParser parser) throws IOException {
+        int promptTokens = 0;
+        int completionTokens = 0;
+        int totalTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+            } else if ("prompt_tokens".equals(field)) {
+                promptTokens = parser.getIntValue();
+            } else if ("completion_tokens".equals(field)) {
+                completionTokens = parser.getIntValue();
+            } else if ("total_tokens".equals(field)) {
+                totalTokens = parser.getIntValue();
+            }
+        }
+        return new StreamDelta.Usage(promptTokens, completionTokens, totalTokens);
+    }
+
+    private boolean startsWith(int offset, int count, byte[] prefix) {
+        if (count < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            byte[] grown = new byte[Math.max(required, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.madlen.chat.util;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Text normalization, shingling and MinHash for near-duplicate prompt detection.
+ *
+ * A prompt is normalized (NFKC, lower case, punctuation to spaces, whitespace collapsed)
+ * and turned into the set of its overlapping character {@code SHINGLE_LENGTH}-grams, each
+ * hashed to 64 bits. The Jaccard similarity of two such sets is what the near-duplicate
+ * cache compares; MinHash signatures estimate it cheaply for LSH bucketing.
+ */
+public final class PromptSimilarity {
+
+    static final int SHINGLE_LENGTH = 4;
+
+    private PromptSimilarity() {
+    }
+
+    public static String normalize(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(folded.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.append(c);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Sorted, distinct shingle hashes of a normalized text. Texts shorter than one shingle
+     * yield a single hash of the whole text.
+     */
+    public static long[] shingles(String normalized) {
+        if (normalized.length() <= SHINGLE_LENGTH) {
+            return new long[] {hash(normalized, 0, normalized.length())};
+        }
+        long[] hashes = new long[normalized.length() - SHINGLE_LENGTH + 1];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(normalized, i, i + SHINGLE_LENGTH);
+        }
+        Arrays.sort(hashes);
+        int distinct = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    /**
+     * MinHash signature with {@code size} independent hash functions derived from the
+     * shingle hash by seeded mixing.
+     */
+    public static long[] signature(long[] shingles, int size) {
+        long[] signature = new long[size];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (long shingle : shingles) {
+            for (int i = 0; i < size; i++) {
+                long value = mix(shingle ^ (0x9E3779B97F4A7C15L * (i + 1)));
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Exact Jaccard similarity of two sorted, distinct shingle sets.
+     */
+    public static double jaccard(long[] a, long[] b) {
+        int i = 0;
+        int j = 0;
+        int intersection = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                intersection++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = a.length + b.length - intersection;
+        return union == 0 ? 1.0 : (double) intersection / union;
+    }
+
+    static long mix(long z) {
+        // splitmix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long hash(String text, int from, int to) {
+        // 64-bit FNV-1a over UTF-16 code units
+        long h = 0xCBF29CE484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+}
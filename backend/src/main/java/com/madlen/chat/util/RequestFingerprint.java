@@ -0,0 +1,37 @@
+package com.madlen.chat.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical SHA-256 of a chat completion request body as encoded by
+ * {@link OpenRouterRequestBuilder}, with keys in sorted order and without the {@code stream}
+ * flag, so the same model, history and message give the same fingerprint whether they were
+ * sent streaming or not. The body is hashed while it is written, never held in memory.
+ */
+public final class RequestFingerprint {
+
+    private RequestFingerprint() {
+    }
+
+    public static String of(String message, String model, List<Map<String, String>> history) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+                OpenRouterRequestBuilder.writeChatRequest(out, message, model, history, null, false);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint chat request", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not fingerprint chat request", e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical in-flight upstream calls: while a call for a key is running, further
+ * callers with the same key subscribe to it instead of starting their own.
+ *
+ * Streams are multicast with their full history replayed, so a late joiner first gets the
+ * tokens received so far. The upstream stream is only cancelled once every subscriber has
+ * cancelled. Single responses are shared as well, and everyone gets the same result or
+ * error. The key is removed as soon as the call terminates, so nothing is cached beyond
+ * the call's lifetime.
+ */
+@Component
+public class SingleFlight {
+
+    private static final AttributeKey<String> KIND = AttributeKey.stringKey("kind");
+    private static final Attributes STREAM = Attributes.of(KIND, "stream");
+    private static final Attributes SINGLE = Attributes.of(KIND, "single");
+
+    private final boolean enabled;
+    private final Map<String, Flux<?>> streams = new ConcurrentHashMap<>();
+    private final Map<String, Mono<?>> calls = new ConcurrentHashMap<>();
+    private final LongCounter joinedCounter;
+
+    public SingleFlight(Meter meter, @Value("${openrouter.single-flight.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.joinedCounter = meter.counterBuilder("openrouter.single_flight.joined")
+                .setDescription("Upstream calls served by joining an identical call already in flight")
+                .build();
+        meter.gaugeBuilder("openrouter.single_flight.in_flight")
+                .setDescription("Distinct upstream calls currently shared through single-flight")
+                .ofLongs()
+                .buildWithCallback(measurement -> {
+                    measurement.record(streams.size(), STREAM);
+                    measurement.record(calls.size(), SINGLE);
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> flux(String key, Supplier<Flux<T>> call) {
+        if (!enabled || key == null) {
+            return call.get();
+        }
+        return Flux.defer(() -> {
+            boolean[] created = new boolean[1];
+            Flux<?> shared = streams.computeIfAbsent(key, k -> {
+                created[0] = true;
+                AtomicReference<Flux<T>> self = new AtomicReference<>();
+                // removed before subscribers see the terminal signal, so nobody joins a finished call
+                self.set(call.get()
+                        .doOnTerminate(() -> streams.remove(k, self.get()))
+                        .doOnCancel(() -> streams.remove(k, self.get()))
+                        .replay()
+                        .refCount());
+                return self.get();
+            });
+            if (!created[0]) {
+                joinedCounter.add(1, STREAM);
+            }
+            return (Flux<T>) shared;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> mono(String key, Supplier<Mono<T>> call) {
+        if (!enabled || key == null) {
+            return call.get();
+        }
+        return Mono.defer(() -> {
+            boolean[] created = new boolean[1];
+            Mono<?> shared = calls.computeIfAbsent(key, k -> {
+                created[0] = true;
+                AtomicReference<Mono<T>> self = new AtomicReference<>();
+                self.set(call.get()
+                        .doOnTerminate(() -> calls.remove(k, self.get()))
+                        .doOnCancel(() -> calls.remove(k, self.get()))
+                        .share());
+                return self.get();
+            });
+            if (!created[0]) {
+                joinedCounter.add(1, SINGLE);
+            }
+            return (Mono<T>) shared;
+        });
+    }
+}
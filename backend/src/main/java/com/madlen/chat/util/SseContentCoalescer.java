@@ -0,0 +1,234 @@
+package com.madlen.chat.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.reactivestreams.Subscription;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches upstream content tokens into larger SSE payloads.
+ *
+ * The first token is always forwarded immediately so time-to-first-token is not affected.
+ * After that, tokens are accumulated until either the flush window elapses or the batch
+ * reaches {@code max-batch-bytes}. The window adapts to the client: if a write is not
+ * acknowledged (no new demand) within the current window the window doubles up to
+ * {@code max-window-ms}, and while the client keeps up it shrinks back towards
+ * {@code min-window-ms}. While there is no downstream demand nothing is emitted.
+ *
+ * Upstream is asked for one token at a time, and only while the batch is below
+ * {@code max-batch-bytes}; a full batch waiting for the client stops the upstream read until
+ * it has been sent, so a slow client holds at most one batch plus one token per stream.
+ */
+@Component
+public class SseContentCoalescer {
+
+    private final boolean enabled;
+    private final long minWindowNanos;
+    private final long maxWindowNanos;
+    private final int maxBatchBytes;
+    private final Scheduler scheduler = Schedulers.parallel();
+
+    public SseContentCoalescer(@Value("${chat.streaming.coalesce.enabled:true}") boolean enabled,
+            @Value("${chat.streaming.coalesce.min-window-ms:20}") long minWindowMs,
+            @Value("${chat.streaming.coalesce.max-window-ms:50}") long maxWindowMs,
+            @Value("${chat.streaming.coalesce.max-batch-bytes:1024}") int maxBatchBytes) {
+        this.enabled = enabled;
+        this.minWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, minWindowMs));
+        this.maxWindowNanos = Math.max(this.minWindowNanos, TimeUnit.MILLISECONDS.toNanos(maxWindowMs));
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public Flux<String> coalesce(Flux<String> tokens) {
+        if (!enabled) {
+            return tokens;
+        }
+        return Flux.create(sink -> new Batch(sink).subscribeTo(tokens));
+    }
+
+    private final class Batch {
+
+        private final FluxSink<String> sink;
+        private final Upstream upstream = new Upstream();
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingBytes;
+        private boolean firstSent;
+        private boolean awaitingDemand;
+        private boolean terminated;
+        // whether the one token asked from upstream has not arrived yet
+        private boolean tokenRequested;
+        private long windowNanos = minWindowNanos;
+        private long lastEmitNanos;
+        private Disposable scheduledFlush;
+
+        private Batch(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        private void subscribeTo(Flux<String> tokens) {
+            sink.onRequest(this::onRequest);
+            sink.onDispose(this::dispose);
+            tokens.subscribe(upstream);
+        }
+
+        private synchronized void onNext(String token) {
+            tokenRequested = false;
+            if (terminated) {
+                return;
+            }
+            if (!firstSent && sink.requestedFromDownstream() > 0) {
+                firstSent = true;
+                emit(token);
+            } else {
+                pending.append(token);
+                pendingBytes += utf8Length(token);
+                if (pendingBytes >= maxBatchBytes) {
+                    flush();
+                } else if (scheduledFlush == null && !awaitingDemand) {
+                    scheduledFlush = scheduler.schedule(this::onWindowElapsed, windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            requestNextToken();
+        }
+
+        private synchronized void requestNextToken() {
+            if (!terminated && !tokenRequested && pendingBytes < maxBatchBytes) {
+                tokenRequested = true;
+                upstream.request(1);
+            }
+        }
+
+        private synchronized void onWindowElapsed() {
+            scheduledFlush = null;
+            if (!terminated) {
+                flush();
+            }
+        }
+
+        private synchronized void onRequest(long n) {
+            if (lastEmitNanos > 0) {
+                adaptWindow(System.nanoTime() - lastEmitNanos);
+            }
+            if (awaitingDemand && !terminated) {
+                flush();
+            }
+        }
+
+        private synchronized void onComplete() {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            cancelScheduledFlush();
+            emitPendingRegardlessOfDemand();
+            sink.complete();
+        }
+
+        private synchronized void onError(Throwable error) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            cancelScheduledFlush();
+            emitPendingRegardlessOfDemand();
+            sink.error(error);
+        }
+
+        private void flush() {
+            cancelScheduledFlush();
+            if (pending.length() == 0) {
+                awaitingDemand = false;
+                return;
+            }
+            if (sink.requestedFromDownstream() == 0) {
+                awaitingDemand = true;
+                return;
+            }
+            awaitingDemand = false;
+            firstSent = true;
+            emit(pending.toString());
+            pending.setLength(0);
+            pendingBytes = 0;
+            requestNextToken();
+        }
+
+        private void emitPendingRegardlessOfDemand() {
+            // terminal signals may overflow into the sink's own buffer, nothing is dropped
+            if (pending.length() > 0) {
+                sink.next(pending.toString());
+                pending.setLength(0);
+                pendingBytes = 0;
+            }
+        }
+
+        private void emit(String payload) {
+            lastEmitNanos = System.nanoTime();
+            sink.next(payload);
+        }
+
+        private void adaptWindow(long writeLatencyNanos) {
+            if (writeLatencyNanos > windowNanos) {
+                windowNanos = Math.min(maxWindowNanos, windowNanos * 2);
+            } else if (writeLatencyNanos < windowNanos / 2) {
+                windowNanos = Math.max(minWindowNanos, windowNanos - (windowNanos - minWindowNanos) / 2);
+            }
+        }
+
+        private void cancelScheduledFlush() {
+            if (scheduledFlush != null) {
+                scheduledFlush.dispose();
+                scheduledFlush = null;
+            }
+        }
+
+        private synchronized void dispose() {
+            terminated = true;
+            cancelScheduledFlush();
+            upstream.dispose();
+        }
+
+        private final class Upstream extends BaseSubscriber<String> {
+
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                requestNextToken();
+            }
+
+            @Override
+            protected void hookOnNext(String token) {
+                Batch.this.onNext(token);
+            }
+
+            @Override
+            protected void hookOnError(Throwable error) {
+                Batch.this.onError(error);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                Batch.this.onComplete();
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
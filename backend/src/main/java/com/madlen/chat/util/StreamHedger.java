@@ -0,0 +1,124 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+
+/**
+ * Hedges streaming completions against slow first tokens.
+ *
+ * The requested model is called first. If it has not produced a token within
+ * {@code first-token-deadline-ms} (or fails before that), a second stream is started
+ * against {@code fallback-model}, or the same model again when none is configured. A
+ * primary that completes without content is an answer too, and no hedge is started.
+ * Whichever stream delivers content first is used and the other one is cancelled.
+ * Requests with an image are only hedged against the same model, since the fallback may
+ * not accept images.
+ */
+@Component
+public class StreamHedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamHedger.class);
+    private static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("outcome");
+
+    private final boolean enabled;
+    private final Duration deadline;
+    private final String fallbackModel;
+    private final LongCounter hedgeCounter;
+
+    public StreamHedger(Meter meter,
+            @Value("${chat.hedging.enabled:false}") boolean enabled,
+            @Value("${chat.hedging.first-token-deadline-ms:4000}") long deadlineMs,
+            @Value("${chat.hedging.fallback-model:}") String fallbackModel) {
+        this.enabled = enabled;
+        this.deadline = Duration.ofMillis(Math.max(0, deadlineMs));
+        this.fallbackModel = fallbackModel == null || fallbackModel.isBlank() ? null : fallbackModel.trim();
+        this.hedgeCounter = meter.counterBuilder("chat.hedging.streams")
+                .setDescription("Streams by hedging outcome (primary, hedge_fired, hedge_won)")
+                .build();
+    }
+
+    /**
+     * Streams {@code model}, hedged if enabled. {@code streamFor} gets the model and whether
+     * the stream is the hedge; {@code onModelChosen} is called once with the model whose
+     * stream delivered the first token.
+     */
+    public Flux<String> stream(String model, boolean hasImage, BiFunction<String, Boolean, Flux<String>> streamFor,
+            Consumer<String> onModelChosen) {
+        if (!enabled) {
+            return streamFor.apply(model, false);
+        }
+        String hedgeModel = fallbackModel != null && !hasImage ? fallbackModel : model;
+
+        return Flux.defer(() -> {
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            AtomicBoolean hedgeFired = new AtomicBoolean();
+
+            // the end marker makes an empty primary win, which cancels the pending hedge
+            Flux<Tagged> primary = streamFor.apply(model, false)
+                    .map(chunk -> new Tagged(model, chunk, false))
+                    .concatWith(Mono.just(new Tagged(model, null, false)))
+                    .doOnError(error -> primaryFailed.tryEmitEmpty());
+            Flux<Tagged> hedge = Mono.firstWithSignal(Mono.delay(deadline).then(), primaryFailed.asMono())
+                    .thenMany(Flux.defer(() -> {
+                        hedgeFired.set(true);
+                        logger.debug("No first token from {} yet, hedging with {}", model, hedgeModel);
+                        return streamFor.apply(hedgeModel, true);
+                    }))
+                    .map(chunk -> new Tagged(hedgeModel, chunk, true));
+
+            AtomicBoolean chosen = new AtomicBoolean();
+            return Flux.firstWithValue(primary, hedge)
+                    .doOnNext(tagged -> {
+                        if (chosen.compareAndSet(false, true)) {
+                            onModelChosen.accept(tagged.model());
+                            hedgeCounter.add(1, Attributes.of(OUTCOME, outcome(tagged, hedgeFired.get())));
+                        }
+                    })
+                    .filter(tagged -> tagged.chunk() != null)
+                    .map(Tagged::chunk)
+                    .onErrorMap(NoSuchElementException.class, StreamHedger::primaryError);
+        });
+    }
+
+    private static String outcome(Tagged first, boolean hedgeFired) {
+        if (!hedgeFired) {
+            return "primary";
+        }
+        return first.hedge() ? "hedge_won" : "hedge_fired";
+    }
+
+    /**
+     * When both streams fail, {@code firstWithValue} reports a {@link NoSuchElementException}
+     * caused by a composite of both errors; surface the primary's error instead.
+     */
+    private static Throwable primaryError(NoSuchElementException error) {
+        if (error.getCause() == null) {
+            return error;
+        }
+        List<Throwable> errors = Exceptions.unwrapMultiple(error.getCause());
+        return errors.isEmpty() ? error : errors.get(0);
+    }
+
+    /**
+     * {@code chunk} is {@code null} for the end of the primary.
+     */
+    private record Tagged(String model, String chunk, boolean hedge) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.madlen.chat.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Classifies errors from OpenRouter calls for the bulkheads, the circuit breakers and the
+ * retry policy.
+ */
+public final class UpstreamErrors {
+
+    private UpstreamErrors() {
+    }
+
+    /**
+     * The model (or the route to it) is saturated or down, as opposed to an error in the
+     * request itself.
+     */
+    public static boolean isOverload(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return response.getStatusCode().value() == 429 || response.getStatusCode().is5xxServerError();
+        }
+        return error instanceof TimeoutException || error instanceof WebClientRequestException;
+    }
+
+    /**
+     * Transient failures where the request can be sent again unchanged. Chat completions are
+     * non-idempotent POSTs, so only responses that say the request was not processed
+     * (408/429/502/503/504) and failures before the request left count; a timeout or a
+     * dropped connection may have started a generation that is billed anyway. Plain 500s are
+     * excluded, they are usually caused by the request and fail the same way again.
+     */
+    public static boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 408 || status == 429 || status == 502 || status == 503 || status == 504;
+        }
+        return error instanceof WebClientRequestException request && failedBeforeSending(request);
+    }
+
+    /**
+     * No connection could be established or acquired from the pool. Reactor Netty shades its
+     * pool, so the pool exceptions are matched by name.
+     */
+    private static boolean failedBeforeSending(WebClientRequestException error) {
+        for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause.getClass().getSimpleName().startsWith("PoolAcquire")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The {@code Retry-After} of an error response (delta seconds or HTTP date), or
+     * {@code null} if there is none.
+     */
+    public static Duration retryAfter(Throwable error) {
+        if (!(error instanceof WebClientResponseException response)) {
+            return null;
+        }
+        String value = response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                Duration untilDate = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return untilDate.isNegative() ? Duration.ZERO : untilDate;
+            } catch (DateTimeParseException notDate) {
+                return null;
+            }
+        }
+    }
+}
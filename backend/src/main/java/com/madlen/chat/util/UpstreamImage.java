@@ -0,0 +1,38 @@
+package com.madlen.chat.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Image to send upstream, as prepared by {@link ImagePreprocessor}: either the stored file
+ * itself or re-encoded bytes. The request encoder copies it into the request body as base64
+ * without building a data URL string first.
+ */
+public record UpstreamImage(String mimeType, Path file, byte[] bytes) {
+
+    public static UpstreamImage of(String mimeType, Path file) {
+        return new UpstreamImage(mimeType, file, null);
+    }
+
+    public static UpstreamImage of(String mimeType, byte[] bytes) {
+        return new UpstreamImage(mimeType, null, bytes);
+    }
+
+    public boolean inMemory() {
+        return bytes != null;
+    }
+
+    public long size() throws IOException {
+        return inMemory() ? bytes.length : Files.size(file);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (inMemory()) {
+            out.write(bytes);
+        } else {
+            Files.copy(file, out);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread (e.g. blocking inside a
+ * {@code synchronized} block of a driver) for longer than {@code pinned-threshold-ms}.
+ *
+ * Listens to the JFR {@code jdk.VirtualThreadPinned} event in-process and exports
+ * {@code jvm.virtual_thread.pinned} (by the first application/library frame) and the pinned
+ * duration. Only active when {@code spring.threads.virtual.enabled=true}.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final AttributeKey<String> FRAME = AttributeKey.stringKey("frame");
+
+    private final Duration threshold;
+    private final LongCounter pinnedCounter;
+    private final LongHistogram pinnedDuration;
+    private RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(Meter meter,
+            @Value("${chat.virtual-threads.pinned-threshold-ms:20}") long thresholdMs) {
+        this.threshold = Duration.ofMillis(thresholdMs);
+        this.pinnedCounter = meter.counterBuilder("jvm.virtual_thread.pinned")
+                .setDescription("Virtual threads that blocked while pinned to their carrier thread")
+                .build();
+        this.pinnedDuration = meter.histogramBuilder("jvm.virtual_thread.pinned.duration")
+                .setDescription("Time a virtual thread stayed pinned to its carrier thread")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        logger.info("Virtual thread pinning monitor started (threshold {} ms)", threshold.toMillis());
+    }
+
+    private void onPinned(RecordedEvent event) {
+        String frame = pinnedAt(event.getStackTrace());
+        pinnedCounter.add(1, Attributes.of(FRAME, frame));
+        pinnedDuration.record(event.getDuration().toMillis());
+        logger.debug("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), frame);
+    }
+
+    /**
+     * First frame outside the JDK, which is where the monitor or native call that pinned
+     * the thread was entered.
+     */
+    private static String pinnedAt(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (!frame.isJavaFrame()) {
+                continue;
+            }
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName();
+            }
+        }
+        return "jdk";
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
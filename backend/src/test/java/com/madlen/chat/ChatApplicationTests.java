@@ -0,0 +1,100 @@
+package com.madlen.chat;
+
+import com.madlen.chat.repository.ReactiveMessageRepository;
+import com.madlen.chat.repository.UserRepository;
+import com.madlen.chat.service.impl.ReactiveStreamingChatServiceImpl;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The application context must start with JPA in place whether or not the reactive streaming
+ * path (and with it R2DBC) is enabled. Database and Redis connections are opened lazily, so
+ * neither has to be running.
+ */
+class ChatApplicationTests {
+
+    @Nested
+    @SpringBootTest
+    @AutoConfigureMockMvc
+    @ActiveProfiles("test")
+    class Default {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Test
+        void contextLoadsWithJpa() {
+            assertNotNull(context.getBean(DataSource.class));
+            assertNotNull(context.getBean(UserRepository.class));
+            assertInstanceOf(JpaTransactionManager.class, context.getBean(PlatformTransactionManager.class));
+        }
+
+        @Test
+        void imagesNeedASignedUrl() throws Exception {
+            mockMvc.perform(get("/api/images/" + "a".repeat(64)))
+                    .andExpect(status().isNotFound());
+            mockMvc.perform(get("/api/images/" + "a".repeat(64)).param("expires", "4102444800").param("sig", "forged"))
+                    .andExpect(status().isNotFound());
+        }
+
+        @Test
+        @WithMockUser
+        void adminEndpointsAreForbiddenToUsers() throws Exception {
+            mockMvc.perform(post("/api/admin/circuit-breakers/reset").param("model", "openai/gpt-4o"))
+                    .andExpect(status().isForbidden());
+        }
+
+        @Test
+        @WithMockUser
+        void modelRefreshIsForbiddenToUsers() throws Exception {
+            mockMvc.perform(post("/api/models/refresh"))
+                    .andExpect(status().isForbidden());
+        }
+
+        @Test
+        @WithMockUser(roles = {"USER", "ADMIN"})
+        void adminEndpointsAreOpenToAdmins() throws Exception {
+            mockMvc.perform(post("/api/admin/circuit-breakers/reset").param("model", "openai/gpt-4o"))
+                    .andExpect(status().isNotFound());
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = "chat.streaming.reactive.enabled=true")
+    @ActiveProfiles("test")
+    class ReactiveStreaming {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Test
+        void contextLoadsWithJpaAndR2dbc() {
+            assertNotNull(context.getBean(DataSource.class));
+            assertNotNull(context.getBean(UserRepository.class));
+            assertInstanceOf(JpaTransactionManager.class, context.getBean(PlatformTransactionManager.class));
+            assertNotNull(context.getBean(ReactiveMessageRepository.class));
+            assertNotNull(context.getBean(TransactionalOperator.class));
+            assertNotNull(context.getBean(ReactiveStreamingChatServiceImpl.class));
+        }
+    }
+}
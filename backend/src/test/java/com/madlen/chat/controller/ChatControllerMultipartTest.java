@@ -0,0 +1,251 @@
+package com.madlen.chat.controller;
+
+import com.madlen.chat.dto.ChatRequest;
+import com.madlen.chat.dto.ChatResponse;
+import com.madlen.chat.model.User;
+import com.madlen.chat.security.JwtTokenProvider;
+import com.madlen.chat.service.ChatService;
+import com.madlen.chat.service.ImageStoreService;
+import com.madlen.chat.service.RateLimitService;
+import com.madlen.chat.service.StreamingChatService;
+import com.madlen.chat.service.TokenCacheService;
+import com.madlen.chat.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Multipart variants of {@code /api/chat} and {@code /api/chat/stream}. Uploads are stored in
+ * a temporary image store; the chat services, users and Redis-backed services are mocked.
+ * Size limits are only enforced by the servlet container, so the oversize upload goes
+ * through the embedded server instead of MockMvc.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ChatControllerMultipartTest {
+
+    private static final Path IMAGE_DIR = createImageDir();
+    private static final String REQUEST = "{\"message\":\"What is this?\",\"model\":\"test/model\"}";
+    private static final String REQUEST_WITHOUT_MESSAGE = "{\"model\":\"test/model\"}";
+    private static final byte[] IMAGE = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 1, 2, 3};
+    private static final Long USER_ID = 7L;
+
+    @MockBean
+    private ChatService chatService;
+
+    @MockBean
+    private StreamingChatService streamingChatService;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private UserDetailsService userDetailsService;
+
+    @MockBean
+    private RateLimitService rateLimitService;
+
+    @MockBean
+    private TokenCacheService tokenCacheService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ImageStoreService imageStore;
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${chat.images.max-bytes}")
+    private int maxImageBytes;
+
+    private static Path createImageDir() {
+        try {
+            return Files.createTempDirectory("chat-images-");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void imageStore(DynamicPropertyRegistry registry) {
+        registry.add("chat.images.dir", IMAGE_DIR::toString);
+    }
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setId(USER_ID);
+        user.setUsername("user");
+        when(userService.findByUsername(anyString())).thenReturn(user);
+        when(userDetailsService.loadUserByUsername(anyString())).thenAnswer(invocation ->
+                org.springframework.security.core.userdetails.User.withUsername(invocation.getArgument(0))
+                        .password("hash")
+                        .roles("USER")
+                        .build());
+        when(rateLimitService.isAllowed(anyLong())).thenReturn(true);
+        when(tokenCacheService.isTokenCached(anyString())).thenReturn(true);
+        when(chatService.sendMessage(any(), eq(USER_ID))).thenReturn(new ChatResponse("It is a PNG.", 1L, 2L));
+        when(streamingChatService.streamChat(any(), eq(USER_ID)))
+                .thenReturn(Flux.just(ServerSentEvent.builder("It is a PNG.").build()));
+    }
+
+    private static MockMultipartFile requestPart(String json) {
+        return new MockMultipartFile("request", "", MediaType.APPLICATION_JSON_VALUE, json.getBytes());
+    }
+
+    private static MockMultipartFile imagePart(byte[] bytes) {
+        return new MockMultipartFile("image", "image.png", MediaType.IMAGE_PNG_VALUE, bytes);
+    }
+
+    private static String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private void assertSentWithTheStoredImage(ChatRequest request) throws NoSuchAlgorithmException {
+        assertEquals("What is this?", request.getMessage());
+        assertEquals(sha256(IMAGE), request.getImageHash());
+        assertNull(request.getImage());
+        assertTrue(imageStore.find(request.getImageHash()).isPresent());
+    }
+
+    @Test
+    @WithMockUser
+    void uploadedImageIsStoredAndSentWithTheMessage() throws Exception {
+        mockMvc.perform(multipart("/api/chat").file(requestPart(REQUEST)).file(imagePart(IMAGE)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.response").value("It is a PNG."));
+
+        ArgumentCaptor<ChatRequest> sent = ArgumentCaptor.forClass(ChatRequest.class);
+        verify(chatService).sendMessage(sent.capture(), eq(USER_ID));
+        assertSentWithTheStoredImage(sent.getValue());
+    }
+
+    @Test
+    @WithMockUser
+    void uploadedImageIsStoredBeforeTheStreamStarts() throws Exception {
+        MvcResult result = mockMvc.perform(multipart("/api/chat/stream")
+                        .file(requestPart(REQUEST))
+                        .file(imagePart(IMAGE))
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("data:It is a PNG.")));
+
+        ArgumentCaptor<ChatRequest> sent = ArgumentCaptor.forClass(ChatRequest.class);
+        verify(streamingChatService).streamChat(sent.capture(), eq(USER_ID));
+        assertSentWithTheStoredImage(sent.getValue());
+    }
+
+    @Test
+    @WithMockUser
+    void theImagePartIsOptional() throws Exception {
+        mockMvc.perform(multipart("/api/chat").file(requestPart(REQUEST)))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<ChatRequest> sent = ArgumentCaptor.forClass(ChatRequest.class);
+        verify(chatService).sendMessage(sent.capture(), eq(USER_ID));
+        assertNull(sent.getValue().getImageHash());
+    }
+
+    @Test
+    @WithMockUser
+    void aMissingMessageFailsTheSameValidationAsJson() throws Exception {
+        mockMvc.perform(post("/api/chat")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(REQUEST_WITHOUT_MESSAGE))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Validation Failed"))
+                .andExpect(jsonPath("$.message").value("Validation errors: {message=Message is required}"));
+
+        for (String endpoint : new String[] {"/api/chat", "/api/chat/stream"}) {
+            mockMvc.perform(multipart(endpoint).file(requestPart(REQUEST_WITHOUT_MESSAGE)).file(imagePart(IMAGE)))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value("Validation Failed"))
+                    .andExpect(jsonPath("$.message").value("Validation errors: {message=Message is required}"));
+        }
+        verifyNoInteractions(chatService, streamingChatService);
+    }
+
+    @Test
+    @WithMockUser
+    void theImageStoreRejectsImagesOverMaxBytes() throws Exception {
+        mockMvc.perform(multipart("/api/chat").file(requestPart(REQUEST)).file(imagePart(new byte[maxImageBytes + 1])))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Image must not exceed " + maxImageBytes + " bytes"));
+
+        verifyNoInteractions(chatService);
+    }
+
+    @Test
+    void theServerRejectsImagesOverMaxBytesWithinTheRequestLimit() {
+        // max-request-size (11MB) leaves room for the request part around a max-bytes (10MB) image
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("request", REQUEST, MediaType.APPLICATION_JSON);
+        body.part("image", new byte[maxImageBytes + 1]).filename("image.png").contentType(MediaType.IMAGE_PNG);
+
+        WebTestClient.bindToServer()
+                .baseUrl("http://localhost:" + port)
+                .responseTimeout(Duration.ofSeconds(30))
+                .build()
+                .post()
+                .uri("/api/chat")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenProvider.generateToken("user"))
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE)
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(413)
+                .jsonPath("$.message").isEqualTo("Upload exceeds the maximum size");
+
+        verifyNoInteractions(chatService);
+    }
+}
@@ -0,0 +1,182 @@
+package com.madlen.chat.integration;
+
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.repository.ConversationSummaryRepository;
+import com.madlen.chat.repository.MessageRepository;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.service.impl.HistoryCacheServiceImpl;
+import com.madlen.chat.util.CacheHelper;
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the history cache's Lua scripts against Redis. The service is built with
+ * {@code max-entries} of 5 and mocked repositories, so only {@link HistoryCacheService#load}
+ * touches the database side.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class HistoryCacheIntegrationTest {
+
+    private static final Long CONVERSATION_ID = 900_001L;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final ConversationSummaryRepository summaryRepository = mock(ConversationSummaryRepository.class);
+    private HistoryCacheService historyCache;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.delete(List.of(CacheHelper.getHistoryCacheKey(CONVERSATION_ID),
+                CacheHelper.getHistoryGenerationKey(CONVERSATION_ID),
+                CacheHelper.getHistorySummaryKey(CONVERSATION_ID)));
+        historyCache = new HistoryCacheServiceImpl(redisTemplate, messageRepository, summaryRepository,
+                OpenTelemetry.noop().getMeter("test"), true, 60, 5);
+    }
+
+    private static HistoryEntry user(long id, String content) {
+        return new HistoryEntry(id, Message.MessageRole.USER, content);
+    }
+
+    private static HistoryEntry assistant(long id, String content) {
+        return new HistoryEntry(id, Message.MessageRole.ASSISTANT, content);
+    }
+
+    private HistoryCacheService.Lookup fill(List<HistoryEntry> messages, Long coveredId, String summary) {
+        HistoryCacheService.Lookup miss = historyCache.read(CONVERSATION_ID);
+        assertFalse(miss.hit());
+        historyCache.fill(CONVERSATION_ID, miss.generation(), messages, coveredId, summary);
+        return miss;
+    }
+
+    @Test
+    void fillAfterAMissIsReadBackInOrder() {
+        List<HistoryEntry> messages = List.of(user(1, "Hi"), assistant(2, "Hello\tthere"), user(3, ""));
+
+        fill(messages, null, null);
+        HistoryCacheService.Lookup hit = historyCache.read(CONVERSATION_ID);
+
+        assertTrue(hit.hit());
+        assertEquals(historyCache.toHistory(messages, null, null), hit.history());
+        Long ttl = redisTemplate.getExpire(CacheHelper.getHistoryCacheKey(CONVERSATION_ID));
+        assertTrue(ttl > 0 && ttl <= 60, "ttl " + ttl);
+    }
+
+    @Test
+    void missingContentIsReadBackAsAnEmptyString() {
+        fill(List.of(user(1, "Hi"), assistant(2, null)), null, null);
+
+        historyCache.append(CONVERSATION_ID, assistant(3, null));
+
+        assertEquals(historyCache.toHistory(List.of(user(1, "Hi"), assistant(2, ""), assistant(3, "")), null, null),
+                historyCache.read(CONVERSATION_ID).history());
+        assertEquals("", historyCache.toHistory(List.of(assistant(2, null)), null, null).get(0).get("content"));
+    }
+
+    @Test
+    void fillIsDiscardedWhenAWriteHappenedSinceTheMiss() {
+        HistoryCacheService.Lookup miss = historyCache.read(CONVERSATION_ID);
+
+        historyCache.append(CONVERSATION_ID, user(1, "Hi"));
+        historyCache.fill(CONVERSATION_ID, miss.generation(), List.of(), null, null);
+
+        HistoryCacheService.Lookup lookup = historyCache.read(CONVERSATION_ID);
+        assertFalse(lookup.hit());
+        assertEquals(miss.generation() + 1, lookup.generation());
+    }
+
+    @Test
+    void appendsExtendTheListOnceEach() {
+        fill(List.of(user(1, "Hi"), assistant(2, "Hello")), null, null);
+
+        historyCache.append(CONVERSATION_ID, user(3, "How are you?"));
+        historyCache.append(CONVERSATION_ID, user(3, "How are you?"));
+
+        assertEquals(historyCache.toHistory(List.of(user(1, "Hi"), assistant(2, "Hello"), user(3, "How are you?")),
+                null, null), historyCache.read(CONVERSATION_ID).history());
+    }
+
+    @Test
+    void outOfOrderAppendDropsTheList() {
+        HistoryCacheService.Lookup miss = fill(List.of(user(1, "Hi"), user(3, "Still there?")), null, null);
+
+        historyCache.append(CONVERSATION_ID, assistant(2, "Hello"));
+
+        HistoryCacheService.Lookup lookup = historyCache.read(CONVERSATION_ID);
+        assertFalse(lookup.hit());
+        assertEquals(miss.generation() + 1, lookup.generation());
+    }
+
+    @Test
+    void listsReachingMaxEntriesAreDropped() {
+        List<HistoryEntry> full = List.of(user(1, "a"), assistant(2, "b"), user(3, "c"), assistant(4, "d"), user(5, "e"));
+        fill(full, null, null);
+        assertFalse(historyCache.read(CONVERSATION_ID).hit());
+
+        historyCache.fill(CONVERSATION_ID, historyCache.read(CONVERSATION_ID).generation(), full.subList(0, 4),
+                null, null);
+        historyCache.append(CONVERSATION_ID, user(5, "e"));
+        assertTrue(historyCache.read(CONVERSATION_ID).hit());
+
+        historyCache.append(CONVERSATION_ID, assistant(6, "f"));
+        assertFalse(historyCache.read(CONVERSATION_ID).hit());
+    }
+
+    @Test
+    void summaryReplacesTheMessagesItCovers() {
+        List<HistoryEntry> messages = List.of(user(3, "c"), assistant(4, "d"));
+        fill(messages, 2L, "first summary");
+        assertEquals(historyCache.toHistory(messages, 2L, "first summary"),
+                historyCache.read(CONVERSATION_ID).history());
+
+        historyCache.putSummary(CONVERSATION_ID, 4, "second summary");
+
+        assertEquals(historyCache.toHistory(List.of(), 4L, "second summary"),
+                historyCache.read(CONVERSATION_ID).history());
+    }
+
+    @Test
+    void summaryIsNotStoredWithoutAList() {
+        historyCache.putSummary(CONVERSATION_ID, 4, "summary");
+
+        assertFalse(redisTemplate.hasKey(CacheHelper.getHistorySummaryKey(CONVERSATION_ID)));
+    }
+
+    @Test
+    void invalidateDropsListAndSummary() {
+        HistoryCacheService.Lookup miss = fill(List.of(user(1, "Hi")), 0L, "summary");
+
+        historyCache.invalidate(CONVERSATION_ID);
+
+        HistoryCacheService.Lookup lookup = historyCache.read(CONVERSATION_ID);
+        assertFalse(lookup.hit());
+        assertEquals(miss.generation() + 1, lookup.generation());
+        assertFalse(redisTemplate.hasKey(CacheHelper.getHistorySummaryKey(CONVERSATION_ID)));
+    }
+
+    @Test
+    void loadQueriesTheDatabaseOnlyOnAMiss() {
+        List<HistoryEntry> messages = List.of(user(1, "Hi"), assistant(2, "Hello"));
+        when(summaryRepository.findByConversationId(CONVERSATION_ID)).thenReturn(Optional.empty());
+        when(messageRepository.findHistoryByConversationIdOrderByCreatedAtAsc(CONVERSATION_ID)).thenReturn(messages);
+
+        assertEquals(historyCache.toHistory(messages, null, null), historyCache.load(CONVERSATION_ID));
+        assertEquals(historyCache.toHistory(messages, null, null), historyCache.load(CONVERSATION_ID));
+
+        verify(messageRepository, times(1)).findHistoryByConversationIdOrderByCreatedAtAsc(CONVERSATION_ID);
+    }
+}
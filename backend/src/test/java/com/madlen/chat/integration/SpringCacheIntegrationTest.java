@@ -41,8 +41,6 @@ class SpringCacheIntegrationTest {
             return;
         }
 
-        assertNotNull(cacheManager.getCache(CacheConstants.CACHE_MODELS), 
-            "Models cache should be defined");
         assertNotNull(cacheManager.getCache(CacheConstants.CACHE_USERS), 
             "Users cache should be defined");
         assertNotNull(cacheManager.getCache(CacheConstants.CACHE_CONVERSATIONS), 
@@ -163,15 +161,9 @@ class SpringCacheIntegrationTest {
             return;
         }
 
-        Cache modelsCache = cacheManager.getCache(CacheConstants.CACHE_MODELS);
         Cache usersCache = cacheManager.getCache(CacheConstants.CACHE_USERS);
         Cache conversationsCache = cacheManager.getCache(CacheConstants.CACHE_CONVERSATIONS);
 
-        if (modelsCache != null) {
-            modelsCache.put("model-key", "model-value");
-            assertEquals("model-value", modelsCache.get("model-key", String.class));
-        }
-
         if (usersCache != null) {
             usersCache.put("user-key", "user-value");
             assertEquals("user-value", usersCache.get("user-key", String.class));
@@ -0,0 +1,37 @@
+package com.madlen.chat.security;
+
+import com.madlen.chat.model.User;
+import com.madlen.chat.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CustomUserDetailsServiceTest {
+
+    private static UserDetails load(String username, Set<String> adminUsernames) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("hash");
+        UserRepository repository = mock(UserRepository.class);
+        when(repository.findByUsername(username)).thenReturn(Optional.of(user));
+        return new CustomUserDetailsService(repository, adminUsernames).loadUserByUsername(username);
+    }
+
+    private static Set<String> authorities(UserDetails details) {
+        return details.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
+    }
+
+    @Test
+    void grantsAdminOnlyToConfiguredUsernames() {
+        assertEquals(Set.of("ROLE_USER", "ROLE_ADMIN"), authorities(load("ops", Set.of("ops"))));
+        assertEquals(Set.of("ROLE_USER"), authorities(load("alice", Set.of("ops"))));
+        assertEquals(Set.of("ROLE_USER"), authorities(load("alice", Set.of())));
+    }
+}
@@ -0,0 +1,222 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.model.ConversationSummary;
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.repository.ConversationRepository;
+import com.madlen.chat.repository.ConversationSummaryRepository;
+import com.madlen.chat.repository.MessageRepository;
+import com.madlen.chat.service.HistoryCacheService;
+import com.madlen.chat.service.OpenRouterService;
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Summaries keep the 2 newest messages and fold once at least 3 older ones are waiting.
+ * The repositories are backed by a message list and a single stored summary.
+ */
+class ConversationSummaryServiceImplTest {
+
+    private static final long WAIT_MS = 5_000;
+    private static final Long CONVERSATION_ID = 1L;
+    private static final String SUMMARY_MODEL = "summary/model";
+
+    private final ConversationSummaryRepository summaryRepository = mock(ConversationSummaryRepository.class);
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final OpenRouterService openRouterService = mock(OpenRouterService.class);
+    private final HistoryCacheService historyCache = mock(HistoryCacheService.class);
+    private final List<HistoryEntry> messages = new CopyOnWriteArrayList<>();
+    private final AtomicReference<ConversationSummary> stored = new AtomicReference<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ConversationSummaryServiceImpl service(boolean enabled, String model) {
+        when(summaryRepository.findByConversationId(CONVERSATION_ID))
+                .thenAnswer(invocation -> Optional.ofNullable(stored.get()));
+        when(summaryRepository.save(any(ConversationSummary.class))).thenAnswer(invocation -> {
+            stored.set(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(messageRepository.findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(eq(CONVERSATION_ID),
+                anyLong())).thenAnswer(invocation -> {
+                    long coveredId = invocation.getArgument(1);
+                    return messages.stream().filter(message -> message.id() > coveredId).toList();
+                });
+        return new ConversationSummaryServiceImpl(summaryRepository, conversationRepository, messageRepository,
+                openRouterService, historyCache, mock(PlatformTransactionManager.class),
+                OpenTelemetry.noop().getMeter("test"), enabled, model, 2, 3, 4000, 24000, 20);
+    }
+
+    private void addMessages(int count) {
+        for (int i = 0; i < count; i++) {
+            long id = messages.size() + 1;
+            Message.MessageRole role = id % 2 == 1 ? Message.MessageRole.USER : Message.MessageRole.ASSISTANT;
+            messages.add(new HistoryEntry(id, role, "message " + id));
+        }
+    }
+
+    private ConversationSummary awaitSummaryCovering(long coveredMessageId) {
+        verify(historyCache, timeout(WAIT_MS)).putSummary(eq(CONVERSATION_ID), eq(coveredMessageId), anyString());
+        return stored.get();
+    }
+
+    /**
+     * Requests are dropped while the previous update of the conversation still holds its
+     * guard, so this keeps asking until the summary covers {@code coveredMessageId}.
+     */
+    private ConversationSummary updateUntilCovered(ConversationSummaryServiceImpl service, long coveredMessageId)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (stored.get() == null || stored.get().getCoveredMessageId() < coveredMessageId) {
+            assertTrue(System.currentTimeMillis() < deadline, "summary never covered " + coveredMessageId);
+            service.requestUpdate(CONVERSATION_ID);
+            Thread.sleep(10);
+        }
+        return awaitSummaryCovering(coveredMessageId);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    void nothingIsFoldedUntilEnoughOlderMessagesWait() throws InterruptedException {
+        ConversationSummaryServiceImpl service = service(true, "");
+        addMessages(4);
+
+        service.requestUpdate(CONVERSATION_ID);
+
+        verify(messageRepository, timeout(WAIT_MS))
+                .findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(CONVERSATION_ID, 0L);
+        verify(summaryRepository, after(200).never()).save(any());
+
+        addMessages(1);
+
+        assertEquals(3L, updateUntilCovered(service, 3).getCoveredMessageId());
+    }
+
+    @Test
+    void disabledSummariesNeverReadTheConversation() {
+        ConversationSummaryServiceImpl service = service(false, "");
+        addMessages(10);
+
+        service.requestUpdate(CONVERSATION_ID);
+
+        verify(messageRepository, after(200).never())
+                .findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(anyLong(), anyLong());
+    }
+
+    @Test
+    void theSummaryCoversEverythingButTheRecentMessages() throws InterruptedException {
+        ConversationSummaryServiceImpl service = service(true, "");
+        addMessages(7);
+
+        service.requestUpdate(CONVERSATION_ID);
+        ConversationSummary first = awaitSummaryCovering(5);
+        String firstContent = first.getContent();
+
+        assertEquals(5, first.getCoveredMessages());
+        assertEquals(String.join("\n", "- User: message 1", "- Assistant: message 2", "- User: message 3",
+                "- Assistant: message 4", "- User: message 5"), firstContent);
+
+        addMessages(3);
+        ConversationSummary second = updateUntilCovered(service, 8);
+
+        // the second update starts after the covered message and folds 6..8 onto the first summary
+        verify(messageRepository).findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(CONVERSATION_ID, 5L);
+        assertEquals(8, second.getCoveredMessages());
+        assertEquals(firstContent + "\n- Assistant: message 6\n- User: message 7\n- Assistant: message 8",
+                second.getContent());
+        verify(historyCache).putSummary(CONVERSATION_ID, 8L, second.getContent());
+    }
+
+    @Test
+    void onlyOneUpdateRunsPerConversation() throws InterruptedException {
+        ConversationSummaryServiceImpl service = service(true, "");
+        addMessages(7);
+        CountDownLatch reading = new CountDownLatch(1);
+        when(summaryRepository.findByConversationId(CONVERSATION_ID)).thenAnswer(invocation -> {
+            reading.countDown();
+            assertTrue(release.await(WAIT_MS, TimeUnit.MILLISECONDS));
+            return Optional.ofNullable(stored.get());
+        });
+
+        service.requestUpdate(CONVERSATION_ID);
+        assertTrue(reading.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        service.requestUpdate(CONVERSATION_ID);
+        service.requestUpdate(CONVERSATION_ID);
+        release.countDown();
+        awaitSummaryCovering(5);
+
+        verify(messageRepository, after(200).times(1))
+                .findHistoryByConversationIdAndIdGreaterThanOrderByCreatedAtAsc(eq(CONVERSATION_ID), anyLong());
+
+        // the guard is released once the update finished
+        addMessages(3);
+        updateUntilCovered(service, 8);
+    }
+
+    @Test
+    void theModelWritesTheSummaryWhenConfigured() {
+        ConversationSummaryServiceImpl service = service(true, SUMMARY_MODEL);
+        when(openRouterService.sendChatMessage(anyString(), eq(SUMMARY_MODEL), eq(List.of()), isNull()))
+                .thenReturn("The user counted to five.");
+        addMessages(7);
+
+        service.requestUpdate(CONVERSATION_ID);
+        ConversationSummary summary = awaitSummaryCovering(5);
+
+        assertEquals("The user counted to five.", summary.getContent());
+        assertEquals(SUMMARY_MODEL, summary.getModel());
+        verify(historyCache).putSummary(CONVERSATION_ID, 5L, "The user counted to five.");
+    }
+
+    @Test
+    void aFailingModelFallsBackToTheExtractiveSummary() {
+        ConversationSummaryServiceImpl service = service(true, SUMMARY_MODEL);
+        when(openRouterService.sendChatMessage(anyString(), anyString(), anyList(), any()))
+                .thenThrow(new RuntimeException("upstream down"));
+        messages.add(new HistoryEntry(1L, Message.MessageRole.USER, "Plan a trip.  It goes to   Rome in May."));
+        messages.add(new HistoryEntry(2L, Message.MessageRole.ASSISTANT, "Rome in May is warm and busy."));
+        messages.add(new HistoryEntry(3L, Message.MessageRole.USER, null));
+        addMessages(2);
+
+        service.requestUpdate(CONVERSATION_ID);
+        ConversationSummary summary = awaitSummaryCovering(3);
+
+        // whitespace is collapsed and long messages are cut at a sentence or after 20 characters
+        assertEquals("- User: Plan a trip.\n- Assistant: Rome in May is warm …\n- User: ", summary.getContent());
+        assertEquals("local", summary.getModel());
+    }
+
+    @Test
+    void anUpdateOvertakenByANewerSummaryIsDropped() {
+        ConversationSummaryServiceImpl service = service(true, "");
+        ConversationSummary newer = new ConversationSummary();
+        newer.setContent("newer");
+        newer.setCoveredMessageId(6L);
+        when(summaryRepository.findByConversationId(CONVERSATION_ID))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(newer));
+        addMessages(7);
+
+        service.requestUpdate(CONVERSATION_ID);
+
+        verify(summaryRepository, timeout(WAIT_MS).times(2)).findByConversationId(CONVERSATION_ID);
+        verify(summaryRepository, after(200).never()).save(any());
+        verify(historyCache, never()).putSummary(anyLong(), anyLong(), anyString());
+    }
+}
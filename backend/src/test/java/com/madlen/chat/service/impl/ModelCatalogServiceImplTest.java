@@ -0,0 +1,194 @@
+package com.madlen.chat.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madlen.chat.model.ModelCatalog;
+import com.madlen.chat.util.ModelCatalogIndex;
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against a stubbed exchange function with a TTL of one second, refreshed ahead after
+ * 200 ms and retried 500 ms after a failure.
+ */
+class ModelCatalogServiceImplTest {
+
+    private static final long WAIT_MS = 5_000;
+    private static final String MODELS = "{\"data\":[{\"id\":\"meta-llama/llama-3.2-3b-instruct:free\","
+            + "\"name\":\"Llama 3.2 3B\",\"created\":1700000000,\"context_length\":131072,"
+            + "\"pricing\":{\"prompt\":\"0\",\"completion\":\"0\"},"
+            + "\"architecture\":{\"input_modalities\":[\"text\"]}},"
+            + "{\"id\":\"openai/gpt-4o\",\"name\":\"GPT-4o\",\"created\":1710000000,\"context_length\":128000,"
+            + "\"pricing\":{\"prompt\":\"0.0000025\",\"completion\":\"0.00001\"},"
+            + "\"architecture\":{\"input_modalities\":[\"text\",\"image\"]}}]}";
+    private static final String CHANGED_MODELS = "{\"data\":[{\"id\":\"openai/gpt-4o\",\"name\":\"GPT-4o\"}]}";
+
+    private final List<ClientRequest> requests = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Function<ClientRequest, Mono<ClientResponse>>> upstream =
+            new AtomicReference<>(request -> Mono.just(models(MODELS, "\"v1\"")));
+    private final ModelCatalogServiceImpl service = new ModelCatalogServiceImpl(
+            WebClient.builder()
+                    .baseUrl("http://openrouter.test/api/v1")
+                    .exchangeFunction(request -> {
+                        requests.add(request);
+                        return upstream.get().apply(request);
+                    })
+                    .build(),
+            new ObjectMapper(), OpenTelemetry.noop().getMeter("test"), 1, 0.2, 500, 2_000, 16);
+
+    private static ClientResponse models(String body, String etag) {
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.LAST_MODIFIED, "Wed, 01 May 2024 10:00:00 GMT")
+                .body(body)
+                .build();
+    }
+
+    private static ClientResponse status(HttpStatus status) {
+        return ClientResponse.create(status).build();
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (requests.size() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, requests.size() + " requests, expected " + count);
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitCatalog(Function<ModelCatalog, Boolean> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.apply(service.getCatalog())) {
+            assertTrue(System.currentTimeMillis() < deadline, "catalog never reached the expected state");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void fetchedModelsReplaceTheFallbackList() {
+        assertTrue(service.getCatalog().fallback());
+
+        ModelCatalog catalog = service.refresh();
+
+        assertFalse(catalog.fallback());
+        assertEquals("\"v1\"", catalog.etag());
+        assertEquals(List.of("meta-llama/llama-3.2-3b-instruct:free", "openai/gpt-4o"),
+                catalog.models().stream().map(ModelCatalog.Model::id).toList());
+        ModelCatalog.Model gpt = catalog.find("openai/gpt-4o").orElseThrow();
+        assertTrue(gpt.supportsVision());
+        assertFalse(gpt.free());
+        assertTrue(catalog.find("meta-llama/llama-3.2-3b-instruct:free").orElseThrow().free());
+    }
+
+    @Test
+    void theFallbackListIsServedWhileUpstreamWasNeverReachable() throws InterruptedException {
+        upstream.set(request -> Mono.just(status(HttpStatus.SERVICE_UNAVAILABLE)));
+
+        ModelCatalog catalog = service.refresh();
+
+        assertTrue(catalog.fallback());
+        assertEquals(4, catalog.models().size());
+        assertTrue(catalog.models().stream().allMatch(ModelCatalog.Model::free));
+
+        // reading it does not retry before retry-interval-ms
+        service.getCatalog();
+        Thread.sleep(100);
+        assertEquals(1, requests.size());
+        Thread.sleep(500);
+        service.getCatalog();
+        awaitRequests(2);
+        // the fallback list is never sent for revalidation
+        assertNull(requests.get(1).headers().getFirst(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    @Test
+    void theListIsRevalidatedAheadOfExpiry() throws InterruptedException {
+        ModelCatalog fetched = service.refresh();
+        ModelCatalogIndex index = service.getIndex();
+
+        service.refreshAheadOfExpiry();
+        Thread.sleep(100);
+        assertEquals(1, requests.size());
+
+        upstream.set(request -> Mono.just(status(HttpStatus.NOT_MODIFIED)));
+        Thread.sleep(200);
+        service.refreshAheadOfExpiry();
+        awaitCatalog(catalog -> catalog.fetchedAt().isAfter(fetched.fetchedAt()));
+
+        ClientRequest revalidation = requests.get(1);
+        assertEquals("\"v1\"", revalidation.headers().getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals("Wed, 01 May 2024 10:00:00 GMT", revalidation.headers().getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+        // a 304 keeps the models, their validators and the index
+        assertSame(fetched.models(), service.getCatalog().models());
+        assertEquals("\"v1\"", service.getCatalog().etag());
+        assertSame(index, service.getIndex());
+    }
+
+    @Test
+    void aChangedListRebuildsTheIndex() throws InterruptedException {
+        service.refresh();
+        ModelCatalogIndex index = service.getIndex();
+
+        upstream.set(request -> Mono.just(models(CHANGED_MODELS, "\"v2\"")));
+        Thread.sleep(200);
+        service.refreshAheadOfExpiry();
+        awaitCatalog(catalog -> "\"v2\"".equals(catalog.etag()));
+
+        assertEquals(1, service.getCatalog().models().size());
+        assertNotSame(index, service.getIndex());
+        assertNotEquals(index.version(), service.getIndex().version());
+    }
+
+    @Test
+    void anExpiredListIsServedWhileItIsRefreshed() throws InterruptedException {
+        ModelCatalog fetched = service.refresh();
+        Sinks.One<ClientResponse> pending = Sinks.one();
+        upstream.set(request -> pending.asMono());
+        Thread.sleep(1_100);
+
+        // expired: the read triggers one refresh and does not wait for it
+        assertSame(fetched, service.getCatalog());
+        awaitRequests(2);
+        assertSame(fetched, service.getCatalog());
+        assertEquals(2, requests.size());
+
+        pending.tryEmitValue(models(CHANGED_MODELS, "\"v2\"")).orThrow();
+        awaitCatalog(catalog -> "\"v2\"".equals(catalog.etag()));
+    }
+
+    @Test
+    void aFailedRefreshKeepsServingTheExpiredList() throws InterruptedException {
+        ModelCatalog fetched = service.refresh();
+        upstream.set(request -> Mono.just(status(HttpStatus.BAD_GATEWAY)));
+        Thread.sleep(1_100);
+
+        assertSame(fetched, service.getCatalog());
+        awaitRequests(2);
+        Thread.sleep(100);
+        assertSame(fetched, service.getCatalog());
+        assertFalse(service.getCatalog().fallback());
+
+        // the next attempt waits for retry-interval-ms
+        Thread.sleep(100);
+        assertEquals(2, requests.size());
+        upstream.set(request -> Mono.just(status(HttpStatus.NOT_MODIFIED)));
+        Thread.sleep(400);
+        awaitCatalog(catalog -> catalog.fetchedAt().isAfter(fetched.fetchedAt()));
+        assertSame(fetched.models(), service.getCatalog().models());
+    }
+}
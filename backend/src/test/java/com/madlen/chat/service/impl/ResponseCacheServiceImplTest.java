@@ -0,0 +1,135 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.service.ResponseCacheService;
+import com.madlen.chat.util.CacheHelper;
+import com.madlen.chat.util.NearDuplicateResponseCache;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.metrics.Meter;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ResponseCacheServiceImplTest {
+
+    private static final Meter METER = OpenTelemetry.noop().getMeter("test");
+    private static final String MODEL = "test/model";
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+
+    ResponseCacheServiceImplTest() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+    }
+
+    private ResponseCacheServiceImpl service(boolean enabled, boolean nearDuplicates, int frontMaxEntries) {
+        NearDuplicateResponseCache nearDuplicateCache = new NearDuplicateResponseCache(METER, nearDuplicates, false,
+                0.85, 0.5, 0, 16, 4, 100, 10, 2000, 3600);
+        return new ResponseCacheServiceImpl(redisTemplate, nearDuplicateCache, METER, enabled, 3600,
+                "slow/model=60", frontMaxEntries, 1 << 20, 300, 100);
+    }
+
+    private static String redisKey(ResponseCacheService.Key key) {
+        return CacheHelper.getResponseCacheKey(key.fingerprint());
+    }
+
+    @Test
+    void requestsWithImagesOrWithoutALayerAreNotCached() {
+        assertNull(service(true, true, 10).keyFor("Hi", MODEL, List.of(), "data:image/png;base64,AAAA"));
+        assertNull(service(true, true, 10).keyFor("Hi", null, List.of(), null));
+        assertNull(service(false, false, 10).keyFor("Hi", MODEL, List.of(), null));
+
+        ResponseCacheService.Key key = service(true, false, 10).keyFor("Hi", MODEL, List.of(), null);
+        assertNotNull(key.fingerprint());
+        assertNull(key.prompt());
+    }
+
+    @Test
+    void storedAnswersAreServedFromMemoryAndWrittenToRedis() {
+        ResponseCacheServiceImpl service = service(true, false, 10);
+        ResponseCacheService.Key key = service.keyFor("Hi", MODEL, List.of(), null);
+
+        service.put(key, "Hello!");
+
+        assertEquals(Optional.of("Hello!"), service.get(key));
+        verify(values, never()).get(anyString());
+        verify(values, timeout(5000)).set(redisKey(key), "Hello!", Duration.ofSeconds(3600));
+    }
+
+    @Test
+    void redisHitsAreKeptInMemory() {
+        ResponseCacheServiceImpl service = service(true, false, 10);
+        ResponseCacheService.Key key = service.keyFor("Hi", MODEL, List.of(), null);
+        when(values.get(redisKey(key))).thenReturn("Hello!");
+
+        assertEquals(Optional.of("Hello!"), service.get(key));
+        assertEquals(Optional.of("Hello!"), service.get(key));
+        verify(values, times(1)).get(redisKey(key));
+    }
+
+    @Test
+    void leastRecentlyUsedAnswersLeaveTheMemoryFront() {
+        ResponseCacheServiceImpl service = service(true, false, 1);
+        ResponseCacheService.Key first = service.keyFor("Hi", MODEL, List.of(), null);
+        ResponseCacheService.Key second = service.keyFor("Hey", MODEL, List.of(), null);
+
+        service.put(first, "Hello!");
+        service.put(second, "Hey there!");
+
+        assertEquals(Optional.empty(), service.get(first));
+        assertEquals(Optional.of("Hey there!"), service.get(second));
+    }
+
+    @Test
+    void redisFailuresAreMisses() {
+        ResponseCacheServiceImpl service = service(true, false, 10);
+        ResponseCacheService.Key key = service.keyFor("Hi", MODEL, List.of(), null);
+        when(values.get(anyString())).thenThrow(new RedisConnectionFailureException("down"));
+
+        assertEquals(Optional.empty(), service.get(key));
+    }
+
+    @Test
+    void usesTheModelSpecificTtl() {
+        ResponseCacheServiceImpl service = service(true, false, 10);
+        ResponseCacheService.Key key = service.keyFor("Hi", "slow/model", List.of(), null);
+
+        service.put(key, "Hello!");
+
+        verify(values, timeout(5000)).set(redisKey(key), "Hello!", Duration.ofSeconds(60));
+    }
+
+    @Test
+    void emptyOrOversizedAnswersAreNotStored() {
+        ResponseCacheServiceImpl service = service(true, false, 10);
+        ResponseCacheService.Key key = service.keyFor("Hi", MODEL, List.of(), null);
+
+        service.put(key, "");
+        service.put(key, "x".repeat(101));
+
+        assertEquals(Optional.empty(), service.get(key));
+        verify(values, after(200).never()).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void nearDuplicateFirstTurnPromptsShareAnAnswer() {
+        ResponseCacheServiceImpl service = service(false, true, 10);
+        ResponseCacheService.Key key = service.keyFor("How do I reverse a list in Python?", MODEL, List.of(), null);
+        service.put(key, "Use reversed().");
+
+        ResponseCacheService.Key similar = service.keyFor("how do I reverse a list in python", MODEL, null, null);
+        assertEquals(Optional.of("Use reversed()."), service.get(similar));
+        assertNull(service.keyFor("How do I reverse a list in Python?", MODEL,
+                List.of(Map.of("role", "user", "content", "Hi")), null));
+        verifyNoInteractions(values);
+    }
+}
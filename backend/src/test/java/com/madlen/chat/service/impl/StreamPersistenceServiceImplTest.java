@@ -0,0 +1,109 @@
+package com.madlen.chat.service.impl;
+
+import com.madlen.chat.model.Conversation;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.repository.ConversationRepository;
+import com.madlen.chat.repository.MessageRepository;
+import com.madlen.chat.service.HistoryCacheService;
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * One persistence thread and a queue of one: the first save blocks the thread until
+ * {@code release} opens, the second waits in the queue and the third overflows.
+ */
+class StreamPersistenceServiceImplTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(5);
+    private static final long BLOCKING_CONVERSATION = 1L;
+
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Map<Long, String> savedOnThread = new ConcurrentHashMap<>();
+    private StreamPersistenceServiceImpl service;
+
+    private StreamPersistenceServiceImpl service(StreamPersistenceServiceImpl.OverflowPolicy policy) {
+        when(conversationRepository.findById(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            if (id == BLOCKING_CONVERSATION) {
+                blocked.countDown();
+                assertTrue(release.await(WAIT.toMillis(), TimeUnit.MILLISECONDS));
+            }
+            savedOnThread.put(id, Thread.currentThread().getName());
+            Conversation conversation = new Conversation();
+            conversation.setId(id);
+            return Optional.of(conversation);
+        });
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(0);
+            message.setId(100 + message.getConversation().getId());
+            return message;
+        });
+        service = new StreamPersistenceServiceImpl(conversationRepository, messageRepository,
+                mock(HistoryCacheService.class), mock(PlatformTransactionManager.class),
+                OpenTelemetry.noop().getMeter("test"), 1, 1, policy);
+        return service;
+    }
+
+    private Mono<Long> fillThreadAndQueue(StreamPersistenceServiceImpl service) throws InterruptedException {
+        service.saveAssistantMessage(BLOCKING_CONVERSATION, "first", "test/model", null).subscribe();
+        assertTrue(blocked.await(WAIT.toMillis(), TimeUnit.MILLISECONDS));
+        return service.saveAssistantMessage(2L, "second", "test/model", null).cache();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void savesOnThePersistenceThread() {
+        StreamPersistenceServiceImpl service = service(StreamPersistenceServiceImpl.OverflowPolicy.REJECT);
+
+        assertEquals(102L, service.saveAssistantMessage(2L, "answer", "test/model", null).block(WAIT));
+        assertTrue(savedOnThread.get(2L).startsWith("stream-persistence-"), savedOnThread.get(2L));
+    }
+
+    @Test
+    void rejectFailsTheSaveWhenTheQueueIsFull() throws InterruptedException {
+        StreamPersistenceServiceImpl service = service(StreamPersistenceServiceImpl.OverflowPolicy.REJECT);
+        Mono<Long> queued = fillThreadAndQueue(service);
+        queued.subscribe();
+
+        Mono<Long> overflow = service.saveAssistantMessage(3L, "third", "test/model", null);
+
+        assertThrows(RejectedExecutionException.class, () -> overflow.block(WAIT));
+        release.countDown();
+        assertEquals(102L, queued.block(WAIT));
+        assertFalse(savedOnThread.containsKey(3L));
+    }
+
+    @Test
+    void spillSavesOnBoundedElasticWhenTheQueueIsFull() throws InterruptedException {
+        StreamPersistenceServiceImpl service = service(StreamPersistenceServiceImpl.OverflowPolicy.SPILL);
+        fillThreadAndQueue(service).subscribe();
+
+        assertEquals(103L, service.saveAssistantMessage(3L, "third", "test/model", null).block(WAIT));
+        assertTrue(savedOnThread.get(3L).startsWith("boundedElastic-"), savedOnThread.get(3L));
+        assertFalse(savedOnThread.containsKey(BLOCKING_CONVERSATION));
+    }
+}
@@ -0,0 +1,198 @@
+package com.madlen.chat.service.impl;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamReplayServiceImplTest {
+
+    private static final long USER_ID = 7L;
+
+    private static StreamReplayServiceImpl service(int maxEventsPerStream, long memoryBudgetBytes,
+            long resumeGraceMillis) {
+        return new StreamReplayServiceImpl(OpenTelemetry.noop().getMeter("test"),
+                maxEventsPerStream, 120, 900, memoryBudgetBytes, resumeGraceMillis);
+    }
+
+    private static Flux<ServerSentEvent<String>> events(int count, String data) {
+        return Flux.range(0, count)
+                .map(i -> ServerSentEvent.<String>builder().event("content").data(data + i).build());
+    }
+
+    @Test
+    void requestsFromGenerationOnlyWhatTheClientAsksFor() {
+        StreamReplayServiceImpl service = service(2000, Long.MAX_VALUE, 5000);
+        AtomicLong requested = new AtomicLong();
+        Flux<ServerSentEvent<String>> generation = events(10, "token").doOnRequest(requested::addAndGet);
+
+        Client client = new Client();
+        service.register(1L, USER_ID, generation).subscribe(client);
+        assertEquals(0, requested.get());
+
+        client.request(3);
+        assertEquals(3, client.received.size());
+        assertEquals(3, requested.get());
+
+        client.request(Long.MAX_VALUE);
+        assertEquals(10, client.received.size());
+        assertTrue(client.completed);
+    }
+
+    @Test
+    void resumesAfterLastEventIdAndContinuesGeneration() {
+        StreamReplayServiceImpl service = service(2000, Long.MAX_VALUE, 5000);
+
+        Client client = new Client();
+        service.register(1L, USER_ID, events(6, "token")).subscribe(client);
+        client.request(3);
+        client.cancel();
+        String lastEventId = client.received.get(2).id();
+
+        assertTrue(service.resume(lastEventId, 8L).isEmpty());
+        List<String> rest = service.resume(lastEventId, USER_ID).orElseThrow()
+                .map(ServerSentEvent::data)
+                .collectList()
+                .block();
+        assertEquals(List.of("token3", "token4", "token5"), rest);
+    }
+
+    @Test
+    void cancelsGenerationWhenNoClientReattaches() {
+        StreamReplayServiceImpl service = service(2000, Long.MAX_VALUE, 0);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<ServerSentEvent<String>> generation = events(1, "token")
+                .concatWith(Flux.<ServerSentEvent<String>>never().doOnCancel(() -> cancelled.set(true)));
+
+        Client client = new Client();
+        service.register(1L, USER_ID, generation).subscribe(client);
+        client.request(Long.MAX_VALUE);
+        client.cancel();
+
+        assertTrue(cancelled.get());
+        List<ServerSentEvent<String>> rest = service.resume(client.received.get(0).id(), USER_ID).orElseThrow()
+                .collectList()
+                .block();
+        assertNotNull(rest);
+        assertEquals(1, rest.size());
+        assertEquals("error", rest.get(0).event());
+        assertEquals("Response generation was interrupted.", rest.get(0).data());
+    }
+
+    @Test
+    void keepsGeneratingWhenAClientReattachesWithinTheGrace() throws InterruptedException {
+        StreamReplayServiceImpl service = service(2000, Long.MAX_VALUE, 100);
+        Sinks.Many<ServerSentEvent<String>> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        Client first = new Client();
+        service.register(1L, USER_ID, tokens.asFlux().doOnCancel(() -> cancelled.set(true))).subscribe(first);
+        first.request(Long.MAX_VALUE);
+        tokens.tryEmitNext(ServerSentEvent.<String>builder().event("content").data("token0").build()).orThrow();
+        first.cancel();
+
+        Client second = new Client();
+        service.resume(first.received.get(0).id(), USER_ID).orElseThrow().subscribe(second);
+        second.request(Long.MAX_VALUE);
+        Thread.sleep(300);
+        assertFalse(cancelled.get());
+
+        tokens.tryEmitNext(ServerSentEvent.<String>builder().event("content").data("token1").build()).orThrow();
+        tokens.tryEmitComplete().orThrow();
+        assertEquals(List.of("token1"), second.received.stream().map(ServerSentEvent::data).toList());
+        assertTrue(second.completed);
+    }
+
+    @Test
+    void cancelsGenerationOnceTheGraceRunsOut() throws InterruptedException {
+        StreamReplayServiceImpl service = service(2000, Long.MAX_VALUE, 100);
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        Client client = new Client();
+        service.register(1L, USER_ID, Flux.<ServerSentEvent<String>>never().doOnCancel(() -> cancelled.set(true)))
+                .subscribe(client);
+        client.request(Long.MAX_VALUE);
+        client.cancel();
+        assertFalse(cancelled.get());
+
+        Thread.sleep(300);
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void releasesBytesOfEventsDroppedFromTheReplayLog() {
+        // 2 retained events of 100 chars are about 600 bytes; all 10 would be about 3000
+        StreamReplayServiceImpl service = service(2, 1000, 5000);
+        String data = "x".repeat(99);
+
+        List<ServerSentEvent<String>> sent = service.register(1L, USER_ID, events(10, data))
+                .collectList()
+                .block();
+        assertNotNull(sent);
+        service.evictExpired();
+
+        String lastEventId = sent.get(sent.size() - 1).id();
+        assertTrue(service.resume(lastEventId, USER_ID).isPresent());
+    }
+
+    @Test
+    void stopsCountingARunningLogOnceItIsEvicted() {
+        StreamReplayServiceImpl service = service(2000, 1000, 5000);
+        Sinks.Many<ServerSentEvent<String>> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        String data = "x".repeat(99);
+
+        Client client = new Client();
+        service.register(1L, USER_ID, tokens.asFlux()).subscribe(client);
+        client.request(Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            tokens.tryEmitNext(ServerSentEvent.<String>builder().event("content").data(data).build()).orThrow();
+        }
+        assertTrue(service.bufferedBytes() > 1000);
+
+        service.evictExpired();
+        assertEquals(0, service.bufferedBytes());
+
+        for (int i = 0; i < 10; i++) {
+            tokens.tryEmitNext(ServerSentEvent.<String>builder().event("content").data(data).build()).orThrow();
+        }
+        tokens.tryEmitComplete().orThrow();
+        service.evictExpired();
+
+        assertEquals(20, client.received.size());
+        assertTrue(client.completed);
+        assertEquals(0, service.bufferedBytes());
+    }
+
+    /**
+     * Requests only when told to, like a client whose writes have not completed yet.
+     */
+    private static final class Client extends BaseSubscriber<ServerSentEvent<String>> {
+
+        private final List<ServerSentEvent<String>> received = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        protected void hookOnNext(ServerSentEvent<String> event) {
+            received.add(event);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.exception.ModelOverloadedException;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(5);
+    private static final long MILLI = 1_000_000;
+
+    private static AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueue) {
+        return new AdaptiveConcurrencyLimiter("test/model", initialLimit, 1, 100, maxQueue, 1.5, 0.5);
+    }
+
+    @Test
+    void queuesCallsOverTheLimitAndRejectsWhenTheQueueIsFull() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(WAIT).block();
+        limiter.acquire(WAIT).block();
+
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> queued = new AtomicReference<>();
+        limiter.acquire(WAIT).subscribe(queued::set);
+        assertEquals(1, limiter.getQueued());
+        assertNull(queued.get());
+
+        assertThrows(ModelOverloadedException.class, () -> limiter.acquire(WAIT).block());
+
+        first.onIgnore();
+        assertNotNull(queued.get());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void queuedCallsFailAfterTheirMaxWait() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 10);
+        limiter.acquire(WAIT).block();
+
+        assertThrows(ModelOverloadedException.class, () -> limiter.acquire(Duration.ofMillis(50)).block());
+        assertEquals(0, limiter.getQueued());
+        assertThrows(ModelOverloadedException.class, () -> limiter.acquire(Duration.ZERO).block());
+    }
+
+    @Test
+    void cancelledWaitersLeaveTheQueue() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 10);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquire(WAIT).block();
+
+        Disposable waiting = limiter.acquire(WAIT).subscribe();
+        assertEquals(1, limiter.getQueued());
+        waiting.dispose();
+        assertEquals(0, limiter.getQueued());
+
+        held.onIgnore();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void permitsAreReleasedOnce() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 10);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(WAIT).block();
+        limiter.acquire(WAIT).block();
+
+        permit.onSuccess(AdaptiveConcurrencyLimiter.SampleKind.FULL_RESPONSE, MILLI);
+        permit.onDropped();
+        permit.onIgnore();
+
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void dropsCutTheLimitMultiplicatively() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 10);
+
+        limiter.acquire(WAIT).block().onDropped();
+        assertEquals(10, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(WAIT).block().onDropped();
+        }
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void growsWhileLatencyIsStableAndTheLimitIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 10);
+        List<AdaptiveConcurrencyLimiter.Permit> held = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            held.add(limiter.acquire(WAIT).block());
+        }
+
+        for (int i = 0; i < 50; i++) {
+            limiter.acquire(WAIT).block().onSuccess(AdaptiveConcurrencyLimiter.SampleKind.FIRST_TOKEN, 100 * MILLI);
+        }
+
+        assertTrue(limiter.getLimit() > 10, "limit " + limiter.getLimit());
+        held.forEach(AdaptiveConcurrencyLimiter.Permit::onIgnore);
+    }
+
+    @Test
+    void doesNotGrowWhileMostlyIdle() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 10);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.acquire(WAIT).block().onSuccess(AdaptiveConcurrencyLimiter.SampleKind.FIRST_TOKEN, 100 * MILLI);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void shrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = limiter(40, 10);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(WAIT).block().onSuccess(AdaptiveConcurrencyLimiter.SampleKind.FULL_RESPONSE, 100 * MILLI);
+        }
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(WAIT).block().onSuccess(AdaptiveConcurrencyLimiter.SampleKind.FULL_RESPONSE, 1000 * MILLI);
+        }
+
+        assertTrue(limiter.getLimit() < 40, "limit " + limiter.getLimit());
+    }
+}
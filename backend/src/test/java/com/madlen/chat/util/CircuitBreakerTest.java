@@ -0,0 +1,142 @@
+package com.madlen.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final Duration OPEN = Duration.ofMillis(50);
+    private static final long PAST_OPEN_MS = 100;
+
+    private final List<String> transitions = new ArrayList<>();
+
+    private CircuitBreaker breaker(int windowSize, int minimumCalls, double threshold, int probes) {
+        return new CircuitBreaker("test/model", windowSize, minimumCalls, threshold, OPEN, Duration.ofSeconds(1),
+                probes, (name, from, to) -> transitions.add(from + "->" + to));
+    }
+
+    private static void succeed(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            breaker.tryAcquire().onSuccess();
+        }
+    }
+
+    private static void fail(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            breaker.tryAcquire().onFailure(null);
+        }
+    }
+
+    @Test
+    void opensOnceTheFailureRateIsReachedOverMinimumCalls() {
+        CircuitBreaker breaker = breaker(10, 4, 0.5, 1);
+
+        fail(breaker, 3);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        succeed(breaker, 1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+        assertEquals(List.of("CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    void onlyTheLastWindowSizeCallsCount() {
+        CircuitBreaker breaker = breaker(4, 4, 0.75, 1);
+
+        fail(breaker, 2);
+        succeed(breaker, 4);
+        fail(breaker, 2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(breaker, 1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void closesAfterAllHalfOpenProbesSucceed() throws InterruptedException {
+        CircuitBreaker breaker = breaker(2, 2, 0.5, 2);
+        fail(breaker, 2);
+        Thread.sleep(PAST_OPEN_MS);
+
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        first.onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        second.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    void reopensWhenAProbeFails() throws InterruptedException {
+        CircuitBreaker breaker = breaker(2, 2, 0.5, 2);
+        fail(breaker, 2);
+        Thread.sleep(PAST_OPEN_MS);
+
+        breaker.tryAcquire().onFailure(null);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void anIgnoredProbeFreesItsSlot() throws InterruptedException {
+        CircuitBreaker breaker = breaker(2, 2, 0.5, 1);
+        fail(breaker, 2);
+        Thread.sleep(PAST_OPEN_MS);
+
+        breaker.tryAcquire().onIgnore();
+
+        assertNotNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void outcomesOfCallsFromAnEarlierStateAreIgnored() throws InterruptedException {
+        CircuitBreaker breaker = breaker(2, 2, 0.5, 1);
+        CircuitBreaker.Permit slowCall = breaker.tryAcquire();
+        fail(breaker, 2);
+        Thread.sleep(PAST_OPEN_MS);
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+
+        slowCall.onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        probe.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void retryAfterExtendsTheOpenTimeUpToTheMaximum() {
+        CircuitBreaker breaker = breaker(1, 1, 1.0, 1);
+
+        breaker.tryAcquire().onFailure(Duration.ofSeconds(30));
+
+        Duration remaining = breaker.remainingOpen();
+        assertTrue(remaining.compareTo(Duration.ofMillis(500)) > 0, remaining.toString());
+        assertTrue(remaining.compareTo(Duration.ofSeconds(1)) <= 0, remaining.toString());
+    }
+
+    @Test
+    void resetClosesAndForgetsOutcomes() {
+        CircuitBreaker breaker = breaker(4, 2, 0.5, 1);
+        fail(breaker, 2);
+
+        breaker.reset();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.status().getBufferedCalls());
+
+        fail(breaker, 1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
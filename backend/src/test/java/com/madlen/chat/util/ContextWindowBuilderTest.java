@@ -0,0 +1,108 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.model.ModelCatalog;
+import com.madlen.chat.service.ModelCatalogService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * One character is one token and entries have no overhead, so budgets can be counted by hand.
+ * The model has a context of 200 tokens, 50 of them reserved for the answer.
+ */
+class ContextWindowBuilderTest {
+
+    private static final String MODEL = "small/model";
+
+    private static ContextWindowBuilder builder(boolean enabled) {
+        ModelCatalogService catalogService = mock(ModelCatalogService.class);
+        when(catalogService.getCatalog()).thenReturn(new ModelCatalog(
+                List.of(new ModelCatalog.Model(MODEL, "Small", true, false, 200, null, null, 0)),
+                Instant.now(), null, null, false));
+        return new ContextWindowBuilder(catalogService, enabled, 100, 50, 1.0, 0, 20);
+    }
+
+    private static Map<String, String> user(int chars) {
+        return Map.of("role", "user", "content", "u".repeat(chars));
+    }
+
+    private static Map<String, String> assistant(int chars) {
+        return Map.of("role", "assistant", "content", "a".repeat(chars));
+    }
+
+    @Test
+    void keepsHistoryThatFits() {
+        List<Map<String, String>> history = List.of(user(10), assistant(20), user(10), assistant(20));
+
+        ContextWindowBuilder.Window window = builder(true).fit(MODEL, history, "m".repeat(10), false);
+
+        assertEquals(history, window.history());
+        assertEquals(150, window.budgetTokens());
+        assertEquals(70, window.usedTokens());
+        assertEquals(0, window.droppedTurns());
+    }
+
+    @Test
+    void dropsOldestWholeTurnsAndKeepsFirstUserMessage() {
+        List<Map<String, String>> history = new ArrayList<>(List.of(user(10), assistant(20)));
+        for (int turn = 0; turn < 3; turn++) {
+            history.add(user(30));
+            history.add(assistant(30));
+        }
+
+        // 150 - 10 (message) - 10 (first user message) leaves room for two 60-token turns
+        ContextWindowBuilder.Window window = builder(true).fit(MODEL, history, "m".repeat(10), false);
+
+        List<Map<String, String>> expected = new ArrayList<>();
+        expected.add(history.get(0));
+        expected.addAll(history.subList(4, 8));
+        assertEquals(expected, window.history());
+        assertEquals(2, window.droppedTurns());
+        assertEquals(140, window.usedTokens());
+    }
+
+    @Test
+    void countsTheImageAgainstTheBudget() {
+        List<Map<String, String>> history = List.of(user(10), assistant(20), user(50), assistant(50));
+
+        assertEquals(0, builder(true).fit(MODEL, history, "m".repeat(10), false).droppedTurns());
+        assertEquals(1, builder(true).fit(MODEL, history, "m".repeat(10), true).droppedTurns());
+    }
+
+    @Test
+    void truncatesASummaryThatExceedsTheBudgetAlone() {
+        List<Map<String, String>> history = List.of(
+                Map.of("role", MessageHistoryBuilder.SUMMARY_ROLE, "content", "s".repeat(500)),
+                user(10), assistant(10));
+
+        ContextWindowBuilder.Window window = builder(true).fit(MODEL, history, "m".repeat(10), false);
+
+        assertEquals(1, window.history().size());
+        assertEquals(140, window.history().get(0).get("content").length());
+        assertEquals(150, window.usedTokens());
+        assertEquals(2, window.droppedTurns());
+    }
+
+    @Test
+    void unknownModelsGetTheDefaultContext() {
+        ContextWindowBuilder.Window window = builder(true).fit("other/model", List.of(), "m", false);
+
+        assertEquals(50, window.budgetTokens());
+    }
+
+    @Test
+    void disabledKeepsEverything() {
+        List<Map<String, String>> history = List.of(user(500), assistant(500));
+
+        ContextWindowBuilder.Window window = builder(false).fit(MODEL, history, "m".repeat(10), false);
+
+        assertEquals(history, window.history());
+        assertEquals(1010, window.usedTokens());
+    }
+}
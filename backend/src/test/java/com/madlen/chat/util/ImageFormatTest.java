@@ -0,0 +1,45 @@
+package com.madlen.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageFormatTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[ImageFormat.HEADER_BYTES];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    @Test
+    void recognisesFormatsFromTheirSignature() {
+        assertEquals(Optional.of(ImageFormat.JPEG), ImageFormat.sniff(bytes(0xFF, 0xD8, 0xFF, 0xE0)));
+        assertEquals(Optional.of(ImageFormat.PNG),
+                ImageFormat.sniff(bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)));
+        assertEquals(Optional.of(ImageFormat.GIF), ImageFormat.sniff("GIF89a".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(Optional.of(ImageFormat.WEBP),
+                ImageFormat.sniff("RIFF\0\0\0\0WEBPVP8 ".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(Optional.of(ImageFormat.BMP), ImageFormat.sniff(bytes('B', 'M')));
+    }
+
+    @Test
+    void rejectsUnknownAndTruncatedHeaders() {
+        assertEquals(Optional.empty(), ImageFormat.sniff("RIFF\0\0\0\0WAVEfmt ".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(Optional.empty(), ImageFormat.sniff("<svg xmlns=".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(Optional.empty(), ImageFormat.sniff(new byte[] {(byte) 0xFF, (byte) 0xD8}));
+        assertEquals(Optional.empty(), ImageFormat.sniff(new byte[0]));
+    }
+
+    @Test
+    void onlyBmpNeedsConversion() {
+        for (ImageFormat format : ImageFormat.values()) {
+            assertEquals(format != ImageFormat.BMP, format.acceptedUpstream(), format.name());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagePreprocessorTest {
+
+    private static final String MODEL = "test/model";
+
+    @TempDir
+    Path dir;
+
+    private static ImagePreprocessor preprocessor(boolean enabled, long maxBytes) {
+        return new ImagePreprocessor(OpenTelemetry.noop().getMeter("test"), enabled, 100, "small/model=20",
+                maxBytes, 0.85f, 0.5f, 10, 1 << 20);
+    }
+
+    private Path write(String name, String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        Path file = dir.resolve(name);
+        assertTrue(ImageIO.write(image, format, file.toFile()));
+        return file;
+    }
+
+    private static BufferedImage decode(UpstreamImage image) throws IOException {
+        assertTrue(image.inMemory());
+        assertEquals(Optional.of(ImageFormat.JPEG), ImageFormat.sniff(image.bytes()));
+        return ImageIO.read(new ByteArrayInputStream(image.bytes()));
+    }
+
+    @Test
+    void imagesThatFitAreSentAsTheyAre() throws IOException {
+        Path file = write("small.png", "png", 50, 40);
+
+        UpstreamImage image = preprocessor(true, 1 << 20).prepare("hash", file, MODEL);
+
+        assertEquals(file, image.file());
+        assertEquals("image/png", image.mimeType());
+    }
+
+    @Test
+    void theRealFormatWinsOverTheFileName() throws IOException {
+        Path file = write("photo.jpg", "png", 50, 40);
+
+        assertEquals("image/png", preprocessor(true, 1 << 20).prepare("hash", file, MODEL).mimeType());
+    }
+
+    @Test
+    void largeImagesAreScaledToTheMaxDimension() throws IOException {
+        Path file = write("wide.png", "png", 400, 200);
+
+        BufferedImage scaled = decode(preprocessor(true, 1 << 20).prepare("hash", file, MODEL));
+
+        assertEquals(100, scaled.getWidth());
+        assertEquals(50, scaled.getHeight());
+    }
+
+    @Test
+    void modelsCanHaveTheirOwnMaxDimension() throws IOException {
+        Path file = write("wide.png", "png", 400, 200);
+
+        BufferedImage scaled = decode(preprocessor(true, 1 << 20).prepare("hash", file, "small/model"));
+
+        assertEquals(20, scaled.getWidth());
+        assertEquals(10, scaled.getHeight());
+    }
+
+    @Test
+    void formatsUpstreamDoesNotAcceptAreConverted() throws IOException {
+        Path file = write("small.bmp", "bmp", 10, 10);
+
+        BufferedImage converted = decode(preprocessor(true, 1 << 20).prepare("hash", file, MODEL));
+
+        assertEquals(10, converted.getWidth());
+    }
+
+    @Test
+    void imagesOverMaxBytesAreRecompressed() throws IOException {
+        Path file = write("noisy.png", "png", 80, 80);
+
+        UpstreamImage image = preprocessor(true, 4096).prepare("hash", file, MODEL);
+
+        assertEquals(80, decode(image).getWidth());
+        assertTrue(image.bytes().length < Files.size(file));
+    }
+
+    @Test
+    void undecodableImagesAreSentAsTheyAre() throws IOException {
+        Path file = dir.resolve("broken.png");
+        Files.write(file, new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 1, 2, 3, 4, 5, 6});
+
+        UpstreamImage image = preprocessor(true, 1).prepare("hash", file, MODEL);
+
+        assertEquals(file, image.file());
+        assertEquals("image/png", image.mimeType());
+    }
+
+    @Test
+    void resultsAreCachedPerImageAndSize() throws IOException {
+        Path file = write("wide.png", "png", 400, 200);
+        ImagePreprocessor preprocessor = preprocessor(true, 1 << 20);
+
+        UpstreamImage first = preprocessor.prepare("hash", file, MODEL);
+
+        assertSame(first, preprocessor.prepare("hash", file, MODEL));
+        assertNotSame(first, preprocessor.prepare("hash", file, "small/model"));
+        assertNotSame(first, preprocessor.prepare("other", file, MODEL));
+    }
+
+    @Test
+    void disabledSendsEveryImageAsItIs() throws IOException {
+        Path file = write("wide.png", "png", 400, 200);
+
+        UpstreamImage image = preprocessor(false, 1).prepare("hash", file, MODEL);
+
+        assertEquals(file, image.file());
+        assertEquals("image/png", image.mimeType());
+        assertNull(preprocessor(true, 1).prepare(null, file, MODEL));
+    }
+}
@@ -0,0 +1,54 @@
+package com.madlen.chat.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageUrlSignerTest {
+
+    private static final String HASH = "a".repeat(64);
+
+    private final ImageUrlSigner signer = new ImageUrlSigner("test-signing-key", 3600);
+
+    @Test
+    void signedUrlVerifiesForItsHashOnly() {
+        UriComponents url = UriComponentsBuilder.fromUriString(signer.sign("/api/images/" + HASH)).build();
+        Long expires = Long.valueOf(url.getQueryParams().getFirst("expires"));
+        String sig = url.getQueryParams().getFirst("sig");
+
+        assertEquals("/api/images/" + HASH, url.getPath());
+        assertTrue(signer.verify(HASH, expires, sig));
+        assertFalse(signer.verify("b".repeat(64), expires, sig));
+        assertFalse(signer.verify(HASH, expires + 3600, sig));
+        assertFalse(new ImageUrlSigner("other-key", 3600).verify(HASH, expires, sig));
+    }
+
+    @Test
+    void expiryIsRoundedSoUrlsAreStableWithinAWindow() {
+        long now = System.currentTimeMillis() / 1000;
+        String url = signer.sign("/api/images/" + HASH);
+        long expires = Long.parseLong(UriComponentsBuilder.fromUriString(url).build()
+                .getQueryParams().getFirst("expires"));
+
+        assertEquals(0, expires % 3600);
+        assertTrue(expires - now > 3600 - 5 && expires - now <= 7200);
+    }
+
+    @Test
+    void rejectsMissingAndExpiredSignatures() {
+        assertFalse(signer.verify(HASH, null, null));
+        assertFalse(signer.verify(HASH, System.currentTimeMillis() / 1000 + 60, null));
+        long past = System.currentTimeMillis() / 1000 - 1;
+        String url = new ImageUrlSigner("test-signing-key", 1).sign("/api/images/" + HASH);
+        String sig = UriComponentsBuilder.fromUriString(url).build().getQueryParams().getFirst("sig");
+        assertFalse(signer.verify(HASH, past, sig));
+    }
+
+    @Test
+    void leavesOtherUrlsUnchanged() {
+        assertNull(signer.sign(null));
+        assertEquals("data:image/png;base64,AAAA", signer.sign("data:image/png;base64,AAAA"));
+    }
+}
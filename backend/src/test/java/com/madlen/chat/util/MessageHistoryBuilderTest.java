@@ -0,0 +1,40 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.model.HistoryEntry;
+import com.madlen.chat.model.Message;
+import com.madlen.chat.repository.MessageRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MessageHistoryBuilderTest {
+
+    @Test
+    void entriesCarryTheLowerCaseRole() {
+        assertEquals(Map.of("role", "user", "content", "Hi"),
+                MessageHistoryBuilder.historyEntry(Message.MessageRole.USER, "Hi"));
+        assertEquals(Map.of("role", "assistant", "content", "Hello"),
+                MessageHistoryBuilder.historyEntry(Message.MessageRole.ASSISTANT, "Hello"));
+    }
+
+    @Test
+    void missingContentIsSentAsAnEmptyString() {
+        assertEquals(Map.of("role", "assistant", "content", ""),
+                MessageHistoryBuilder.historyEntry(Message.MessageRole.ASSISTANT, null));
+    }
+
+    @Test
+    void historyIsBuiltFromTheStoredMessages() {
+        MessageRepository messageRepository = mock(MessageRepository.class);
+        when(messageRepository.findHistoryByConversationIdOrderByCreatedAtAsc(1L)).thenReturn(List.of(
+                new HistoryEntry(1L, Message.MessageRole.USER, "Hi"),
+                new HistoryEntry(2L, Message.MessageRole.ASSISTANT, null)));
+
+        assertEquals(List.of(Map.of("role", "user", "content", "Hi"), Map.of("role", "assistant", "content", "")),
+                MessageHistoryBuilder.buildMessageHistory(1L, messageRepository));
+    }
+}
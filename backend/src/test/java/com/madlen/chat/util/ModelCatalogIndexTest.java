@@ -0,0 +1,141 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.dto.ModelInfo;
+import com.madlen.chat.model.ModelCatalog;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelCatalogIndexTest {
+
+    private static final List<ModelCatalog.Model> MODELS = List.of(
+            new ModelCatalog.Model("openai/gpt-4o", "GPT-4o", false, true, 128_000,
+                    new BigDecimal("0.0000025"), new BigDecimal("0.00001"), 300),
+            new ModelCatalog.Model("meta/llama-free", "llama Free", true, false, 8_000,
+                    BigDecimal.ZERO, BigDecimal.ZERO, 100),
+            new ModelCatalog.Model("google/gemini", "Gemini", false, true, 1_000_000,
+                    new BigDecimal("0.000001"), new BigDecimal("0.000004"), 400),
+            new ModelCatalog.Model("openai/o-mini", "o mini", false, false, 128_000, null, null, 200));
+
+    private final AtomicInteger serialized = new AtomicInteger();
+    private final Function<List<ModelInfo>, byte[]> serializer = infos -> {
+        serialized.incrementAndGet();
+        return String.join(",", ids(infos)).getBytes(StandardCharsets.UTF_8);
+    };
+
+    private ModelCatalogIndex index(List<ModelCatalog.Model> models, int maxCachedResponses) {
+        return new ModelCatalogIndex(new ModelCatalog(models, Instant.now(), null, null, false), serializer,
+                maxCachedResponses);
+    }
+
+    private static List<String> ids(List<ModelInfo> infos) {
+        return infos.stream().map(ModelInfo::getId).toList();
+    }
+
+    private static ModelCatalogIndex.Query query(Boolean free, Boolean vision, Integer minContext,
+            BigDecimal maxPromptPrice, Set<String> providers) {
+        return new ModelCatalogIndex.Query(free, vision, minContext, maxPromptPrice, null, providers, null, false);
+    }
+
+    private static ModelCatalogIndex.Query sorted(ModelCatalogIndex.Sort sort, boolean descending) {
+        return new ModelCatalogIndex.Query(null, null, null, null, null, Set.of(), sort, descending);
+    }
+
+    @Test
+    void unfilteredQueryKeepsCatalogOrder() {
+        assertEquals(List.of("openai/gpt-4o", "meta/llama-free", "google/gemini", "openai/o-mini"),
+                ids(index(MODELS, 10).query(ModelCatalogIndex.Query.ALL)));
+    }
+
+    @Test
+    void filtersCombine() {
+        ModelCatalogIndex index = index(MODELS, 10);
+
+        assertEquals(List.of("meta/llama-free"), ids(index.query(query(true, null, null, null, Set.of()))));
+        assertEquals(List.of("openai/gpt-4o", "google/gemini"),
+                ids(index.query(query(false, true, null, null, Set.of()))));
+        assertEquals(List.of("openai/gpt-4o", "google/gemini", "openai/o-mini"),
+                ids(index.query(query(null, null, 128_000, null, Set.of()))));
+        assertEquals(List.of("openai/gpt-4o", "openai/o-mini"),
+                ids(index.query(query(null, null, null, null, Set.of("OpenAI", "unknown")))));
+        assertEquals(List.of(), ids(index.query(query(null, null, 2_000_000, null, Set.of()))));
+    }
+
+    @Test
+    void priceLimitIsInclusiveAndExcludesUnpricedModels() {
+        ModelCatalogIndex index = index(MODELS, 10);
+
+        assertEquals(List.of("meta/llama-free", "google/gemini"),
+                ids(index.query(query(null, null, null, new BigDecimal("0.000001"), Set.of()))));
+        assertEquals(List.of("openai/gpt-4o", "meta/llama-free", "google/gemini"),
+                ids(index.query(query(null, null, null, BigDecimal.ONE, Set.of()))));
+    }
+
+    @Test
+    void sortsByEachKey() {
+        ModelCatalogIndex index = index(MODELS, 10);
+
+        assertEquals(List.of("google/gemini", "openai/gpt-4o", "meta/llama-free", "openai/o-mini"),
+                ids(index.query(sorted(ModelCatalogIndex.Sort.NAME, false))));
+        assertEquals(List.of("meta/llama-free", "openai/gpt-4o", "openai/o-mini", "google/gemini"),
+                ids(index.query(sorted(ModelCatalogIndex.Sort.CONTEXT, false))));
+        assertEquals(List.of("google/gemini", "openai/gpt-4o", "openai/o-mini", "meta/llama-free"),
+                ids(index.query(sorted(ModelCatalogIndex.Sort.CREATED, true))));
+    }
+
+    @Test
+    void unpricedModelsComeLastInEitherPriceOrder() {
+        ModelCatalogIndex index = index(MODELS, 10);
+
+        assertEquals(List.of("meta/llama-free", "google/gemini", "openai/gpt-4o", "openai/o-mini"),
+                ids(index.query(sorted(ModelCatalogIndex.Sort.PRICE, false))));
+        assertEquals(List.of("openai/gpt-4o", "google/gemini", "meta/llama-free", "openai/o-mini"),
+                ids(index.query(sorted(ModelCatalogIndex.Sort.PRICE, true))));
+    }
+
+    @Test
+    void responsesAreCachedPerCanonicalQuery() {
+        ModelCatalogIndex index = index(MODELS, 10);
+        assertEquals(1, serialized.get());
+
+        ModelCatalogIndex.Response all = index.response(ModelCatalogIndex.Query.ALL);
+        assertEquals(1, serialized.get());
+        assertEquals("openai/gpt-4o,meta/llama-free,google/gemini,openai/o-mini",
+                new String(all.body(), StandardCharsets.UTF_8));
+
+        ModelCatalogIndex.Response first = index.response(query(null, null, null, new BigDecimal("0.0000010"),
+                Set.of("openai", "google")));
+        ModelCatalogIndex.Response second = index.response(query(null, null, null, new BigDecimal("0.000001"),
+                Set.of("GOOGLE", "openai")));
+        assertSame(first, second);
+        assertEquals(2, serialized.get());
+        assertNotEquals(all.etag(), first.etag());
+    }
+
+    @Test
+    void stopsCachingAtTheLimit() {
+        ModelCatalogIndex index = index(MODELS, 1);
+
+        index.response(query(true, null, null, null, Set.of()));
+        index.response(query(true, null, null, null, Set.of()));
+
+        assertEquals(3, serialized.get());
+    }
+
+    @Test
+    void versionDependsOnlyOnCatalogContent() {
+        String version = index(MODELS, 10).version();
+
+        assertEquals(version, index(List.copyOf(MODELS), 10).version());
+        assertNotEquals(version, index(MODELS.subList(0, 3), 10).version());
+        assertTrue(index(MODELS, 10).response(ModelCatalogIndex.Query.ALL).etag().startsWith("\"" + version + "-"));
+    }
+}
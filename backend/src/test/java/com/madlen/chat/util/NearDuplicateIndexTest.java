@@ -0,0 +1,109 @@
+package com.madlen.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearDuplicateIndexTest {
+
+    private static final String PROMPT = "what is the difference between a process and a thread in an operating system";
+    private static final String NEAR_PROMPT = "what is the difference between a process and a thread in operating systems";
+
+    private static NearDuplicateIndex index(int maxEntries, Duration ttl, double threshold) {
+        return new NearDuplicateIndex(16, 4, maxEntries, ttl, threshold);
+    }
+
+    private static void add(NearDuplicateIndex index, String prompt, String response) {
+        long[] shingles = PromptSimilarity.shingles(prompt);
+        index.add(prompt, shingles, PromptSimilarity.signature(shingles, index.signatureSize()), response);
+    }
+
+    private static NearDuplicateIndex.Lookup find(NearDuplicateIndex index, String prompt) {
+        long[] shingles = PromptSimilarity.shingles(prompt);
+        return index.find(shingles, PromptSimilarity.signature(shingles, index.signatureSize()));
+    }
+
+    @Test
+    void findsANearDuplicateAboveTheThreshold() {
+        NearDuplicateIndex index = index(100, Duration.ofHours(1), 0.8);
+        add(index, PROMPT, "answer");
+        add(index, "how do i reverse a list in python", "other answer");
+
+        NearDuplicateIndex.Lookup lookup = find(index, NEAR_PROMPT);
+
+        assertNotNull(lookup.match());
+        assertEquals(PROMPT, lookup.match().prompt());
+        assertEquals("answer", lookup.match().response());
+        assertEquals(PromptSimilarity.jaccard(PromptSimilarity.shingles(PROMPT),
+                PromptSimilarity.shingles(NEAR_PROMPT)), lookup.match().similarity());
+    }
+
+    @Test
+    void countsCandidatesBelowTheThresholdAsRejected() {
+        NearDuplicateIndex index = index(100, Duration.ofHours(1), 0.99);
+        add(index, PROMPT, "answer");
+
+        NearDuplicateIndex.Lookup lookup = find(index, NEAR_PROMPT);
+
+        assertNull(lookup.match());
+        assertEquals(1, lookup.candidates());
+        assertEquals(1, lookup.rejected());
+    }
+
+    @Test
+    void unrelatedPromptsAreNotCandidates() {
+        NearDuplicateIndex index = index(100, Duration.ofHours(1), 0.8);
+        add(index, PROMPT, "answer");
+
+        NearDuplicateIndex.Lookup lookup = find(index, "write a haiku about autumn leaves falling");
+
+        assertNull(lookup.match());
+        assertEquals(0, lookup.candidates());
+    }
+
+    @Test
+    void prefersTheMostSimilarEntry() {
+        NearDuplicateIndex index = index(100, Duration.ofHours(1), 0.5);
+        add(index, NEAR_PROMPT, "near");
+        add(index, PROMPT, "exact");
+
+        assertEquals("exact", find(index, PROMPT).match().response());
+    }
+
+    @Test
+    void addingAPromptAgainReplacesItsAnswer() {
+        NearDuplicateIndex index = index(100, Duration.ofHours(1), 0.8);
+        add(index, PROMPT, "old");
+        add(index, PROMPT, "new");
+
+        assertEquals(1, index.size());
+        assertEquals("new", find(index, PROMPT).match().response());
+        assertEquals(1, find(index, PROMPT).candidates());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPrompt() {
+        NearDuplicateIndex index = index(2, Duration.ofHours(1), 0.8);
+        add(index, PROMPT, "first");
+        add(index, "how do i reverse a list in python", "second");
+        assertNotNull(find(index, PROMPT).match());
+
+        add(index, "write a haiku about autumn leaves falling", "third");
+
+        assertEquals(2, index.size());
+        assertNotNull(find(index, PROMPT).match());
+        assertNull(find(index, "how do i reverse a list in python").match());
+    }
+
+    @Test
+    void expiredEntriesAreDroppedOnLookup() throws InterruptedException {
+        NearDuplicateIndex index = index(100, Duration.ofMillis(20), 0.8);
+        add(index, PROMPT, "answer");
+        Thread.sleep(50);
+
+        assertNull(find(index, PROMPT).match());
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,165 @@
+package com.madlen.chat.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenRouterRequestBuilderTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String MODEL = "test/model";
+    private static final List<Map<String, String>> HISTORY = List.of(
+            Map.of("role", "user", "content", "Hi \"there\"\n"),
+            Map.of("role", "assistant", "content", "Hello! ğüşıöç 😀 \\ </script>"));
+    private static final byte[] IMAGE = {(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, (byte) 0xFF, (byte) 0xFE, 3};
+
+    private static final BodyInserter.Context CONTEXT = new BodyInserter.Context() {
+        @Override
+        public List<HttpMessageWriter<?>> messageWriters() {
+            return List.of();
+        }
+
+        @Override
+        public Optional<ServerHttpRequest> serverRequest() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Map<String, Object> hints() {
+            return Map.of();
+        }
+    };
+
+    @TempDir
+    Path dir;
+
+    private static String encode(BodyInserter<Void, ReactiveHttpOutputMessage> inserter) {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST, URI.create("/chat/completions"));
+        inserter.insert(request, CONTEXT).block();
+        return request.getBodyAsString().block();
+    }
+
+    private static JsonNode render(String message, List<Map<String, String>> history, UpstreamImage image,
+            boolean stream) throws IOException {
+        return MAPPER.readTree(encode(OpenRouterRequestBuilder.buildChatRequest(message, MODEL, history, image,
+                stream)));
+    }
+
+    /**
+     * The body the Map-based builder produced before requests were encoded with a generator.
+     */
+    private static JsonNode mapBody(String message, List<Map<String, String>> history, String dataUrl,
+            boolean stream) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", MODEL);
+        if (stream) {
+            body.put("stream", true);
+        }
+        List<Map<String, Object>> messages = new ArrayList<>();
+        for (Map<String, String> entry : history) {
+            messages.add(new HashMap<>(entry));
+        }
+        Map<String, Object> current = new HashMap<>();
+        current.put("role", OpenRouterConstants.ROLE_USER);
+        if (dataUrl != null) {
+            current.put("content", List.of(
+                    Map.of("type", OpenRouterConstants.CONTENT_TYPE_TEXT, "text", message),
+                    Map.of("type", OpenRouterConstants.CONTENT_TYPE_IMAGE_URL, "image_url", Map.of("url", dataUrl))));
+        } else {
+            current.put("content", message);
+        }
+        messages.add(current);
+        body.put("messages", messages);
+        return MAPPER.valueToTree(body);
+    }
+
+    private static void assertKeysSorted(JsonNode node) {
+        if (node.isObject()) {
+            String previous = "";
+            for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                assertTrue(previous.compareTo(field.getKey()) < 0, previous + " before " + field.getKey());
+                previous = field.getKey();
+                assertKeysSorted(field.getValue());
+            }
+        } else if (node.isArray()) {
+            node.forEach(OpenRouterRequestBuilderTest::assertKeysSorted);
+        }
+    }
+
+    @Test
+    void textOnlyRequestMatchesTheMapBody() throws IOException {
+        JsonNode body = render("How are you?", List.of(), null, false);
+
+        assertEquals(mapBody("How are you?", List.of(), null, false), body);
+        assertKeysSorted(body);
+    }
+
+    @Test
+    void historyIsSentInOrderWithItsContentEscaped() throws IOException {
+        JsonNode body = render("And now?", HISTORY, null, true);
+
+        assertEquals(mapBody("And now?", HISTORY, null, true), body);
+        assertEquals("Hello! ğüşıöç 😀 \\ </script>", body.at("/messages/1/content").asText());
+        assertKeysSorted(body);
+    }
+
+    @Test
+    void imageFromMemoryIsSentAsADataUrl() throws IOException {
+        JsonNode body = render("What is this?", HISTORY, UpstreamImage.of("image/png", IMAGE), true);
+
+        String dataUrl = "data:image/png;base64," + Base64.getEncoder().encodeToString(IMAGE);
+        assertEquals(mapBody("What is this?", HISTORY, dataUrl, true), body);
+        assertKeysSorted(body);
+    }
+
+    @Test
+    void imageFromAFileIsSentAsADataUrl() throws IOException {
+        Path file = dir.resolve("image.png");
+        Files.write(file, IMAGE);
+
+        JsonNode body = render("What is this?", List.of(), UpstreamImage.of("image/png", file), false);
+
+        String dataUrl = "data:image/png;base64," + Base64.getEncoder().encodeToString(IMAGE);
+        assertEquals(mapBody("What is this?", List.of(), dataUrl, false), body);
+    }
+
+    @Test
+    void mimeTypeIsEscaped() throws IOException {
+        String mimeType = "image/png; name=\"a\\b\"";
+
+        JsonNode body = render("What is this?", List.of(), UpstreamImage.of(mimeType, IMAGE), false);
+
+        String dataUrl = "data:" + mimeType + ";base64," + Base64.getEncoder().encodeToString(IMAGE);
+        assertEquals(mapBody("What is this?", List.of(), dataUrl, false), body);
+    }
+
+    @Test
+    void encodingIsRepeatableForRetries() {
+        BodyInserter<Void, ReactiveHttpOutputMessage> inserter = OpenRouterRequestBuilder.buildChatRequest("Hi",
+                MODEL, HISTORY, UpstreamImage.of("image/png", IMAGE), true);
+
+        assertEquals(encode(inserter), encode(inserter));
+    }
+}
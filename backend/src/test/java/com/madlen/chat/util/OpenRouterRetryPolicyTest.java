@@ -0,0 +1,105 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenRouterRetryPolicyTest {
+
+    private final OpenRouterRetryPolicy policy =
+            new OpenRouterRetryPolicy(OpenTelemetry.noop().getMeter("test"), 2, 1, 1, 10_000);
+
+    private static WebClientRequestException requestFailure(Throwable cause) {
+        return new WebClientRequestException(cause, HttpMethod.POST,
+                URI.create("https://openrouter.ai/api/v1/chat/completions"), new HttpHeaders());
+    }
+
+    private static WebClientResponseException response(int status, HttpHeaders headers) {
+        return WebClientResponseException.create(status, "status " + status, headers, new byte[0],
+                StandardCharsets.UTF_8);
+    }
+
+    private static Mono<String> failing(AtomicInteger attempts, int failures, Throwable error) {
+        return Mono.defer(() -> attempts.incrementAndGet() <= failures ? Mono.error(error) : Mono.just("ok"));
+    }
+
+    @Test
+    void retriesRequestsThatNeverReachedTheUpstream() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = policy.mono(failing(attempts, 2, requestFailure(new ConnectException("refused")))).block();
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void retriesStatusesThatMeanTheRequestWasNotProcessed() {
+        for (int status : List.of(408, 429, 502, 503, 504)) {
+            AtomicInteger attempts = new AtomicInteger();
+            assertEquals("ok", policy.mono(failing(attempts, 1, response(status, new HttpHeaders()))).block());
+            assertEquals(2, attempts.get(), "status " + status);
+        }
+    }
+
+    @Test
+    void doesNotRetryFailuresAfterTheRequestMayHaveBeenSent() {
+        List<Throwable> errors = List.of(
+                new TimeoutException("no response in time"),
+                requestFailure(new IOException("Connection reset by peer")),
+                response(500, new HttpHeaders()),
+                response(400, new HttpHeaders()));
+        for (Throwable error : errors) {
+            AtomicInteger attempts = new AtomicInteger();
+            assertThrows(Exception.class, () -> policy.mono(failing(attempts, 1, error)).block());
+            assertEquals(1, attempts.get(), error.toString());
+        }
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(WebClientResponseException.class,
+                () -> policy.mono(failing(attempts, 5, response(503, new HttpHeaders()))).block());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void doesNotWaitForRetryAfterBeyondTheLimit() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "60");
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(WebClientResponseException.class,
+                () -> policy.mono(failing(attempts, 1, response(429, headers))).block());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void doesNotRetryStreamsAfterTheFirstElement() {
+        AtomicInteger attempts = new AtomicInteger();
+        Flux<String> stream = Flux.defer(() -> {
+            attempts.incrementAndGet();
+            return Flux.just("Hel").concatWith(Mono.error(response(503, new HttpHeaders())));
+        });
+
+        assertThrows(WebClientResponseException.class, () -> policy.flux(stream).collectList().block());
+        assertEquals(1, attempts.get());
+    }
+}
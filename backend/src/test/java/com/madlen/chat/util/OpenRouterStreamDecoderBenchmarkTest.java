@@ -0,0 +1,95 @@
+package com.madlen.chat.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.madlen.chat.dto.StreamDelta;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the incremental decoder with the tree-based parsing it replaced. Allocation and
+ * timing depend on the JIT and GC, so nothing is asserted; the numbers are printed.
+ * Excluded from {@code mvn test}, run it with
+ * {@code mvn test -Dtest=OpenRouterStreamDecoderBenchmarkTest -Dtest.excludedGroups=}.
+ */
+@Tag("benchmark")
+class OpenRouterStreamDecoderBenchmarkTest {
+
+    private static final String CHUNK_TEMPLATE = "data: {\"id\":\"gen-1\",\"provider\":\"Meta\",\"model\":\"meta-llama/llama-3.2-3b-instruct:free\","
+            + "\"object\":\"chat.completion.chunk\",\"created\":1700000000,"
+            + "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"%s\"},\"finish_reason\":null,\"logprobs\":null}]}\n\n";
+    private static final int WARM_UP_CHUNKS = 20_000;
+    private static final int CHUNKS = 200_000;
+
+    private interface Path {
+        int decode(byte[] line, int chunks) throws Exception;
+    }
+
+    @Test
+    void decoderAgainstTreeBasedParsing() throws Exception {
+        byte[] line = String.format(CHUNK_TEMPLATE, "token").getBytes(StandardCharsets.UTF_8);
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path tree = (bytes, chunks) -> decodeWithTree(objectMapper, bytes, chunks);
+        Path decoder = OpenRouterStreamDecoderBenchmarkTest::decodeIncrementally;
+
+        // warm-up both paths so class loading and JIT do not skew the numbers
+        tree.decode(line, WARM_UP_CHUNKS);
+        decoder.decode(line, WARM_UP_CHUNKS);
+
+        measure("tree path", tree, line);
+        measure("decoder", decoder, line);
+    }
+
+    private static void measure(String name, Path path, byte[] line) throws Exception {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        boolean allocationSupported = threadBean.isThreadAllocatedMemorySupported();
+        if (allocationSupported) {
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        long threadId = Thread.currentThread().getId();
+
+        long bytesBefore = allocationSupported ? threadBean.getThreadAllocatedBytes(threadId) : 0;
+        long started = System.nanoTime();
+        int contentChunks = path.decode(line, CHUNKS);
+        long nanos = System.nanoTime() - started;
+        long bytes = allocationSupported ? threadBean.getThreadAllocatedBytes(threadId) - bytesBefore : -1;
+
+        System.out.printf("%-9s %d content chunks, %d ns/chunk, %s B/chunk%n", name, contentChunks,
+                nanos / CHUNKS, allocationSupported ? String.valueOf(bytes / CHUNKS) : "n/a");
+    }
+
+    private static int decodeWithTree(ObjectMapper objectMapper, byte[] line, int chunks) throws Exception {
+        int count = 0;
+        for (int i = 0; i < chunks; i++) {
+            String raw = new String(line, StandardCharsets.UTF_8);
+            for (String sseLine : raw.split("\n")) {
+                if (sseLine.isEmpty() || sseLine.contains(OpenRouterConstants.STREAM_DONE_MARKER)) {
+                    continue;
+                }
+                String json = sseLine.substring(OpenRouterConstants.SSE_DATA_PREFIX.length());
+                JsonNode delta = objectMapper.readTree(json).get("choices").get(0).get("delta");
+                if (delta.has("content") && !delta.get("content").asText().isEmpty()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int decodeIncrementally(byte[] line, int chunks) {
+        OpenRouterStreamDecoder decoder = new OpenRouterStreamDecoder();
+        int count = 0;
+        for (int i = 0; i < chunks; i++) {
+            for (StreamDelta delta : decoder.feed(line, 0, line.length)) {
+                if (delta.hasContent()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
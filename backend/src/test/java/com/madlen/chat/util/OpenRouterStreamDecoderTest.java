@@ -0,0 +1,76 @@
+package com.madlen.chat.util;
+
+import com.madlen.chat.dto.StreamDelta;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenRouterStreamDecoderTest {
+
+    private static final String CHUNK_TEMPLATE = "data: {\"id\":\"gen-1\",\"provider\":\"Meta\",\"model\":\"meta-llama/llama-3.2-3b-instruct:free\","
+            + "\"object\":\"chat.completion.chunk\",\"created\":1700000000,"
+            + "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"%s\"},\"finish_reason\":null,\"logprobs\":null}]}\n\n";
+
+    @Test
+    void decodesContentFinishReasonAndUsage() {
+        String body = ": OPENROUTER PROCESSING\n\n"
+                + String.format(CHUNK_TEMPLATE, "Hello")
+                + String.format(CHUNK_TEMPLATE, " world\\n")
+                + "data: {\"choices\":[{\"delta\":{\"content\":\"\"},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":3,\"total_tokens\":15}}\n\n"
+                + "data: [DONE]\n\n";
+
+        List<StreamDelta> deltas = OpenRouterStreamDecoder.decode(Flux.just(buffer(body)))
+                .collectList()
+                .block();
+
+        assertNotNull(deltas);
+        assertEquals(3, deltas.size());
+        assertEquals("Hello", deltas.get(0).getContent());
+        assertEquals(" world\n", deltas.get(1).getContent());
+        assertEquals("stop", deltas.get(2).getFinishReason());
+        assertEquals(15, deltas.get(2).getUsage().getTotalTokens());
+    }
+
+    @Test
+    void stitchesEventsSplitAcrossNetworkBuffers() {
+        String body = String.format(CHUNK_TEMPLATE, "Merhaba dünya") + "data: [DONE]\r\n\r\n";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        List<DataBuffer> pieces = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += 7) {
+            byte[] piece = new byte[Math.min(7, bytes.length - i)];
+            System.arraycopy(bytes, i, piece, 0, piece.length);
+            pieces.add(DefaultDataBufferFactory.sharedInstance.wrap(piece));
+        }
+
+        List<String> contents = OpenRouterStreamDecoder.decode(Flux.fromIterable(pieces))
+                .filter(StreamDelta::hasContent)
+                .map(StreamDelta::getContent)
+                .collectList()
+                .block();
+
+        assertEquals(List.of("Merhaba dünya"), contents);
+    }
+
+    @Test
+    void decodesTrailingEventWithoutNewline() {
+        String body = "data: {\"choices\":[{\"delta\":{\"content\":\"tail\"}}]}";
+        List<StreamDelta> deltas = OpenRouterStreamDecoder.decode(Flux.just(buffer(body))).collectList().block();
+
+        assertNotNull(deltas);
+        assertEquals(1, deltas.size());
+        assertEquals("tail", deltas.get(0).getContent());
+    }
+
+    private static DataBuffer buffer(String value) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,64 @@
+package com.madlen.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptSimilarityTest {
+
+    private static long[] shinglesOf(String text) {
+        return PromptSimilarity.shingles(PromptSimilarity.normalize(text));
+    }
+
+    @Test
+    void normalizesCasePunctuationWhitespaceAndCompatibilityForms() {
+        assertEquals("héllo world fi", PromptSimilarity.normalize("  Héllo,\n\tWORLD!! ﬁ "));
+        assertEquals("abc 123", PromptSimilarity.normalize("ＡＢＣ—１２３?"));
+        assertEquals("", PromptSimilarity.normalize("?!  ..."));
+    }
+
+    @Test
+    void shinglesAreSortedAndDistinct() {
+        long[] shingles = PromptSimilarity.shingles("abcdabcd");
+
+        // abcd, bcda, cdab, dabc; the second abcd is a duplicate
+        assertEquals(4, shingles.length);
+        for (int i = 1; i < shingles.length; i++) {
+            assertTrue(shingles[i - 1] < shingles[i]);
+        }
+        assertEquals(1, PromptSimilarity.shingles("abc").length);
+        assertEquals(1, PromptSimilarity.shingles("aaaaaaa").length);
+    }
+
+    @Test
+    void jaccardOfSortedSets() {
+        assertEquals(0.5, PromptSimilarity.jaccard(new long[] {1, 2, 3}, new long[] {2, 3, 4}));
+        assertEquals(1.0, PromptSimilarity.jaccard(new long[] {-5, 7}, new long[] {-5, 7}));
+        assertEquals(0.0, PromptSimilarity.jaccard(new long[] {1}, new long[] {2}));
+        assertEquals(1.0, PromptSimilarity.jaccard(new long[0], new long[0]));
+    }
+
+    @Test
+    void textsDifferingOnlyInFormattingAreIdentical() {
+        assertEquals(1.0, PromptSimilarity.jaccard(
+                shinglesOf("How do I reverse a list in Python?"),
+                shinglesOf("how do i  REVERSE a list, in python")));
+    }
+
+    @Test
+    void signaturesEstimateJaccardSimilarity() {
+        long[] a = shinglesOf("What is the difference between a process and a thread in an operating system?");
+        long[] b = shinglesOf("What is the difference between a process and a thread in operating systems?");
+        long[] signatureA = PromptSimilarity.signature(a, 256);
+        long[] signatureB = PromptSimilarity.signature(b, 256);
+
+        int equal = 0;
+        for (int i = 0; i < signatureA.length; i++) {
+            if (signatureA[i] == signatureB[i]) {
+                equal++;
+            }
+        }
+        assertEquals(PromptSimilarity.jaccard(a, b), equal / 256.0, 0.1);
+        assertArrayEquals(signatureA, PromptSimilarity.signature(a, 256));
+    }
+}
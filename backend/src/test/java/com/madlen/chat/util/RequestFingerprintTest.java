@@ -0,0 +1,58 @@
+package com.madlen.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestFingerprintTest {
+
+    private static final String MODEL = "test/model";
+    private static final List<Map<String, String>> HISTORY = List.of(
+            Map.of("role", "user", "content", "Hi"),
+            Map.of("role", "assistant", "content", "Hello!"));
+
+    @Test
+    void isTheHashOfTheNonStreamingRequestBody() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        OpenRouterRequestBuilder.writeChatRequest(body, "How are you?", MODEL, HISTORY, null, false);
+        String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body.toByteArray()));
+
+        assertEquals(expected, RequestFingerprint.of("How are you?", MODEL, HISTORY));
+    }
+
+    @Test
+    void doesNotDependOnTheStreamFlag() throws IOException {
+        ByteArrayOutputStream streaming = new ByteArrayOutputStream();
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        OpenRouterRequestBuilder.writeChatRequest(streaming, "How are you?", MODEL, HISTORY, null, true);
+        OpenRouterRequestBuilder.writeChatRequest(single, "How are you?", MODEL, HISTORY, null, false);
+        assertNotEquals(streaming.toString(), single.toString());
+
+        assertEquals(RequestFingerprint.of("How are you?", MODEL, HISTORY),
+                RequestFingerprint.of("How are you?", MODEL, List.copyOf(HISTORY)));
+    }
+
+    @Test
+    void changesWithModelMessageAndHistory() {
+        String fingerprint = RequestFingerprint.of("How are you?", MODEL, HISTORY);
+
+        assertNotEquals(fingerprint, RequestFingerprint.of("How are you?", "other/model", HISTORY));
+        assertNotEquals(fingerprint, RequestFingerprint.of("How are you ?", MODEL, HISTORY));
+        assertNotEquals(fingerprint, RequestFingerprint.of("How are you?", MODEL, HISTORY.subList(0, 1)));
+        assertNotEquals(fingerprint, RequestFingerprint.of("How are you?", MODEL, List.of(
+                Map.of("role", "assistant", "content", "Hi"),
+                Map.of("role", "user", "content", "Hello!"))));
+    }
+
+    @Test
+    void treatsNoHistoryLikeEmptyHistory() {
+        assertEquals(RequestFingerprint.of("Hi", MODEL, null), RequestFingerprint.of("Hi", MODEL, List.of()));
+    }
+}
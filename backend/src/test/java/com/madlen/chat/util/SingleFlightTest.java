@@ -0,0 +1,154 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private static SingleFlight singleFlight(boolean enabled) {
+        return new SingleFlight(OpenTelemetry.noop().getMeter("test"), enabled);
+    }
+
+    private <T> Flux<T> counted(Flux<T> upstream) {
+        upstreamCalls.incrementAndGet();
+        return upstream;
+    }
+
+    private <T> Mono<T> counted(Mono<T> upstream) {
+        upstreamCalls.incrementAndGet();
+        return upstream;
+    }
+
+    @Test
+    void lateJoinerGetsTheTokensSoFarAndTheRest() {
+        SingleFlight singleFlight = singleFlight(true);
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        Client<String> first = new Client<>();
+        Client<String> second = new Client<>();
+
+        singleFlight.flux("key", () -> counted(tokens.asFlux())).subscribe(first);
+        tokens.tryEmitNext("Hel").orThrow();
+        singleFlight.flux("key", () -> counted(tokens.asFlux())).subscribe(second);
+        tokens.tryEmitNext("lo").orThrow();
+        tokens.tryEmitComplete().orThrow();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(List.of("Hel", "lo"), first.received);
+        assertEquals(List.of("Hel", "lo"), second.received);
+        assertTrue(first.completed);
+        assertTrue(second.completed);
+    }
+
+    @Test
+    void finishedStreamsAreNotJoined() {
+        SingleFlight singleFlight = singleFlight(true);
+
+        singleFlight.flux("key", () -> counted(Flux.just("a"))).blockLast();
+        singleFlight.flux("key", () -> counted(Flux.just("b"))).blockLast();
+
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void upstreamIsCancelledOnlyOnceEveryoneHasLeft() {
+        SingleFlight singleFlight = singleFlight(true);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> upstream = Flux.<String>never().doOnCancel(() -> cancelled.set(true));
+        Client<String> first = new Client<>();
+        Client<String> second = new Client<>();
+
+        singleFlight.flux("key", () -> counted(upstream)).subscribe(first);
+        singleFlight.flux("key", () -> counted(upstream)).subscribe(second);
+        first.cancel();
+        assertFalse(cancelled.get());
+
+        second.cancel();
+        assertTrue(cancelled.get());
+
+        singleFlight.flux("key", () -> counted(upstream)).subscribe(new Client<>());
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void differentKeysDoNotShare() {
+        SingleFlight singleFlight = singleFlight(true);
+
+        singleFlight.flux("one", () -> counted(Flux.<String>never())).subscribe(new Client<>());
+        singleFlight.flux("two", () -> counted(Flux.<String>never())).subscribe(new Client<>());
+
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void singleResponsesAreSharedWithTheirError() {
+        SingleFlight singleFlight = singleFlight(true);
+        Sinks.One<String> response = Sinks.one();
+        Client<String> first = new Client<>();
+        Client<String> second = new Client<>();
+        IllegalStateException failure = new IllegalStateException("upstream down");
+
+        singleFlight.mono("key", () -> counted(response.asMono())).subscribe(first);
+        singleFlight.mono("key", () -> counted(response.asMono())).subscribe(second);
+        response.tryEmitError(failure).orThrow();
+
+        assertEquals(1, upstreamCalls.get());
+        assertSame(failure, first.error);
+        assertSame(failure, second.error);
+
+        assertEquals("ok", singleFlight.mono("key", () -> counted(Mono.just("ok"))).block());
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void disabledOrUnkeyedCallsAreNotShared() {
+        singleFlight(false).flux("key", () -> counted(Flux.<String>never())).subscribe(new Client<>());
+        singleFlight(false).flux("key", () -> counted(Flux.<String>never())).subscribe(new Client<>());
+        assertEquals(2, upstreamCalls.get());
+
+        SingleFlight singleFlight = singleFlight(true);
+        singleFlight.mono(null, () -> counted(Mono.<String>never())).subscribe(new Client<>());
+        singleFlight.mono(null, () -> counted(Mono.<String>never())).subscribe(new Client<>());
+        assertEquals(4, upstreamCalls.get());
+    }
+
+    private static final class Client<T> extends BaseSubscriber<T> {
+
+        private final List<T> received = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(Long.MAX_VALUE);
+        }
+
+        @Override
+        protected void hookOnNext(T value) {
+            received.add(value);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            completed = true;
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            error = throwable;
+        }
+    }
+}
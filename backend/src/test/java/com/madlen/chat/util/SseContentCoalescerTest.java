@@ -0,0 +1,174 @@
+package com.madlen.chat.util;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseContentCoalescerTest {
+
+    private static final long WINDOW_MS = 50;
+    private static final long PAST_WINDOW_MS = 300;
+
+    private final Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+    private final Client client = new Client();
+
+    private void subscribe(SseContentCoalescer coalescer, long initialDemand) {
+        coalescer.coalesce(tokens.asFlux()).subscribe(client);
+        if (initialDemand > 0) {
+            client.request(initialDemand);
+        }
+    }
+
+    private void emit(String... values) {
+        for (String value : values) {
+            tokens.tryEmitNext(value).orThrow();
+        }
+    }
+
+    @Test
+    void forwardsTheFirstTokenAtOnceAndBatchesTheRest() throws InterruptedException {
+        subscribe(new SseContentCoalescer(true, WINDOW_MS, WINDOW_MS * 2, 1024), Long.MAX_VALUE);
+
+        emit("Hel");
+        assertEquals(List.of("Hel"), client.received);
+
+        emit("lo", ", ", "world");
+        assertEquals(List.of("Hel"), client.received);
+
+        Thread.sleep(PAST_WINDOW_MS);
+        assertEquals(List.of("Hel", "lo, world"), client.received);
+    }
+
+    @Test
+    void flushesAsSoonAsTheBatchReachesMaxBytes() {
+        subscribe(new SseContentCoalescer(true, 10_000, 10_000, 4), Long.MAX_VALUE);
+
+        emit("a", "ğ", "ü", "x");
+
+        // ğ and ü are two bytes each in UTF-8
+        assertEquals(List.of("a", "ğü"), client.received);
+    }
+
+    @Test
+    void holdsTheBatchUntilTheClientAsksForMore() throws InterruptedException {
+        subscribe(new SseContentCoalescer(true, WINDOW_MS, WINDOW_MS * 2, 1024), 1);
+
+        emit("a", "b", "c");
+        Thread.sleep(PAST_WINDOW_MS);
+        assertEquals(List.of("a"), client.received);
+
+        client.request(1);
+        assertEquals(List.of("a", "bc"), client.received);
+    }
+
+    @Test
+    void deliversThePendingBatchBeforeCompletion() {
+        subscribe(new SseContentCoalescer(true, 10_000, 10_000, 1024), 1);
+
+        emit("a", "b");
+        tokens.tryEmitComplete().orThrow();
+        assertEquals(List.of("a"), client.received);
+        assertFalse(client.completed);
+
+        client.request(1);
+        assertEquals(List.of("a", "b"), client.received);
+        assertTrue(client.completed);
+    }
+
+    @Test
+    void deliversThePendingBatchBeforeAnError() {
+        subscribe(new SseContentCoalescer(true, 10_000, 10_000, 1024), Long.MAX_VALUE);
+
+        emit("a", "b");
+        tokens.tryEmitError(new IllegalStateException("upstream closed")).orThrow();
+
+        assertEquals(List.of("a", "b"), client.received);
+        assertInstanceOf(IllegalStateException.class, client.error);
+    }
+
+    @Test
+    void stopsReadingUpstreamWhileAFullBatchWaitsForTheClient() throws InterruptedException {
+        AtomicLong delivered = new AtomicLong();
+        new SseContentCoalescer(true, WINDOW_MS, WINDOW_MS * 2, 256)
+                .coalesce(tokens.asFlux().doOnNext(token -> delivered.incrementAndGet()))
+                .subscribe(client);
+        client.request(1);
+
+        StringBuilder all = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            String token = i + "x".repeat(99);
+            all.append(token);
+            emit(token);
+        }
+        Thread.sleep(PAST_WINDOW_MS);
+
+        // the first token is sent, the batch fills at three tokens and the rest stays upstream
+        assertEquals(1, client.received.size());
+        assertEquals(4, delivered.get());
+
+        client.request(Long.MAX_VALUE);
+        tokens.tryEmitComplete().orThrow();
+        assertEquals(50, delivered.get());
+        assertEquals(all.toString(), String.join("", client.received));
+        assertTrue(client.completed);
+    }
+
+    @Test
+    void cancellingStopsTheUpstream() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        new SseContentCoalescer(true, WINDOW_MS, WINDOW_MS * 2, 1024)
+                .coalesce(Flux.<String>never().doOnCancel(() -> cancelled.set(true)))
+                .subscribe(client);
+
+        client.cancel();
+
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void disabledPassesTokensThrough() {
+        subscribe(new SseContentCoalescer(false, WINDOW_MS, WINDOW_MS * 2, 1024), Long.MAX_VALUE);
+
+        emit("a", "b", "c");
+
+        assertEquals(List.of("a", "b", "c"), client.received);
+    }
+
+    /**
+     * Requests only when told to, like a client whose writes have not completed yet.
+     */
+    private static final class Client extends BaseSubscriber<String> {
+
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        protected void hookOnNext(String value) {
+            received.add(value);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            completed = true;
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            error = throwable;
+        }
+    }
+}
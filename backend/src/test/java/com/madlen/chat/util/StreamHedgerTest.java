@@ -0,0 +1,109 @@
+package com.madlen.chat.util;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamHedgerTest {
+
+    private static final String MODEL = "primary/model";
+    private static final String FALLBACK = "fallback/model";
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final AtomicReference<String> chosen = new AtomicReference<>();
+
+    private static StreamHedger hedger(boolean enabled) {
+        return new StreamHedger(OpenTelemetry.noop().getMeter("test"), enabled, 50, FALLBACK);
+    }
+
+    private BiFunction<String, Boolean, Flux<String>> streams(Map<String, Flux<String>> byModel) {
+        return (model, hedge) -> {
+            calls.add(model + (hedge ? " (hedge)" : ""));
+            return byModel.get(model);
+        };
+    }
+
+    private List<String> run(StreamHedger hedger, boolean hasImage, Map<String, Flux<String>> byModel) {
+        return hedger.stream(MODEL, hasImage, streams(byModel), chosen::set).collectList().block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        List<String> chunks = run(hedger(true), false, Map.of(MODEL, Flux.just("Hel", "lo")));
+
+        assertEquals(List.of("Hel", "lo"), chunks);
+        assertEquals(List.of(MODEL), calls);
+        assertEquals(MODEL, chosen.get());
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndTheFirstTokenWins() {
+        List<String> chunks = run(hedger(true), false, Map.of(
+                MODEL, Flux.just("late").delaySubscription(Duration.ofSeconds(2)),
+                FALLBACK, Flux.just("Hi")));
+
+        assertEquals(List.of("Hi"), chunks);
+        assertEquals(List.of(MODEL, FALLBACK + " (hedge)"), calls);
+        assertEquals(FALLBACK, chosen.get());
+    }
+
+    @Test
+    void failedPrimaryIsHedgedBeforeTheDeadline() {
+        StreamHedger hedger = new StreamHedger(OpenTelemetry.noop().getMeter("test"), true, 60_000, FALLBACK);
+
+        List<String> chunks = run(hedger, false, Map.of(
+                MODEL, Flux.error(new IllegalStateException("upstream down")),
+                FALLBACK, Flux.just("Hi")));
+
+        assertEquals(List.of("Hi"), chunks);
+        assertEquals(FALLBACK, chosen.get());
+    }
+
+    @Test
+    void emptyPrimaryEndsTheStreamWithoutHedging() throws InterruptedException {
+        List<String> chunks = run(hedger(true), false, Map.of(MODEL, Flux.empty(), FALLBACK, Flux.just("Hi")));
+        Thread.sleep(150);
+
+        assertEquals(List.of(), chunks);
+        assertEquals(List.of(MODEL), calls);
+    }
+
+    @Test
+    void imagesAreHedgedAgainstTheSameModel() {
+        List<String> chunks = run(hedger(true), true, Map.of(
+                MODEL, Flux.defer(() -> calls.size() == 1
+                        ? Flux.just("late").delaySubscription(Duration.ofSeconds(2))
+                        : Flux.just("Hi"))));
+
+        assertEquals(List.of("Hi"), chunks);
+        assertEquals(List.of(MODEL, MODEL + " (hedge)"), calls);
+    }
+
+    @Test
+    void primaryErrorIsReportedWhenBothFail() {
+        IllegalStateException primaryError = new IllegalStateException("primary down");
+        Map<String, Flux<String>> byModel = Map.of(
+                MODEL, Flux.error(primaryError),
+                FALLBACK, Flux.error(new IllegalStateException("fallback down")));
+
+        Exception error = assertThrows(IllegalStateException.class, () -> run(hedger(true), false, byModel));
+        assertSame(primaryError, error);
+    }
+
+    @Test
+    void disabledCallsOnlyThePrimary() {
+        List<String> chunks = run(hedger(false), false, Map.of(MODEL, Flux.just("Hi")));
+
+        assertEquals(List.of("Hi"), chunks);
+        assertEquals(List.of(MODEL), calls);
+    }
+}
@@ -143,6 +143,12 @@ export const MessageList: React.FC<MessageListProps> = ({ messages, isLoading, i
                 />
               )}
 
+              {message.interrupted && (
+                <div className="mt-2 text-xs italic text-zinc-400">
+                  Response was interrupted before it finished.
+                </div>
+              )}
+
               {message.model && (
                 <div className={`mt-2 text-xs flex items-center gap-1 ${isUser ? 'text-indigo-200' : 'text-indigo-400'}`}>
                   <svg
@@ -12,12 +12,51 @@ interface StreamCallbacks {
 
 interface StreamState {
   hasCompleted: boolean;
+  hasFailed: boolean;
+  lastEventId: string | null;
 }
 
+const MAX_RESUME_ATTEMPTS = 3;
+const RESUME_DELAY_MS = 1000;
+
+const dispatchEvent = (event: string, data: string, callbacks: StreamCallbacks, state: StreamState) => {
+  if (event === 'error') {
+    state.hasFailed = true;
+    callbacks.onError(data);
+    return;
+  }
+
+  if (event === 'init' || event === 'complete') {
+    try {
+      const json = JSON.parse(data);
+      if (event === 'complete') {
+        state.hasCompleted = true;
+        callbacks.onComplete(json.conversationId, json.messageId);
+      } else {
+        callbacks.onInit(json.conversationId);
+      }
+    } catch {
+    }
+    return;
+  }
+
+  callbacks.onChunk(data);
+};
+
 const readStream = async (reader: ReadableStreamDefaultReader<Uint8Array>, callbacks: StreamCallbacks, state: StreamState) => {
   const decoder = new TextDecoder();
   let buffer = '';
   let currentEvent = '';
+  // Batched content events may span several data: lines; they are joined with '\n' per the SSE spec
+  let dataLines: string[] = [];
+
+  const flushEvent = () => {
+    if (dataLines.length > 0) {
+      dispatchEvent(currentEvent, dataLines.join('\n'), callbacks, state);
+    }
+    dataLines = [];
+    currentEvent = '';
+  };
 
   while (true) {
     const { done, value } = await reader.read();
@@ -27,45 +66,21 @@ const readStream = async (reader: ReadableStreamDefaultReader<Uint8Array>, callb
     const lines = buffer.split('\n');
     buffer = lines.pop() || '';
 
-    for (const line of lines) {
-      if (line.startsWith('event:')) {
+    for (const rawLine of lines) {
+      const line = rawLine.endsWith('\r') ? rawLine.slice(0, -1) : rawLine;
+      if (line === '') {
+        flushEvent();
+      } else if (line.startsWith('event:')) {
         currentEvent = line.slice(6).trim();
       } else if (line.startsWith('data:')) {
-        const data = line.slice(5);
-
-        if (data === '') {
-          if (currentEvent === 'content' || currentEvent === '') {
-            callbacks.onChunk('\n');
-          }
-          continue;
-        }
-
-        if (currentEvent === 'error') {
-          callbacks.onError(data);
-          currentEvent = '';
-          continue;
-        }
-
-        if (data.startsWith('{')) {
-          try {
-            const json = JSON.parse(data);
-            if (json.messageId) {
-              state.hasCompleted = true;
-              callbacks.onComplete(json.conversationId, json.messageId);
-            } else if (json.conversationId) {
-              callbacks.onInit(json.conversationId);
-            }
-            currentEvent = '';
-            continue;
-          } catch {
-          }
-        }
-
-        callbacks.onChunk(data);
-        currentEvent = '';
+        dataLines.push(line.slice(5));
+      } else if (line.startsWith('id:')) {
+        state.lastEventId = line.slice(3).trim();
       }
     }
   }
+
+  flushEvent();
 };
 
 export const chatService = {
@@ -89,39 +104,57 @@ export const chatService = {
       return;
     }
 
-    try {
-      const response = await fetch(`${API_BASE_URL}/chat/stream`, {
-        method: 'POST',
-        headers: {
+    const state: StreamState = { hasCompleted: false, hasFailed: false, lastEventId: null };
+
+    // Dropped connections are resumed from the server-side replay log via Last-Event-ID
+    for (let attempt = 0; ; attempt++) {
+      try {
+        const headers: Record<string, string> = {
           'Content-Type': 'application/json',
           Authorization: `Bearer ${token}`,
-        },
-        body: JSON.stringify(request),
-      });
+        };
+        if (state.lastEventId) {
+          headers['Last-Event-ID'] = state.lastEventId;
+        }
+
+        const response = await fetch(`${API_BASE_URL}/chat/stream`, {
+          method: 'POST',
+          headers,
+          body: JSON.stringify(request),
+        });
 
-      if (!response.ok) {
-        if (response.status === 401 || response.status === 403) {
-          onError('Session expired or invalid. Please sign in again.');
+        if (!response.ok) {
+          if (response.status === 401 || response.status === 403) {
+            onError('Session expired or invalid. Please sign in again.');
+            return;
+          }
+          const errorText = await response.text().catch(() => '');
+          onError(errorText || `HTTP ${response.status}`);
           return;
         }
-        const errorText = await response.text().catch(() => '');
-        throw new Error(errorText || `HTTP ${response.status}`);
-      }
 
-      const reader = response.body?.getReader();
-      if (!reader) throw new Error('No response body');
+        const reader = response.body?.getReader();
+        if (!reader) throw new Error('No response body');
 
-      const state: StreamState = { hasCompleted: false };
-
-      try {
         await readStream(reader, callbacks, state);
-      } catch (readError) {
-        if (!state.hasCompleted) {
-          throw readError;
+        if (state.hasCompleted || state.hasFailed || !state.lastEventId) {
+          return;
+        }
+      } catch (error) {
+        if (state.hasCompleted) {
+          return;
         }
+        if (!state.lastEventId || attempt >= MAX_RESUME_ATTEMPTS) {
+          onError(error instanceof Error ? error.message : 'Streaming failed');
+          return;
+        }
+      }
+
+      if (attempt >= MAX_RESUME_ATTEMPTS) {
+        onError('Connection lost while streaming the response.');
+        return;
       }
-    } catch (error) {
-      onError(error instanceof Error ? error.message : 'Streaming failed');
+      await new Promise((resolve) => setTimeout(resolve, RESUME_DELAY_MS * (attempt + 1)));
     }
   },
 };
@@ -47,6 +47,7 @@ export interface Message {
   content: string;
   model?: string;
   imageUrl?: string;
+  interrupted?: boolean;
   createdAt: string;
   isStreaming?: boolean;
 }